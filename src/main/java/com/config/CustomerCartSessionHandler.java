@@ -0,0 +1,154 @@
+package com.config;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.web.authentication.SavedRequestAwareAuthenticationSuccessHandler;
+
+import com.model.CartItem;
+import com.model.CustomerCartRef;
+import com.model.GuestCart;
+import com.service.CartItemService;
+import com.service.CustomerService;
+import com.service.GuestCartStore;
+import com.service.InventoryService;
+
+/**
+ * Puts the customer and cart ids of a login into the HTTP session, where the
+ * cart controllers read them instead of looking the customer up on every
+ * request. The attribute goes away with the session, which logout
+ * invalidates. Sessions that have no attribute yet, such as those
+ * authenticated before a redeploy, are filled in on their first cart request.
+ * A guest cart the shopper filled before logging in is added to the
+ * customer's cart here, in one write, and its cookie is cleared.
+ */
+public class CustomerCartSessionHandler extends SavedRequestAwareAuthenticationSuccessHandler {
+
+	private static final Logger logger = LoggerFactory.getLogger(CustomerCartSessionHandler.class);
+
+	public static final String SESSION_ATTRIBUTE = "customerCartRef";
+
+	@Autowired
+	private CustomerService customerService;
+
+	@Autowired
+	private CartItemService cartItemService;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private GuestCartStore guestCartStore;
+
+	public CustomerService getCustomerService() {
+		return customerService;
+	}
+
+	public void setCustomerService(CustomerService customerService) {
+		this.customerService = customerService;
+	}
+
+	public CartItemService getCartItemService() {
+		return cartItemService;
+	}
+
+	public void setCartItemService(CartItemService cartItemService) {
+		this.cartItemService = cartItemService;
+	}
+
+	public InventoryService getInventoryService() {
+		return inventoryService;
+	}
+
+	public void setInventoryService(InventoryService inventoryService) {
+		this.inventoryService = inventoryService;
+	}
+
+	public GuestCartStore getGuestCartStore() {
+		return guestCartStore;
+	}
+
+	public void setGuestCartStore(GuestCartStore guestCartStore) {
+		this.guestCartStore = guestCartStore;
+	}
+
+	@Override
+	public void onAuthenticationSuccess(HttpServletRequest request, HttpServletResponse response,
+			Authentication authentication) throws ServletException, IOException {
+		CustomerCartRef ref = store(request.getSession(), authentication.getName());
+		if (ref != null) {
+			mergeGuestCart(ref.getCartId(), request, response);
+		}
+		super.onAuthenticationSuccess(request, response, authentication);
+	}
+
+	/**
+	 * Customer and cart of the logged in user, from the session when they
+	 * were captured for the same login.
+	 * 
+	 * @return the ids, null when nobody is logged in or the user is not a
+	 *         customer
+	 */
+	public CustomerCartRef resolve(HttpServletRequest request) {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+			// guests have no session to look in, and get none
+			return null;
+		}
+		String emailId = ((User) authentication.getPrincipal()).getUsername();
+		HttpSession session = request.getSession();
+		CustomerCartRef ref = (CustomerCartRef) session.getAttribute(SESSION_ATTRIBUTE);
+		if (ref != null && ref.getEmailId().equals(emailId)) {
+			return ref;
+		}
+		return store(session, emailId);
+	}
+
+	private void mergeGuestCart(String cartId, HttpServletRequest request, HttpServletResponse response) {
+		GuestCart guestCart = guestCartStore.read(request);
+		if (guestCart.isEmpty()) {
+			return;
+		}
+		List<CartItem> cartItems = guestCartStore.toCartItems(guestCart);
+		try {
+			cartItemService.addCartItems(cartId, cartItems);
+		} catch (RuntimeException e) {
+			// the cookie is kept, so the guest cart is offered again at the next login
+			logger.error("Error merging a guest cart into cart {}", cartId, e);
+			return;
+		}
+		guestCartStore.clear(request, response);
+		// guests hold no stock, the units are reserved once they are in the customer's cart
+		for (CartItem cartItem : cartItems) {
+			String productId = cartItem.getProduct().getProductId();
+			if (!inventoryService.reserve(cartId, productId, cartItem.getQuality())) {
+				logger.debug("Product {} of a merged guest cart is no longer in stock", productId);
+			}
+		}
+		logger.debug("Merged {} guest cart lines into cart {}", cartItems.size(), cartId);
+	}
+
+	private CustomerCartRef store(HttpSession session, String emailId) {
+		CustomerCartRef ref = customerService.getCartRefByemailId(emailId);
+		if (ref != null) {
+			session.setAttribute(SESSION_ATTRIBUTE, ref);
+		} else {
+			// admins log in without a customer record
+			session.removeAttribute(SESSION_ATTRIBUTE);
+			logger.debug("No customer cart for login {}", emailId);
+		}
+		return ref;
+	}
+
+}
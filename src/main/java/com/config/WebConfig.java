@@ -1,10 +1,21 @@
 package com.config;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.multipart.MultipartResolver;
 import org.springframework.web.multipart.commons.CommonsMultipartResolver;
 
+import com.dao.ImageStore;
+import com.dao.LocalImageStore;
+import com.dao.SharedDirectoryImageStore;
+
 /**
  * Web configuration class for Spring MVC
  * Contains bean definitions for web-related components
@@ -12,6 +23,9 @@ import org.springframework.web.multipart.commons.CommonsMultipartResolver;
 @Configuration
 public class WebConfig {
 
+	@Autowired
+	private Environment environment;
+
 	/**
 	 * Configures MultipartResolver for file uploads
 	 * Maximum upload size is set to 10MB (10240000 bytes)
@@ -25,4 +39,43 @@ public class WebConfig {
 		multipartResolver.setMaxInMemorySize(4096); // 4KB
 		return multipartResolver;
 	}
+
+	/**
+	 * Executor of the product image pipeline. Both the threads and the queue
+	 * are bounded (image.executor.threads, image.executor.queue); when the
+	 * queue is full the uploading request runs the work itself, which slows
+	 * uploads down instead of dropping variants.
+	 * 
+	 * @return ThreadPoolTaskExecutor instance
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor imageExecutor() {
+		int threads = environment.getProperty("image.executor.threads", Integer.class, 2);
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(environment.getProperty("image.executor.queue", Integer.class, 50));
+		executor.setThreadNamePrefix("product-image-");
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		return executor;
+	}
+
+	/**
+	 * Store of the product images, outside the exploded WAR so images survive
+	 * a redeploy. image.store.directory sets the location (default
+	 * ~/shopieasy/images); image.store.type=shared selects the implementation
+	 * for a directory mounted on several nodes.
+	 * 
+	 * @return ImageStore instance
+	 */
+	@Bean
+	public ImageStore imageStore() throws IOException {
+		String directory = environment.getProperty("image.store.directory",
+				Paths.get(System.getProperty("user.home"), "shopieasy", "images").toString());
+		if ("shared".equals(environment.getProperty("image.store.type", "local"))) {
+			return new SharedDirectoryImageStore(Paths.get(directory));
+		}
+		return new LocalImageStore(Paths.get(directory));
+	}
 }
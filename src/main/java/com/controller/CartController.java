@@ -1,18 +1,25 @@
 package com.controller;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.NativeWebRequest;
 
-import com.model.Cart;
-import com.model.Customer;
+import com.config.CustomerCartSessionHandler;
+import com.model.CartView;
+import com.model.CustomerCartRef;
+import com.model.GuestCart;
+import com.service.CartAccessDeniedException;
 import com.service.CartService;
 import com.service.CustomerService;
+import com.service.GuestCartStore;
 
 @Controller
 public class CartController {
@@ -23,6 +30,12 @@ public class CartController {
 	@Autowired
 	private CartService cartService;
 
+	@Autowired
+	private CustomerCartSessionHandler customerCartSessionHandler;
+
+	@Autowired
+	private GuestCartStore guestCartStore;
+
 	public CustomerService getCustomerService() {
 		return customerService;
 	}
@@ -38,19 +51,53 @@ public class CartController {
 	public void setCartService(CartService cartService) {
 		this.cartService = cartService;
 	}
+
+	public CustomerCartSessionHandler getCustomerCartSessionHandler() {
+		return customerCartSessionHandler;
+	}
+
+	public void setCustomerCartSessionHandler(CustomerCartSessionHandler customerCartSessionHandler) {
+		this.customerCartSessionHandler = customerCartSessionHandler;
+	}
+
+	public GuestCartStore getGuestCartStore() {
+		return guestCartStore;
+	}
+
+	public void setGuestCartStore(GuestCartStore guestCartStore) {
+		this.guestCartStore = guestCartStore;
+	}
 	
 	@GetMapping("cart/getCartById")
-	public String getCartId(Model model){
-		User user = (User)SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-		String emailId = user.getUsername();
-		Customer customer = customerService.getCustomerByemailId(emailId);
-		model.addAttribute("cartId", customer.getCart().getCartId());
+	public String getCartId(Model model, HttpServletRequest request){
+		CustomerCartRef ref = customerCartSessionHandler.resolve(request);
+		model.addAttribute("cartId", ref != null ? ref.getCartId() : GuestCart.CART_ID);
 		return "cart";
 	}
 	
+	// the page refreshes the cart after every change; an unchanged cart is answered with a 304
 	@GetMapping("/cart/getCart/{cartId}")
-	public @ResponseBody Cart getCartItems(@PathVariable("cartId") String cartId){
-		return cartService.getCartByCartId(cartId);
+	public @ResponseBody CartView getCartItems(@PathVariable("cartId") String cartId, HttpServletRequest request,
+			HttpServletResponse response, NativeWebRequest webRequest){
+		CartView cartView;
+		if (GuestCart.CART_ID.equals(cartId)) {
+			cartView = CartView.of(guestCartStore.toCart(guestCartStore.read(request)));
+		} else {
+			// a customer reads only the cart of their session
+			CustomerCartRef ref = customerCartSessionHandler.resolve(request);
+			if (ref == null || !ref.getCartId().equals(cartId)) {
+				throw new CartAccessDeniedException(cartId);
+			}
+			cartView = cartService.getCartView(cartId);
+		}
+		if (cartView == null) {
+			return null;
+		}
+		response.setHeader("Cache-Control", "private, no-cache");
+		if (webRequest.checkNotModified(cartView.etag())) {
+			return null;
+		}
+		return cartView;
 	}
 	
 }
@@ -1,23 +1,28 @@
 package com.controller;
 
-import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
-import com.model.Cart;
+import com.config.CustomerCartSessionHandler;
 import com.model.CartItem;
-import com.model.Customer;
+import com.model.CustomerCartRef;
+import com.model.GuestCart;
 import com.model.Product;
+import com.service.CartAccessDeniedException;
 import com.service.CartItemService;
 import com.service.CartService;
 import com.service.CustomerService;
+import com.service.GuestCartFullException;
+import com.service.GuestCartStore;
+import com.service.InventoryService;
+import com.service.OutOfStockException;
 import com.service.ProductService;
 
 @Controller
@@ -35,6 +40,15 @@ public class CartItemController {
 	@Autowired
 	private ProductService productService;
 
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private CustomerCartSessionHandler customerCartSessionHandler;
+
+	@Autowired
+	private GuestCartStore guestCartStore;
+
 	
 	public CustomerService getCustomerService() {
 		return customerService;
@@ -52,6 +66,30 @@ public class CartItemController {
 		this.productService = productService;
 	}
 
+	public InventoryService getInventoryService() {
+		return inventoryService;
+	}
+
+	public void setInventoryService(InventoryService inventoryService) {
+		this.inventoryService = inventoryService;
+	}
+
+	public CustomerCartSessionHandler getCustomerCartSessionHandler() {
+		return customerCartSessionHandler;
+	}
+
+	public void setCustomerCartSessionHandler(CustomerCartSessionHandler customerCartSessionHandler) {
+		this.customerCartSessionHandler = customerCartSessionHandler;
+	}
+
+	public GuestCartStore getGuestCartStore() {
+		return guestCartStore;
+	}
+
+	public void setGuestCartStore(GuestCartStore guestCartStore) {
+		this.guestCartStore = guestCartStore;
+	}
+
 	public CartService getCartService() {
 		return cartService;
 	}
@@ -70,43 +108,87 @@ public class CartItemController {
 
 	@RequestMapping("/cart/add/{productId}")
 	@ResponseStatus(value = HttpStatus.NO_CONTENT)
-	public void addCartItem(@PathVariable(value = "productId") String productId) {
-		User user = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-		String emailId = user.getUsername();
-		Customer customer = customerService.getCustomerByemailId(emailId);
-		System.out.println("Customer : " + customer.getUsers().getEmailId());
-		Cart cart = customer.getCart();
-		System.out.println(cart);
-		List<CartItem> cartItems = cart.getCartItem();
+	public void addCartItem(@PathVariable(value = "productId") String productId, HttpServletRequest request,
+			HttpServletResponse response) {
+		CustomerCartRef ref = customerCartSessionHandler.resolve(request);
+		if (ref == null) {
+			addGuestCartItem(productId, request, response);
+			return;
+		}
+		// the cart id comes from the session and the product from the catalog
+		// cache, so the line update below is the only database round trip
+		String cartId = ref.getCartId();
 		Product product = productService.getProductById(productId);
-		for (int i = 0; i < cartItems.size(); i++) {
-			CartItem cartItem = cartItems.get(i);
-			if (product.getProductId().equals(cartItem.getProduct().getProductId())) {
-				cartItem.setQuality(cartItem.getQuality() + 1);
-				cartItem.setPrice(cartItem.getQuality() * cartItem.getProduct().getProductPrice());
-				cartItemService.addCartItem(cartItem);
-				return;
-			}
+		// the unit is held for this cart before it is added, answered with 409 when none is left
+		if (!inventoryService.reserve(cartId, productId, 1)) {
+			throw new OutOfStockException(productId);
+		}
+		try {
+			// one conditional update of the cart's line for this product, so
+			// concurrent adds from several tabs all count
+			cartItemService.incrementQuantity(cartId, product, 1);
+		} catch (RuntimeException e) {
+			inventoryService.release(cartId, productId, 1);
+			throw e;
 		}
-		CartItem cartItem = new CartItem();
-		cartItem.setQuality(1);
-		cartItem.setProduct(product);
-		cartItem.setPrice(product.getProductPrice() * 1);
-		cartItem.setCart(cart);
-		cartItemService.addCartItem(cartItem);
 	}
 
 	@RequestMapping("/cart/removeCartItem/{cartItemId}")
 	@ResponseStatus(value = HttpStatus.NO_CONTENT)
-	public void removeCartItem(@PathVariable(value = "cartItemId") String cartItemId) {
-		cartItemService.removeCartItem(cartItemId);
+	public void removeCartItem(@PathVariable(value = "cartItemId") String cartItemId, HttpServletRequest request,
+			HttpServletResponse response) {
+		if (GuestCart.isLineId(cartItemId)) {
+			GuestCart guestCart = guestCartStore.read(request);
+			if (guestCart.remove(GuestCart.productOfLine(cartItemId)) > 0) {
+				guestCartStore.write(guestCart, request, response);
+			}
+			return;
+		}
+		// only a line of the caller's own cart is removed, whatever id the path names
+		CustomerCartRef ref = customerCartSessionHandler.resolve(request);
+		if (ref == null) {
+			throw new CartAccessDeniedException(cartItemId);
+		}
+		CartItem owned = cartItemService.getCartItemById(cartItemId);
+		if (owned == null) {
+			return;
+		}
+		if (!ref.getCartId().equals(owned.getCart().getCartId())) {
+			throw new CartAccessDeniedException(cartItemId);
+		}
+		CartItem cartItem = cartItemService.removeCartItem(cartItemId);
+		if (cartItem != null) {
+			inventoryService.release(ref.getCartId(), cartItem.getProduct().getProductId(), cartItem.getQuality());
+		}
 	}
 
 	@RequestMapping("/cart/removeAllItems/{cartId}")
 	@ResponseStatus(value = HttpStatus.NO_CONTENT)
-	public void removeAllCartItems(@PathVariable(value = "cartId") String cartId) {
-		Cart cart = cartService.getCartByCartId(cartId);
-		cartItemService.removeAllCartItems(cart);
+	public void removeAllCartItems(@PathVariable(value = "cartId") String cartId, HttpServletRequest request,
+			HttpServletResponse response) {
+		if (GuestCart.CART_ID.equals(cartId)) {
+			guestCartStore.clear(request, response);
+			return;
+		}
+		CustomerCartRef ref = customerCartSessionHandler.resolve(request);
+		if (ref == null || !ref.getCartId().equals(cartId)) {
+			throw new CartAccessDeniedException(cartId);
+		}
+		cartItemService.removeAllCartItems(cartId);
+		inventoryService.releaseAll(cartId);
+	}
+
+	// a guest's cart lives in its cookie; stock is only checked, not held, so
+	// anonymous requests cannot lock units away from customers
+	private void addGuestCartItem(String productId, HttpServletRequest request, HttpServletResponse response) {
+		GuestCart guestCart = guestCartStore.read(request);
+		if (!guestCartStore.add(guestCart, productId, 1)) {
+			throw new GuestCartFullException(productId);
+		}
+		if (inventoryService.getAvailableStock(productId) < guestCart.getQuantities().get(productId)) {
+			throw new OutOfStockException(productId);
+		}
+		guestCartStore.write(guestCart, request, response);
 	}
 
 }
@@ -1,19 +1,23 @@
 
 package com.controller;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.Principal;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import javax.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -21,15 +25,30 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.support.RequestContextUtils;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import com.dao.ProductSummaryHandler;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.model.Product;
+import com.model.ProductImportStatus;
+import com.model.ProductPage;
+import com.model.ProductSummary;
+import com.model.Suggestion;
+import com.service.CatalogVersion;
+import com.service.ProductImageService;
+import com.service.ProductImportService;
 import com.service.ProductService;
 
 @Controller
@@ -37,11 +56,40 @@ public class ProductController {
 
 	private static final Logger logger = LoggerFactory.getLogger(ProductController.class);
 	private static final long MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
+	private static final int STREAM_FLUSH_INTERVAL = 100;
 	private static final List<String> ALLOWED_IMAGE_TYPES = Arrays.asList("image/jpeg", "image/jpg", "image/png", "image/gif");
 
+	private final ObjectMapper objectMapper = new ObjectMapper()
+			.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
 	@Autowired
 	private ProductService productService;
 
+	@Autowired
+	private CatalogVersion catalogVersion;
+
+	@Autowired
+	private ProductImportService productImportService;
+
+	@Autowired
+	private ProductImageService productImageService;
+
+	public void setProductService(ProductService productService) {
+		this.productService = productService;
+	}
+
+	public void setCatalogVersion(CatalogVersion catalogVersion) {
+		this.catalogVersion = catalogVersion;
+	}
+
+	public void setProductImportService(ProductImportService productImportService) {
+		this.productImportService = productImportService;
+	}
+
+	public void setProductImageService(ProductImageService productImageService) {
+		this.productImageService = productImageService;
+	}
+
 	// Request Mapping
 
 	// which displays the list of products to the productList page
@@ -55,20 +103,32 @@ public class ProductController {
 	*/
 	// Normal ProductList view
 	@RequestMapping("/getAllProducts")
-	public ModelAndView getAllProducts() {
-		List<Product> products = productService.getAllProducts();
-		return new ModelAndView("productList", "products", products);
+	public ModelAndView getAllProducts(@RequestParam(value = "sort", required = false) String sort,
+			@RequestParam(value = "pageToken", required = false) String pageToken, NativeWebRequest webRequest) {
+		if (checkCatalogNotModified(webRequest, true)) {
+			return null;
+		}
+		ProductPage page = productService.getProductsPage(null, null, null, null, sort, pageToken, 0);
+		ModelAndView modelAndView = new ModelAndView("productList", "products", page.getProducts());
+		modelAndView.addObject("page", page);
+		modelAndView.addObject("pageAction", "/getAllProducts");
+		modelAndView.addObject("facets", productService.getProductFacets(null, null, null, null));
+		return modelAndView;
 	}
 	 
 	
 	// this is used for getting the product by productId
 
 	@RequestMapping("getProductById/{productId}")
-	public ModelAndView getProductById(@PathVariable(value = "productId") String productId) {
+	public ModelAndView getProductById(@PathVariable(value = "productId") String productId,
+			NativeWebRequest webRequest) {
 		if (productId == null || productId.trim().isEmpty()) {
 			logger.warn("Attempted to access product with null or empty productId");
 			return new ModelAndView("redirect:/getAllProducts");
 		}
+		if (checkCatalogNotModified(webRequest, true)) {
+			return null;
+		}
 		
 		Product product = productService.getProductById(productId);
 		if (product == null) {
@@ -76,12 +136,13 @@ public class ProductController {
 			return new ModelAndView("redirect:/getAllProducts");
 		}
 		
+		productService.recordProductView(productId);
 		return new ModelAndView("productPage", "productObj", product);
 	}
 
 	@RequestMapping("/admin/delete/{productId}")
 	public String deleteProduct(@PathVariable(value = "productId") String productId, 
-			HttpServletRequest request, RedirectAttributes redirectAttributes) {
+			RedirectAttributes redirectAttributes) {
 		
 		if (productId == null || productId.trim().isEmpty()) {
 			logger.warn("Attempted to delete product with null or empty productId");
@@ -90,21 +151,8 @@ public class ProductController {
 		}
 
 		try {
-			// Delete product image file
-			ServletContext servletContext = request.getServletContext();
-			String realPath = servletContext.getRealPath("/WEB-INF/resource/images/products/");
-			if (realPath != null) {
-				Path path = Paths.get(realPath + productId + ".jpg");
-				if (Files.exists(path)) {
-					try {
-						Files.delete(path);
-						logger.info("Product image deleted: {}", path);
-					} catch (IOException e) {
-						logger.error("Error deleting product image for productId: {}", productId, e);
-						// Continue with product deletion even if image deletion fails
-					}
-				}
-			}
+			// Delete product image files, failures are logged and do not stop the deletion
+			productImageService.deleteImages(productId);
 
 			productService.deleteProduct(productId);
 			redirectAttributes.addFlashAttribute("success", "Product deleted successfully");
@@ -130,7 +178,7 @@ public class ProductController {
 
 	@RequestMapping(value = "/admin/product/addProduct", method = RequestMethod.POST)
 	public String addProduct(@Valid @ModelAttribute(value = "productFormObj") Product product, 
-			BindingResult result, HttpServletRequest request, RedirectAttributes redirectAttributes) {
+			BindingResult result, RedirectAttributes redirectAttributes) {
 		
 		if (result.hasErrors()) {
 			logger.debug("Validation errors in product form");
@@ -149,19 +197,8 @@ public class ProductController {
 					return "redirect:/admin/product/addProduct";
 				}
 				
-				ServletContext servletContext = request.getServletContext();
-				String realPath = servletContext.getRealPath("/WEB-INF/resource/images/products/");
-				if (realPath != null) {
-					// Ensure directory exists
-					Path directory = Paths.get(realPath);
-					if (!Files.exists(directory)) {
-						Files.createDirectories(directory);
-					}
-					
-					Path path = Paths.get(realPath + product.getProductId() + ".jpg");
-					image.transferTo(new File(path.toString()));
-					logger.info("Product image saved: {}", path);
-				}
+				// variants are generated in the background
+				productImageService.saveImage(product.getProductId(), image);
 			}
 			
 			redirectAttributes.addFlashAttribute("success", "Product added successfully");
@@ -175,6 +212,82 @@ public class ProductController {
 		return "redirect:/getAllProducts";
 	}
 	
+	/**
+	 * Bulk import of a CSV (header row) or NDJSON file sent as the raw request
+	 * body, e.g. curl --data-binary @catalog.csv -H "Content-Type: text/csv".
+	 * The body is spooled to a temp file and imported in the background, the
+	 * returned status can be polled at /admin/product/import/{jobId}.
+	 */
+	@RequestMapping(value = "/admin/product/import", method = RequestMethod.POST)
+	@ResponseStatus(HttpStatus.ACCEPTED)
+	public @ResponseBody ProductImportStatus importProducts(
+			@RequestParam(value = "format", required = false) String format, HttpServletRequest request)
+			throws IOException {
+		if (format == null) {
+			String contentType = request.getContentType();
+			format = contentType != null && contentType.contains("json")
+					? ProductImportService.FORMAT_NDJSON : ProductImportService.FORMAT_CSV;
+		} else {
+			format = ProductImportService.FORMAT_NDJSON.equalsIgnoreCase(format)
+					? ProductImportService.FORMAT_NDJSON : ProductImportService.FORMAT_CSV;
+		}
+		Path file = Files.createTempFile("product-import-", "." + format);
+		try {
+			Files.copy(request.getInputStream(), file, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+		logger.info("Received product import of {} bytes", Files.size(file));
+		return productImportService.startImport(file, format);
+	}
+
+	@RequestMapping(value = "/admin/product/import", method = RequestMethod.GET)
+	public @ResponseBody List<ProductImportStatus> getProductImports() {
+		return productImportService.getRecentImports();
+	}
+
+	@RequestMapping(value = "/admin/product/import/{jobId}", method = RequestMethod.GET)
+	public ResponseEntity<ProductImportStatus> getProductImport(@PathVariable(value = "jobId") String jobId) {
+		ProductImportStatus status = productImportService.getImportStatus(jobId);
+		if (status == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(status, HttpStatus.OK);
+	}
+
+	/**
+	 * Conditional GET against the catalog version. Sets ETag, Last-Modified
+	 * and Cache-Control, and returns true when the client copy is current
+	 * and a 304 has been sent. Rendered pages show the login and the admin
+	 * or user links, so their ETag also depends on the user and roles.
+	 */
+	private boolean checkCatalogNotModified(NativeWebRequest webRequest, boolean perUser) {
+		HttpServletRequest request = webRequest.getNativeRequest(HttpServletRequest.class);
+		HttpServletResponse response = webRequest.getNativeResponse(HttpServletResponse.class);
+		if (response != null) {
+			response.setHeader("Cache-Control", "private, no-cache");
+		}
+		// a flash message after a failed edit must be rendered, not replaced by a cached copy
+		Map<String, ?> flashMap = request != null ? RequestContextUtils.getInputFlashMap(request) : null;
+		if (perUser && flashMap != null && !flashMap.isEmpty()) {
+			return false;
+		}
+		String variant = perUser ? userVariant(webRequest.getUserPrincipal()) : null;
+		return webRequest.checkNotModified(catalogVersion.etag(variant), catalogVersion.getLastModified());
+	}
+
+	private static String userVariant(Principal principal) {
+		if (principal == null) {
+			return "anonymous";
+		}
+		int hash = principal.getName().hashCode();
+		if (principal instanceof Authentication) {
+			hash = 31 * hash + ((Authentication) principal).getAuthorities().hashCode();
+		}
+		return Integer.toHexString(hash);
+	}
+
 	/**
 	 * Validates if the uploaded file is a valid image
 	 */
@@ -235,8 +348,86 @@ public class ProductController {
 	}
 
 	@RequestMapping("/getProductsList")
-	public @ResponseBody List<Product> getProductsListInJson() {
-		return productService.getAllProducts();
+	public @ResponseBody List<ProductSummary> getProductsListInJson(NativeWebRequest webRequest) {
+		if (checkCatalogNotModified(webRequest, false)) {
+			return null;
+		}
+		return productService.getAllProductSummaries();
+	}
+
+	// Streaming variant: each product is written as soon as it is read, so
+	// the response starts immediately and nothing holds the whole catalog.
+	// It writes the same summaries as the list; asking for a page size too
+	// selects the paginated variant
+	@RequestMapping(value = "/getProductsList", params = { "stream=true", "!pageSize" })
+	public void streamProductsListInJson(HttpServletResponse response, NativeWebRequest webRequest)
+			throws IOException {
+		if (checkCatalogNotModified(webRequest, false)) {
+			return;
+		}
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		final JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+		// a failure part way must not end in a well-formed array that passes for the whole catalog
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+		boolean completed = false;
+		try {
+			generator.writeStartArray();
+			productService.streamAllProductSummaries(new ProductSummaryHandler() {
+				private int written;
+
+				public void handle(ProductSummary summary) throws IOException {
+					objectMapper.writeValue(generator, summary);
+					if (++written % STREAM_FLUSH_INTERVAL == 1) {
+						generator.flush();
+					}
+				}
+			});
+			generator.writeEndArray();
+			completed = true;
+		} finally {
+			// on a failure nothing buffered is flushed: an uncommitted response
+			// still becomes an error, a committed one is cut off before the ']'
+			if (completed) {
+				generator.close();
+			}
+		}
+	}
+
+	// Paginated variant, selected when the client asks for a page size
+	@RequestMapping(value = "/getProductsList", params = "pageSize")
+	public @ResponseBody ProductPage getProductsPageInJson(@RequestParam("pageSize") int pageSize,
+			@RequestParam(value = "sort", required = false) String sort,
+			@RequestParam(value = "pageToken", required = false) String pageToken, NativeWebRequest webRequest) {
+		if (checkCatalogNotModified(webRequest, false)) {
+			return null;
+		}
+		return productService.getProductsPage(null, null, null, null, sort, pageToken, pageSize);
+	}
+
+	// Typeahead for the search box, answered from the in-memory prefix trie
+	@RequestMapping("/products/suggest")
+	public @ResponseBody Suggestion[] suggestProducts(@RequestParam(value = "q", required = false) String query) {
+		return productService.suggestProducts(query);
+	}
+
+	@RequestMapping("/products/cheapest")
+	public @ResponseBody List<Product> getCheapestProducts(@RequestParam("category") String category,
+			@RequestParam(value = "count", defaultValue = "10") int count, NativeWebRequest webRequest) {
+		if (checkCatalogNotModified(webRequest, false)) {
+			return null;
+		}
+		return productService.getCheapestProducts(category, count);
+	}
+
+	@RequestMapping("/admin/catalogCache/stats")
+	public @ResponseBody Map<String, Object> getCatalogCacheStatistics() {
+		return productService.getCatalogCacheStatistics();
+	}
+
+	@RequestMapping("/admin/secondLevelCache/stats")
+	public @ResponseBody Map<String, Object> getSecondLevelCacheStatistics() {
+		return productService.getSecondLevelCacheStatistics();
 	}
 
 	@RequestMapping("/productsListAngular")
@@ -249,17 +440,19 @@ public class ProductController {
 	public ModelAndView searchProducts(@RequestParam(value = "searchTerm", required = false) String searchTerm,
 			@RequestParam(value = "category", required = false) String category,
 			@RequestParam(value = "minPrice", required = false) Double minPrice,
-			@RequestParam(value = "maxPrice", required = false) Double maxPrice) {
-		
-		List<Product> products;
-		
-		if (searchTerm != null || (category != null && !category.equals("All")) || minPrice != null || maxPrice != null) {
-			products = productService.searchProducts(searchTerm, category, minPrice, maxPrice);
-		} else {
-			products = productService.getAllProducts();
+			@RequestParam(value = "maxPrice", required = false) Double maxPrice,
+			@RequestParam(value = "sort", required = false) String sort,
+			@RequestParam(value = "pageToken", required = false) String pageToken, NativeWebRequest webRequest) {
+		if (checkCatalogNotModified(webRequest, true)) {
+			return null;
 		}
 		
-		ModelAndView modelAndView = new ModelAndView("productList", "products", products);
+		ProductPage page = productService.getProductsPage(searchTerm, category, minPrice, maxPrice, sort, pageToken, 0);
+		
+		ModelAndView modelAndView = new ModelAndView("productList", "products", page.getProducts());
+		modelAndView.addObject("page", page);
+		modelAndView.addObject("pageAction", "/searchProducts");
+		modelAndView.addObject("facets", productService.getProductFacets(searchTerm, category, minPrice, maxPrice));
 		modelAndView.addObject("searchTerm", searchTerm != null ? searchTerm : "");
 		modelAndView.addObject("selectedCategory", category != null ? category : "All");
 		modelAndView.addObject("minPrice", minPrice != null ? minPrice : "");
@@ -0,0 +1,192 @@
+package com.controller;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.model.ProductImageVariant;
+import com.service.ProductImageService;
+
+/**
+ * Serves product images straight from their files. Large files go out
+ * through Tomcat's sendfile when the connector supports it, and through
+ * FileChannel.transferTo otherwise, where hot images are read from the OS
+ * page cache. The path is excluded from Spring Security, see
+ * applicationContext.xml.
+ * 
+ * URLs carrying the content hash ({id}-{variant}.{hash}.jpg, as built by
+ * ProductImageService.getImageUrl) are cached for a year, the plain names
+ * are revalidated with the hash as ETag.
+ */
+@Controller
+public class ProductImageController {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProductImageController.class);
+
+	private static final Pattern IMAGE_NAME = Pattern
+			.compile("([A-Za-z0-9_-]+?)(?:-(thumb|grid|detail))?(?:\\.([0-9a-f]{16}))?\\.jpg");
+
+	private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+	private static final String REVALIDATE = "public, max-age=60";
+
+	// same threshold as Tomcat's DefaultServlet, below it a plain write is cheaper
+	private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	@Autowired
+	private ProductImageService productImageService;
+
+	public void setProductImageService(ProductImageService productImageService) {
+		this.productImageService = productImageService;
+	}
+
+	@RequestMapping(value = "/images/products/{fileName:.+}", method = { RequestMethod.GET, RequestMethod.HEAD })
+	public void serveImage(@PathVariable(value = "fileName") String fileName, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		Matcher matcher = IMAGE_NAME.matcher(fileName);
+		if (!matcher.matches()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		Path file = productImageService.getImageFile(matcher.group(1), variant(matcher.group(2)));
+		if (file == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		String hash = productImageService.getContentHash(file);
+		long length = Files.size(file);
+		String etag = "\"" + hash + "\"";
+		// an outdated hash still gets the current image, just not cached for long
+		response.setHeader("Cache-Control", hash.equals(matcher.group(3)) ? IMMUTABLE : REVALIDATE);
+		if (new ServletWebRequest(request, response).checkNotModified(etag,
+				Files.getLastModifiedTime(file).toMillis())) {
+			return;
+		}
+		response.setContentType("image/jpeg");
+		response.setHeader("Accept-Ranges", "bytes");
+
+		long start = 0;
+		long end = length;
+		String range = request.getHeader("Range");
+		String ifRange = request.getHeader("If-Range");
+		if (range != null && (ifRange == null || ifRange.equals(etag))) {
+			long[] bounds = parseRange(range, length);
+			if (bounds == null) {
+				response.setHeader("Content-Range", "bytes */" + length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			if (bounds.length == 2) {
+				start = bounds[0];
+				end = bounds[1];
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + length);
+			}
+		}
+		response.setHeader("Content-Length", Long.toString(end - start));
+		if ("HEAD".equals(request.getMethod())) {
+			return;
+		}
+
+		if (end - start >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			// Tomcat writes the file from the kernel after this method returns
+			request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+			request.setAttribute(SENDFILE_START, start);
+			request.setAttribute(SENDFILE_END, end);
+			return;
+		}
+
+		WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long position = start;
+			while (position < end) {
+				long sent = channel.transferTo(position, end - position, out);
+				if (sent <= 0) {
+					logger.warn("Product image {} ended early at {} of {} bytes", file, position, end);
+					break;
+				}
+				position += sent;
+			}
+		}
+	}
+
+	private static ProductImageVariant variant(String suffix) {
+		if (suffix != null) {
+			for (ProductImageVariant variant : ProductImageVariant.values()) {
+				if (variant.getSuffix().equals(suffix)) {
+					return variant;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a single byte range. Returns {start, end exclusive}, an empty
+	 * array when the header should be ignored (malformed or several ranges,
+	 * answered with the whole image), or null when it cannot be satisfied.
+	 */
+	private static long[] parseRange(String header, long length) {
+		if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+			return new long[0];
+		}
+		String spec = header.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return new long[0];
+		}
+		try {
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+			long start;
+			long end;
+			if (first.isEmpty()) {
+				// suffix range, the last n bytes
+				long suffix = Long.parseLong(last);
+				if (suffix <= 0) {
+					return null;
+				}
+				start = Math.max(0, length - suffix);
+				end = length;
+			} else {
+				start = Long.parseLong(first);
+				if (last.isEmpty()) {
+					end = length;
+				} else if (Long.parseLong(last) < start) {
+					return new long[0];
+				} else {
+					end = Math.min(length, Long.parseLong(last) + 1);
+				}
+			}
+			if (start >= length || start >= end) {
+				return null;
+			}
+			return new long[] { start, end };
+		} catch (NumberFormatException e) {
+			return new long[0];
+		}
+	}
+
+}
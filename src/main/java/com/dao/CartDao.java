@@ -3,12 +3,21 @@ package com.dao;
 import java.io.IOException;
 
 import com.model.Cart;
+import com.model.CartView;
 
 public interface CartDao {
 
 	Cart getCartByCartId(String CartId);
+
+	// The cart page's view of the cart from one query, null when there is no such cart
+	CartView getCartView(String cartId);
 	
+	// The cart to order, with its totals recomputed from its lines
 	Cart validate(String cartId) throws IOException;
 	
+	// Sums the cart's lines in the database and stores the result as its totals
 	void update(Cart cart);
+
+	// Sum of the cart's line prices, computed by the database
+	double getGrandTotal(String cartId);
 }
@@ -1,25 +1,39 @@
 package com.dao;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.model.Cart;
-import com.service.CustomerOrderService;
+import com.model.CartLineView;
+import com.model.CartView;
 
 @Repository
 @Transactional
 public class CartDaoImpl implements CartDao {
 
-	@Autowired
-	private SessionFactory sessionFactory;
+	// both totals from the lines, in one statement under the cart's row lock;
+	// the subqueries bind the id since Hibernate drops the alias of an update
+	private static final String RECOMPUTE_TOTALS = "update versioned Cart set "
+			+ "totalPrice = (select coalesce(sum(i.price), 0) from CartItem i where i.cart.cartId = :cartId), "
+			+ "itemCount = (select coalesce(sum(i.quality), 0) from CartItem i where i.cart.cartId = :cartId) "
+			+ "where cartId = :cartId";
+
+	// the totals and every line with its product's name and price in one
+	// round trip; an empty cart comes back as a single row without a line
+	private static final String CART_VIEW = "select c.totalPrice, c.itemCount, i.cartItemId, p.productId, "
+			+ "p.productName, p.productPrice, i.quality, i.price from Cart c left join c.cartItem i "
+			+ "left join i.product p where c.cartId = :cartId order by i.cartItemId";
 
 	@Autowired
-	private CustomerOrderService customerOrderService;
+	private SessionFactory sessionFactory;
 
 	public SessionFactory getSessionFactory() {
 		return sessionFactory;
@@ -39,7 +53,35 @@ public class CartDaoImpl implements CartDao {
 
 	}
 
+	public CartView getCartView(String cartId) {
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			@SuppressWarnings("unchecked")
+			List<Object[]> rows = session.createQuery(CART_VIEW).setString("cartId", cartId).list();
+			if (rows.isEmpty()) {
+				return null;
+			}
+			List<CartLineView> lines = new ArrayList<>();
+			for (Object[] row : rows) {
+				if (row[2] != null) {
+					lines.add(new CartLineView((String) row[2], (String) row[3], (String) row[4], (Double) row[5],
+							(Integer) row[6], (Double) row[7]));
+				}
+			}
+			Object[] first = rows.get(0);
+			return new CartView(cartId, (Double) first[0], (Integer) first[1], lines);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
 	public Cart validate(String cartId) throws IOException {
+		// every line write keeps the totals current; the order still takes
+		// them from the lines, so a drift left by a failed write is repaired
+		// here instead of being charged
 		Cart cart = getCartByCartId(cartId);
 		if (cart == null || cart.getCartItem().size() == 0) {
 			throw new IOException(cartId + "");
@@ -49,15 +91,47 @@ public class CartDaoImpl implements CartDao {
 	}
 
 	public void update(Cart cart) {
+		Session session = null;
+		Transaction transaction = null;
+		try {
+			session = sessionFactory.openSession();
+			transaction = session.beginTransaction();
+			session.createQuery(RECOMPUTE_TOTALS).setString("cartId", cart.getCartId()).executeUpdate();
+			Object[] totals = (Object[]) session
+					.createQuery("select c.totalPrice, c.itemCount from Cart c where c.cartId = :cartId")
+					.setString("cartId", cart.getCartId())
+					.uniqueResult();
+			transaction.commit();
+			if (totals != null) {
+				cart.setTotalPrice((Double) totals[0]);
+				cart.setItemCount((Integer) totals[1]);
+			}
+		} catch (RuntimeException e) {
+			if (transaction != null && transaction.isActive()) {
+				transaction.rollback();
+			}
+			throw e;
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
 
-		String cartId = cart.getCartId();
-		double grandTotal = customerOrderService.getCustomerOrderGrandTotal(cartId);
-		cart.setTotalPrice(grandTotal);
-
-		Session session = sessionFactory.openSession();
-		session.saveOrUpdate(cart);
-		session.flush();
-		session.close();
+	public double getGrandTotal(String cartId) {
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			Double total = (Double) session
+					.createQuery("select sum(i.price) from CartItem i where i.cart.cartId = :cartId")
+					.setString("cartId", cartId)
+					.uniqueResult();
+			return total != null ? total : 0;
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
 	}
 
 }
@@ -1,12 +1,26 @@
 package com.dao;
 
-import com.model.Cart;
+import java.util.List;
+import java.util.Map;
+
 import com.model.CartItem;
 
 public interface CartItemDao {
 
-	void addCartItem(CartItem cartItem);
-	void removeCartItem(String CartItemId);
-	void removeAllCartItems(Cart cart);
+	CartItem getCartItemById(String cartItemId);
+	// Adds the quantity to the product's line of the cart, creating the line
+	// when there is none; throws a ConcurrencyFailureException on a conflict
+	void incrementQuantity(String cartId, String productId, int quantity, double unitPrice);
+	// Adds the quantity and price of each line to the cart's line of its
+	// product, in one transaction of batched statements
+	void addCartItems(String cartId, List<CartItem> cartItems);
+	// Returns the item that was removed, null when there was none
+	CartItem removeCartItem(String CartItemId);
+	// A new line id from the same blocks the entity's generator uses
+	String nextCartItemId();
+	// Replaces the lines and totals of each cart with the given ones, in one transaction
+	void writeCarts(Map<String, List<CartItem>> cartLines);
+	// Deletes all lines of the cart and zeroes its totals, returns how many lines
+	int removeAllCartItems(String cartId);
 
 }
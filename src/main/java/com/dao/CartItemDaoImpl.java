@@ -1,20 +1,80 @@
 package com.dao;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 
+import org.hibernate.HibernateException;
+import org.hibernate.JDBCException;
+import org.hibernate.PessimisticLockException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.LockAcquisitionException;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.jdbc.Work;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
 import com.model.Cart;
 import com.model.CartItem;
+import com.model.Product;
 
 @Repository
-@Transactional
 public class CartItemDaoImpl implements CartItemDao {
 
+	private static final Logger logger = LoggerFactory.getLogger(CartItemDaoImpl.class);
+
+	// one statement reads and writes the quantity under the row lock, so two
+	// adds of the same product can never both start from the same value
+	private static final String INCREMENT_QUANTITY = "update versioned CartItem set quality = quality + :quantity, "
+			+ "price = price + :quantity * :unitPrice "
+			+ "where cart.cartId = :cartId and product.productId = :productId";
+
+	// the cart totals move by exactly what the line did, in the same
+	// transaction; an emptied cart is set back to 0 so rounding cannot pile up.
+	// Every write updates the cart row before any of its lines, so writers of
+	// one cart queue on that row instead of locking lines in opposite orders
+	private static final String ADJUST_CART_TOTALS = "update versioned Cart set "
+			+ "totalPrice = case when (itemCount + :quantity) = 0 then 0 else (totalPrice + :amount) end, "
+			+ "itemCount = itemCount + :quantity where cartId = :cartId";
+
+	// a cart is cleared with two statements whatever its size
+	private static final String RESET_CART_TOTALS = "update versioned Cart set totalPrice = 0, itemCount = 0 "
+			+ "where cartId = :cartId";
+	private static final String DELETE_CART_LINES = "delete from CartItem where cart.cartId = :cartId";
+
+	// the write-behind cart store replaces whole carts with its snapshots
+	private static final String WRITE_DELETE_LINES = "DELETE FROM cartitem WHERE cartId = ?";
+	private static final String WRITE_INSERT_LINE = "INSERT INTO cartitem (cartItemId, quality, price, cartId, productId, version) "
+			+ "VALUES (?, ?, ?, ?, ?, 0)";
+	private static final String WRITE_CART_TOTALS = "UPDATE cart SET totalPrice = ?, itemCount = ?, version = version + 1 "
+			+ "WHERE cartId = ?";
+
+	// the lines of a guest cart are added at login in two batches, the lines
+	// the update did not find are inserted
+	private static final String ADD_TO_LINE = "UPDATE cartitem SET quality = quality + ?, price = price + ?, "
+			+ "version = version + 1 WHERE cartId = ? AND productId = ?";
+
+	// H2 error code of a duplicate key in a unique index: the insert of a first
+	// add fails on uk_cartitem_cart_product (see SchemaIndexManager) when
+	// another request created the line meanwhile
+	private static final int H2_DUPLICATE_KEY = 23505;
+	// H2 error codes of a row lock that could not be taken
+	private static final int H2_LOCK_TIMEOUT = 50200;
+	private static final int H2_CONCURRENT_UPDATE = 90131;
+	private static final int H2_DEADLOCK = 40001;
+
 	@Autowired
 	private SessionFactory sessionFactory;
 
@@ -26,28 +86,273 @@ public class CartItemDaoImpl implements CartItemDao {
 		this.sessionFactory = sessionFactory;
 	}
 
-	public void addCartItem(CartItem cartItem) {
+	public CartItem getCartItemById(String cartItemId) {
 		Session session = sessionFactory.openSession();
-		session.saveOrUpdate(cartItem);
-		session.flush();
+		CartItem cartItem = (CartItem) session.get(CartItem.class, cartItemId);
 		session.close();
+		return cartItem;
 	}
 
-	public void removeCartItem(String CartItemId) {
-		Session session = sessionFactory.openSession();
-		CartItem cartItem = (CartItem) session.get(CartItem.class, CartItemId);
-		session.delete(cartItem);
-		Cart cart = cartItem.getCart();
-		List<CartItem> cartItems = cart.getCartItem();
-		cartItems.remove(cartItem);
-		session.flush();
-		session.close();
+	public void incrementQuantity(String cartId, String productId, int quantity, double unitPrice) {
+		Session session = null;
+		Transaction transaction = null;
+		try {
+			session = sessionFactory.openSession();
+			transaction = session.beginTransaction();
+			adjustCartTotals(session, cartId, quantity, quantity * unitPrice);
+			int updated = session.createQuery(INCREMENT_QUANTITY)
+					.setInteger("quantity", quantity)
+					.setDouble("unitPrice", unitPrice)
+					.setString("cartId", cartId)
+					.setString("productId", productId)
+					.executeUpdate();
+			if (updated == 0) {
+				CartItem cartItem = new CartItem();
+				cartItem.setQuality(quantity);
+				cartItem.setPrice(quantity * unitPrice);
+				cartItem.setCart((Cart) session.load(Cart.class, cartId));
+				cartItem.setProduct((Product) session.load(Product.class, productId));
+				session.save(cartItem);
+			}
+			transaction.commit();
+		} catch (HibernateException e) {
+			rollback(transaction);
+			throw translate(e, cartId + "/" + productId);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	public void addCartItems(final String cartId, final List<CartItem> cartItems) {
+		Session session = null;
+		Transaction transaction = null;
+		try {
+			session = sessionFactory.openSession();
+			transaction = session.beginTransaction();
+			int quantity = 0;
+			double amount = 0;
+			for (CartItem cartItem : cartItems) {
+				quantity += cartItem.getQuality();
+				amount += cartItem.getPrice();
+			}
+			adjustCartTotals(session, cartId, quantity, amount);
+			final IdentifierGenerator generator = ((SessionFactoryImplementor) sessionFactory)
+					.getIdentifierGenerator(CartItem.class.getName());
+			final SessionImplementor implementor = (SessionImplementor) session;
+			session.doWork(new Work() {
+				public void execute(Connection connection) throws SQLException {
+					PreparedStatement update = connection.prepareStatement(ADD_TO_LINE);
+					PreparedStatement insert = connection.prepareStatement(WRITE_INSERT_LINE);
+					try {
+						for (CartItem cartItem : cartItems) {
+							update.setInt(1, cartItem.getQuality());
+							update.setDouble(2, cartItem.getPrice());
+							update.setString(3, cartId);
+							update.setString(4, cartItem.getProduct().getProductId());
+							update.addBatch();
+						}
+						int[] updated = update.executeBatch();
+						boolean inserts = false;
+						for (int i = 0; i < updated.length; i++) {
+							if (updated[i] == 0) {
+								CartItem cartItem = cartItems.get(i);
+								insert.setString(1, (String) generator.generate(implementor, null));
+								insert.setInt(2, cartItem.getQuality());
+								insert.setDouble(3, cartItem.getPrice());
+								insert.setString(4, cartId);
+								insert.setString(5, cartItem.getProduct().getProductId());
+								insert.addBatch();
+								inserts = true;
+							}
+						}
+						if (inserts) {
+							insert.executeBatch();
+						}
+					} finally {
+						update.close();
+						insert.close();
+					}
+				}
+			});
+			transaction.commit();
+		} catch (HibernateException e) {
+			rollback(transaction);
+			throw translate(e, cartId);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	public CartItem removeCartItem(String CartItemId) {
+		Session session = null;
+		Transaction transaction = null;
+		try {
+			session = sessionFactory.openSession();
+			transaction = session.beginTransaction();
+			CartItem cartItem = (CartItem) session.get(CartItem.class, CartItemId);
+			if (cartItem == null) {
+				transaction.commit();
+				return null;
+			}
+			Cart cart = cartItem.getCart();
+			adjustCartTotals(session, cart.getCartId(), -cartItem.getQuality(), -cartItem.getPrice());
+			// the delete is checked against the version read here, so the
+			// quantity returned is exactly the one removed
+			session.delete(cartItem);
+			List<CartItem> cartItems = cart.getCartItem();
+			cartItems.remove(cartItem);
+			transaction.commit();
+			return cartItem;
+		} catch (HibernateException e) {
+			rollback(transaction);
+			throw translate(e, CartItemId);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	public String nextCartItemId() {
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			IdentifierGenerator generator = ((SessionFactoryImplementor) sessionFactory)
+					.getIdentifierGenerator(CartItem.class.getName());
+			return (String) generator.generate((SessionImplementor) session, null);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	public void writeCarts(final Map<String, List<CartItem>> cartLines) {
+		Session session = null;
+		Transaction transaction = null;
+		try {
+			session = sessionFactory.openSession();
+			transaction = session.beginTransaction();
+			session.doWork(new Work() {
+				public void execute(Connection connection) throws SQLException {
+					PreparedStatement delete = connection.prepareStatement(WRITE_DELETE_LINES);
+					PreparedStatement insert = connection.prepareStatement(WRITE_INSERT_LINE);
+					PreparedStatement totals = connection.prepareStatement(WRITE_CART_TOTALS);
+					try {
+						for (Map.Entry<String, List<CartItem>> cart : cartLines.entrySet()) {
+							delete.setString(1, cart.getKey());
+							delete.addBatch();
+							double totalPrice = 0;
+							int itemCount = 0;
+							for (CartItem line : cart.getValue()) {
+								insert.setString(1, line.getCartItemId());
+								insert.setInt(2, line.getQuality());
+								insert.setDouble(3, line.getPrice());
+								insert.setString(4, cart.getKey());
+								insert.setString(5, line.getProduct().getProductId());
+								insert.addBatch();
+								totalPrice += line.getPrice();
+								itemCount += line.getQuality();
+							}
+							totals.setDouble(1, totalPrice);
+							totals.setInt(2, itemCount);
+							totals.setString(3, cart.getKey());
+							totals.addBatch();
+						}
+						// deletes first, so a line re-added under a new id does not hit the unique index
+						delete.executeBatch();
+						insert.executeBatch();
+						totals.executeBatch();
+					} finally {
+						delete.close();
+						insert.close();
+						totals.close();
+					}
+				}
+			});
+			transaction.commit();
+		} catch (HibernateException e) {
+			rollback(transaction);
+			logger.error("Error writing {} carts", cartLines.size(), e);
+			throw new RuntimeException("Failed to write carts", e);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	public int removeAllCartItems(String cartId) {
+		Session session = null;
+		Transaction transaction = null;
+		try {
+			session = sessionFactory.openSession();
+			transaction = session.beginTransaction();
+			session.createQuery(RESET_CART_TOTALS).setString("cartId", cartId).executeUpdate();
+			int deleted = session.createQuery(DELETE_CART_LINES).setString("cartId", cartId).executeUpdate();
+			transaction.commit();
+			logger.debug("Cleared {} lines of cart {}", deleted, cartId);
+			return deleted;
+		} catch (HibernateException e) {
+			rollback(transaction);
+			throw translate(e, cartId);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	private static void adjustCartTotals(Session session, String cartId, int quantity, double amount) {
+		session.createQuery(ADJUST_CART_TOTALS)
+				.setInteger("quantity", quantity)
+				.setDouble("amount", amount)
+				.setString("cartId", cartId)
+				.executeUpdate();
+	}
+
+	/**
+	 * Conflicts with a concurrent write to the same line are reported as
+	 * Spring's ConcurrencyFailureException subtypes so the service can tell
+	 * them from real failures and retry.
+	 */
+	private static RuntimeException translate(HibernateException e, String key) {
+		if (e instanceof StaleStateException
+				|| e instanceof ConstraintViolationException && errorCode(e) == H2_DUPLICATE_KEY) {
+			logger.debug("Concurrent change of cart line {}", key, e);
+			return new OptimisticLockingFailureException("Cart line " + key + " changed concurrently", e);
+		}
+		if (e instanceof LockAcquisitionException || e instanceof PessimisticLockException || isLockFailure(e)) {
+			logger.debug("Cart line {} is locked by another request", key, e);
+			return new PessimisticLockingFailureException("Cart line " + key + " is locked", e);
+		}
+		logger.error("Error writing cart line {}", key, e);
+		return new RuntimeException("Failed to write cart line", e);
+	}
+
+	private static boolean isLockFailure(HibernateException e) {
+		int errorCode = errorCode(e);
+		return errorCode == H2_LOCK_TIMEOUT || errorCode == H2_CONCURRENT_UPDATE || errorCode == H2_DEADLOCK;
+	}
+
+	private static int errorCode(HibernateException e) {
+		if (!(e instanceof JDBCException) || ((JDBCException) e).getSQLException() == null) {
+			return 0;
+		}
+		return ((JDBCException) e).getSQLException().getErrorCode();
 	}
 
-	public void removeAllCartItems(Cart cart) {
-		List<CartItem> cartItems = cart.getCartItem();
-		for (CartItem cartItem : cartItems) {
-			removeCartItem(cartItem.getCartItemId());
+	private static void rollback(Transaction transaction) {
+		if (transaction != null && transaction.isActive()) {
+			try {
+				transaction.rollback();
+			} catch (Exception e) {
+				logger.error("Error rolling back cart line transaction", e);
+			}
 		}
 	}
 
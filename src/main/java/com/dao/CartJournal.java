@@ -0,0 +1,213 @@
+package com.dao;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of cart changes in a local directory, split into
+ * numbered segment files. Appending only buffers a record; sync waits until
+ * it is on disk, and whichever caller gets to write first writes and forces
+ * everything buffered so far, so concurrent requests share one fsync. Every
+ * line carries a CRC32 of its record, a torn or corrupt tail is skipped on
+ * recovery.
+ */
+public class CartJournal {
+
+	private static final Logger logger = LoggerFactory.getLogger(CartJournal.class);
+
+	private static final String PREFIX = "carts-";
+	private static final String SUFFIX = ".journal";
+
+	private final Path directory;
+
+	private final Object writeLock = new Object();
+
+	// guarded by this
+	private List<String> buffer = new ArrayList<>();
+	private long appended;
+
+	// guarded by writeLock
+	private FileChannel channel;
+	private long segment;
+	private volatile long durable;
+
+	public CartJournal(Path directory) throws IOException {
+		this.directory = directory;
+		Files.createDirectories(directory);
+	}
+
+	/**
+	 * Reads the records of every segment, oldest first, and opens a new
+	 * segment for the records that follow.
+	 */
+	public List<String> recover() throws IOException {
+		List<String> records = new ArrayList<>();
+		List<Long> segments = listSegments();
+		for (long existing : segments) {
+			readSegment(pathOf(existing), records);
+		}
+		synchronized (writeLock) {
+			segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+			channel = FileChannel.open(pathOf(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+		}
+		logger.info("Recovered {} cart journal records from {} segments", records.size(), segments.size());
+		return records;
+	}
+
+	/**
+	 * Buffers a record, in the order of the calls.
+	 *
+	 * @return the sequence number to pass to sync
+	 */
+	public synchronized long append(String record) {
+		buffer.add(record);
+		return ++appended;
+	}
+
+	// Returns once the record with the sequence number is on disk
+	public void sync(long sequence) throws IOException {
+		if (durable >= sequence) {
+			return;
+		}
+		synchronized (writeLock) {
+			if (durable < sequence) {
+				writeBuffered();
+			}
+		}
+	}
+
+	/**
+	 * Closes the current segment, with everything appended so far, and starts
+	 * a new one.
+	 *
+	 * @return the number of the new segment; all records in the segments
+	 *         below it were appended before this call
+	 */
+	public long rotate() throws IOException {
+		synchronized (writeLock) {
+			writeBuffered();
+			channel.close();
+			segment++;
+			channel = FileChannel.open(pathOf(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+			return segment;
+		}
+	}
+
+	// Deletes the segments below the given number, once their records are in the database
+	public void deleteSegmentsBefore(long limit) throws IOException {
+		for (long existing : listSegments()) {
+			if (existing < limit) {
+				Files.deleteIfExists(pathOf(existing));
+			}
+		}
+	}
+
+	public void close() throws IOException {
+		synchronized (writeLock) {
+			if (channel != null) {
+				writeBuffered();
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+
+	private void writeBuffered() throws IOException {
+		List<String> batch;
+		long last;
+		synchronized (this) {
+			batch = buffer;
+			last = appended;
+			buffer = new ArrayList<>();
+		}
+		if (!batch.isEmpty()) {
+			StringBuilder lines = new StringBuilder();
+			for (String record : batch) {
+				lines.append(Long.toHexString(checksum(record))).append('\t').append(record).append('\n');
+			}
+			ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+			try {
+				while (bytes.hasRemaining()) {
+					channel.write(bytes);
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				// put the batch back so that no caller takes it for written
+				synchronized (this) {
+					batch.addAll(buffer);
+					buffer = batch;
+				}
+				throw e;
+			}
+		}
+		durable = last;
+	}
+
+	private void readSegment(Path path, List<String> records) throws IOException {
+		BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab < 0) {
+					logger.warn("Skipping a torn record at the end of {}", path);
+					break;
+				}
+				String record = line.substring(tab + 1);
+				if (!line.substring(0, tab).equals(Long.toHexString(checksum(record)))) {
+					logger.warn("Skipping a corrupt record at the end of {}", path);
+					break;
+				}
+				records.add(record);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private List<Long> listSegments() throws IOException {
+		List<Long> segments = new ArrayList<>();
+		DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX);
+		try {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				try {
+					segments.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					logger.warn("Ignoring unexpected file {} in the cart journal", path);
+				}
+			}
+		} finally {
+			stream.close();
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private Path pathOf(long number) {
+		return directory.resolve(String.format("%s%08d%s", PREFIX, number, SUFFIX));
+	}
+
+	private static long checksum(String record) {
+		CRC32 crc = new CRC32();
+		crc.update(record.getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	}
+
+}
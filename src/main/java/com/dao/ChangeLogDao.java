@@ -0,0 +1,27 @@
+package com.dao;
+
+import java.util.List;
+
+import com.model.InvalidationEvent;
+
+/**
+ * Shared table of invalidation events that every node appends to and polls.
+ */
+public interface ChangeLogDao {
+
+	// Appends an event and returns the version it was given
+	long append(String region, String key, String origin);
+
+	// Events with a version above the given one, oldest first
+	List<InvalidationEvent> readAfter(long version, int limit);
+
+	// The events of the given versions that are in the log, oldest first
+	List<InvalidationEvent> readVersions(List<Long> versions);
+
+	// Highest version in the log, 0 when it is empty
+	long getLatestVersion();
+
+	// Removes events older than the given age, returns how many
+	int pruneOlderThan(long ageMillis);
+
+}
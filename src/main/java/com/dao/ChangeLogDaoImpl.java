@@ -0,0 +1,193 @@
+package com.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import com.model.InvalidationEvent;
+
+/**
+ * Change log kept in the database all nodes share. The table is not an
+ * entity: it is written and read with plain JDBC so that appending an event
+ * does not touch the session or the second-level cache it invalidates.
+ */
+@Repository(value = "changeLogDao")
+public class ChangeLogDaoImpl implements ChangeLogDao, InitializingBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ChangeLogDaoImpl.class);
+
+	private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS cache_change_log ("
+			+ "version BIGINT AUTO_INCREMENT PRIMARY KEY, region VARCHAR(32) NOT NULL, "
+			+ "entity_key VARCHAR(255), origin VARCHAR(64) NOT NULL, "
+			+ "created TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL)";
+
+	@Autowired
+	private SessionFactory sessionFactory;
+
+	public SessionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	public void afterPropertiesSet() {
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			session.doWork(new Work() {
+				public void execute(Connection connection) throws SQLException {
+					Statement statement = connection.createStatement();
+					try {
+						statement.execute(CREATE_TABLE);
+					} finally {
+						statement.close();
+					}
+				}
+			});
+		} catch (Exception e) {
+			logger.error("Error creating the cache change log table", e);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	public long append(final String region, final String key, final String origin) {
+		return execute(new ReturningWork<Long>() {
+			public Long execute(Connection connection) throws SQLException {
+				PreparedStatement insert = connection.prepareStatement(
+						"INSERT INTO cache_change_log (region, entity_key, origin) VALUES (?, ?, ?)",
+						Statement.RETURN_GENERATED_KEYS);
+				try {
+					insert.setString(1, region);
+					insert.setString(2, key);
+					insert.setString(3, origin);
+					insert.executeUpdate();
+					ResultSet keys = insert.getGeneratedKeys();
+					long version = keys.next() ? keys.getLong(1) : 0L;
+					commit(connection);
+					return version;
+				} finally {
+					insert.close();
+				}
+			}
+		});
+	}
+
+	public List<InvalidationEvent> readAfter(final long version, final int limit) {
+		return execute(new ReturningWork<List<InvalidationEvent>>() {
+			public List<InvalidationEvent> execute(Connection connection) throws SQLException {
+				PreparedStatement select = connection.prepareStatement("SELECT version, region, entity_key, origin "
+						+ "FROM cache_change_log WHERE version > ? ORDER BY version LIMIT ?");
+				try {
+					select.setLong(1, version);
+					select.setInt(2, limit);
+					return toEvents(select.executeQuery());
+				} finally {
+					select.close();
+				}
+			}
+		});
+	}
+
+	public List<InvalidationEvent> readVersions(final List<Long> versions) {
+		if (versions.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return execute(new ReturningWork<List<InvalidationEvent>>() {
+			public List<InvalidationEvent> execute(Connection connection) throws SQLException {
+				StringBuilder sql = new StringBuilder("SELECT version, region, entity_key, origin "
+						+ "FROM cache_change_log WHERE version IN (");
+				for (int i = 0; i < versions.size(); i++) {
+					sql.append(i == 0 ? "?" : ", ?");
+				}
+				PreparedStatement select = connection.prepareStatement(sql.append(") ORDER BY version").toString());
+				try {
+					for (int i = 0; i < versions.size(); i++) {
+						select.setLong(i + 1, versions.get(i));
+					}
+					return toEvents(select.executeQuery());
+				} finally {
+					select.close();
+				}
+			}
+		});
+	}
+
+	public long getLatestVersion() {
+		return execute(new ReturningWork<Long>() {
+			public Long execute(Connection connection) throws SQLException {
+				Statement statement = connection.createStatement();
+				try {
+					ResultSet rs = statement.executeQuery("SELECT MAX(version) FROM cache_change_log");
+					return rs.next() ? rs.getLong(1) : 0L;
+				} finally {
+					statement.close();
+				}
+			}
+		});
+	}
+
+	public int pruneOlderThan(final long ageMillis) {
+		return execute(new ReturningWork<Integer>() {
+			public Integer execute(Connection connection) throws SQLException {
+				PreparedStatement delete = connection
+						.prepareStatement("DELETE FROM cache_change_log WHERE created < ?");
+				try {
+					delete.setTimestamp(1, new Timestamp(System.currentTimeMillis() - ageMillis));
+					int deleted = delete.executeUpdate();
+					commit(connection);
+					return deleted;
+				} finally {
+					delete.close();
+				}
+			}
+		});
+	}
+
+	private static List<InvalidationEvent> toEvents(ResultSet rs) throws SQLException {
+		List<InvalidationEvent> events = new ArrayList<>();
+		while (rs.next()) {
+			events.add(new InvalidationEvent(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4)));
+		}
+		return events;
+	}
+
+	// the event must be visible to other nodes as soon as it is appended
+	private static void commit(Connection connection) throws SQLException {
+		if (!connection.getAutoCommit()) {
+			connection.commit();
+		}
+	}
+
+	private <T> T execute(ReturningWork<T> work) {
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			return session.doReturningWork(work);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+}
@@ -3,6 +3,7 @@ package com.dao;
 import java.util.List;
 
 import com.model.Customer;
+import com.model.CustomerCartRef;
 
 public interface CustomerDao {
 
@@ -12,4 +13,10 @@ public interface CustomerDao {
 
 	Customer getCustomerByemailId(String emailId);
 
+	// Customer and cart ids of the login, null when there is no such customer
+	CustomerCartRef getCartRefByemailId(String emailId);
+
+	// Drops the customer's login data and the cached e-mail lookups from the second-level cache
+	void evictCachedCustomer(String emailId);
+
 }
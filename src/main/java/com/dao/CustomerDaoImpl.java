@@ -6,6 +6,7 @@ import java.util.List;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,6 +15,7 @@ import org.springframework.stereotype.Repository;
 import com.model.Authorities;
 import com.model.Cart;
 import com.model.Customer;
+import com.model.CustomerCartRef;
 import com.model.User;
 
 @Repository
@@ -21,6 +23,9 @@ public class CustomerDaoImpl implements CustomerDao {
 
 	private static final Logger logger = LoggerFactory.getLogger(CustomerDaoImpl.class);
 
+	// query cache region of the e-mail lookups, sized in ehcache.xml
+	private static final String USER_BY_EMAIL_REGION = "query.userByEmail";
+
 	@Autowired
 	private SessionFactory sessionFactory;
 
@@ -44,8 +49,10 @@ public class CustomerDaoImpl implements CustomerDao {
 		}
 		
 		Session session = null;
+		Transaction transaction = null;
 		try {
 			session = sessionFactory.openSession();
+			transaction = session.beginTransaction();
 			customer.getUsers().setEnabled(true);
 			
 			Authorities authorities = new Authorities();
@@ -58,9 +65,12 @@ public class CustomerDaoImpl implements CustomerDao {
 			
 			session.save(customer);
 			session.save(authorities);
-			session.flush();
+			transaction.commit();
 			logger.info("Customer added successfully with email: {}", customer.getUsers().getEmailId());
 		} catch (Exception e) {
+			if (transaction != null && transaction.isActive()) {
+				transaction.rollback();
+			}
 			logger.error("Error adding customer", e);
 			throw new RuntimeException("Failed to add customer", e);
 		} finally {
@@ -99,6 +109,7 @@ public class CustomerDaoImpl implements CustomerDao {
 			session = sessionFactory.openSession();
 			Query query = session.createQuery("from User where emailId=?");
 			query.setString(0, emailId);
+			query.setCacheable(true).setCacheRegion(USER_BY_EMAIL_REGION);
 			User users = (User) query.uniqueResult();
 			
 			if (users == null) {
@@ -120,6 +131,53 @@ public class CustomerDaoImpl implements CustomerDao {
 			}
 		}
 	}
-	
-	
+
+	public CustomerCartRef getCartRefByemailId(String emailId) {
+		if (emailId == null || emailId.trim().isEmpty()) {
+			return null;
+		}
+
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			// only the ids are selected; the cart id is read from the foreign key
+			// column, so neither the customer nor the cart is loaded
+			return (CustomerCartRef) session.createQuery("select new com.model.CustomerCartRef(u.emailId, "
+					+ "c.customerId, c.cart.cartId) from Customer c join c.users u where u.emailId = :emailId")
+					.setString("emailId", emailId)
+					.uniqueResult();
+		} catch (Exception e) {
+			logger.error("Error retrieving cart of customer: {}", emailId, e);
+			return null;
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	public void evictCachedCustomer(String emailId) {
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			for (Object userId : session.createQuery("select u.userId from User u where u.emailId = :emailId")
+					.setString("emailId", emailId).list()) {
+				sessionFactory.getCache().evictEntity(User.class, (String) userId);
+			}
+			for (Object authorityId : session
+					.createQuery("select a.authorityId from Authorities a where a.emailId = :emailId")
+					.setString("emailId", emailId).list()) {
+				sessionFactory.getCache().evictEntity(Authorities.class, (String) authorityId);
+			}
+		} catch (Exception e) {
+			logger.error("Error evicting cached customer: {}", emailId, e);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+		// a lookup cached before the customer registered would still find nothing
+		sessionFactory.getCache().evictQueryRegion(USER_BY_EMAIL_REGION);
+	}
+
 }
@@ -0,0 +1,37 @@
+package com.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Storage of image files outside the web application. Content is stored
+ * once per SHA-256 digest and products point at it through named refs
+ * ("original", "thumb", ...), so identical uploads share one file.
+ */
+public interface ImageStore {
+
+	// Stores the content and returns its hex digest
+	String put(InputStream content) throws IOException;
+
+	// The file holding the content of the digest, null when it is not stored
+	Path get(String hash);
+
+	// The digest of a stored file, null for files outside the store
+	String hashOf(Path file);
+
+	// Points the named ref of a product at stored content
+	void link(String productId, String name, String hash) throws IOException;
+
+	// The digest a ref points at, null when the ref does not exist
+	String resolve(String productId, String name);
+
+	// Removes one ref of a product, if present
+	void unlink(String productId, String name) throws IOException;
+
+	// Removes every ref of a product, the content stays until collected
+	void unlinkAll(String productId) throws IOException;
+
+	// Deletes content no ref points at anymore, returns the number of files deleted
+	int collectGarbage() throws IOException;
+}
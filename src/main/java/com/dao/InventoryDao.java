@@ -0,0 +1,16 @@
+package com.dao;
+
+import java.util.Map;
+
+public interface InventoryDao {
+
+	// Persisted stock of the product, -1 when it does not exist
+	int getStock(String productId);
+
+	// Takes each quantity off its product's stock in one transaction, all or
+	// nothing; returns the first product without enough stock, null on success
+	String decrementStock(Map<String, Integer> quantities);
+
+	// Drops the product from the second-level cache after another node changed its stock
+	void evictCachedStock(String productId);
+}
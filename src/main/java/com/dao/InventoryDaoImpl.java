@@ -0,0 +1,151 @@
+package com.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import com.model.Product;
+
+@Repository(value = "inventoryDao")
+public class InventoryDaoImpl implements InventoryDao, InitializingBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(InventoryDaoImpl.class);
+
+	// the guard in the where clause makes the check and the write one atomic
+	// row update, so concurrent checkouts never drive stock below zero. Run
+	// as plain JDBC: a bulk HQL update would drop the whole product cache
+	// region on every checkout, so only the sold products are evicted
+	private static final String DECREMENT_STOCK = "UPDATE item SET stock = stock - ? WHERE Id = ? AND stock >= ?";
+
+	@Autowired
+	private SessionFactory sessionFactory;
+
+	public SessionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	public void afterPropertiesSet() {
+		migrateLegacyStock();
+	}
+
+	public int getStock(String productId) {
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			Integer stock = (Integer) session
+					.createQuery("select p.unitStock from Product p where p.productId = :productId")
+					.setString("productId", productId)
+					.uniqueResult();
+			return stock != null ? stock : -1;
+		} catch (Exception e) {
+			logger.error("Error retrieving stock of product: {}", productId, e);
+			throw new RuntimeException("Failed to retrieve stock", e);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	public void evictCachedStock(String productId) {
+		sessionFactory.getCache().evictEntity(Product.class, productId);
+	}
+
+	public String decrementStock(final Map<String, Integer> quantities) {
+		Session session = null;
+		Transaction transaction = null;
+		try {
+			session = sessionFactory.openSession();
+			transaction = session.beginTransaction();
+			String shortOf = session.doReturningWork(new ReturningWork<String>() {
+				public String execute(Connection connection) throws SQLException {
+					PreparedStatement decrement = connection.prepareStatement(DECREMENT_STOCK);
+					try {
+						// rows are always updated in id order so two checkouts cannot deadlock
+						for (Map.Entry<String, Integer> quantity : new TreeMap<>(quantities).entrySet()) {
+							decrement.setInt(1, quantity.getValue());
+							decrement.setString(2, quantity.getKey());
+							decrement.setInt(3, quantity.getValue());
+							if (decrement.executeUpdate() == 0) {
+								return quantity.getKey();
+							}
+						}
+						return null;
+					} finally {
+						decrement.close();
+					}
+				}
+			});
+			if (shortOf != null) {
+				transaction.rollback();
+				logger.info("Not enough stock of product {} for {} units", shortOf, quantities.get(shortOf));
+				return shortOf;
+			}
+			transaction.commit();
+			for (String productId : quantities.keySet()) {
+				evictCachedStock(productId);
+			}
+			return null;
+		} catch (Exception e) {
+			if (transaction != null && transaction.isActive()) {
+				transaction.rollback();
+			}
+			logger.error("Error decrementing stock", e);
+			throw new RuntimeException("Failed to decrement stock", e);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	/**
+	 * Stock used to be the free text "unit" column. Numeric values are moved
+	 * to the stock column and cleared, so each is migrated exactly once.
+	 */
+	private void migrateLegacyStock() {
+		Session session = null;
+		Transaction transaction = null;
+		try {
+			session = sessionFactory.openSession();
+			Number legacyColumns = (Number) session.createSQLQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS "
+					+ "WHERE TABLE_NAME = 'ITEM' AND COLUMN_NAME = 'UNIT'").uniqueResult();
+			if (legacyColumns == null || legacyColumns.intValue() == 0) {
+				return;
+			}
+			transaction = session.beginTransaction();
+			int migrated = session.createSQLQuery("UPDATE item SET stock = CAST(TRIM(unit) AS INT), unit = NULL "
+					+ "WHERE unit IS NOT NULL AND TRIM(unit) REGEXP '^[0-9]{1,9}$'").executeUpdate();
+			transaction.commit();
+			if (migrated > 0) {
+				logger.info("Migrated stock of {} products from the unit column", migrated);
+			}
+		} catch (Exception e) {
+			if (transaction != null && transaction.isActive()) {
+				transaction.rollback();
+			}
+			logger.error("Error migrating legacy product stock", e);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,265 @@
+package com.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content addressed image store on a local disk.
+ * 
+ * Layout under the root directory:
+ * blobs/ab/cd/abcd...(64 hex).jpg - the content, sharded by digest prefix
+ * refs/{productId}/{name} - a ref, holding the digest it points at
+ * tmp/ - uploads being hashed
+ * 
+ * Every file appears through an atomic rename, so readers never see partial
+ * content. Refs are cached in memory since this node is the only writer.
+ */
+public class LocalImageStore implements ImageStore {
+
+	protected static final Logger logger = LoggerFactory.getLogger(LocalImageStore.class);
+
+	private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+	private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+");
+	private static final long DEFAULT_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+	protected final Path root;
+	private final Path blobs;
+	private final Path refs;
+	private final Path tmp;
+
+	// content younger than this is never collected, it may be about to be linked
+	private final long graceMillis;
+
+	private final Map<String, String> refCache = new ConcurrentHashMap<>();
+
+	public LocalImageStore(Path root) throws IOException {
+		this(root, DEFAULT_GRACE_MILLIS);
+	}
+
+	protected LocalImageStore(Path root, long graceMillis) throws IOException {
+		this.root = root;
+		this.blobs = root.resolve("blobs");
+		this.refs = root.resolve("refs");
+		this.tmp = root.resolve("tmp");
+		this.graceMillis = graceMillis;
+		Files.createDirectories(blobs);
+		Files.createDirectories(refs);
+		Files.createDirectories(tmp);
+		logger.info("Image store at {}", root.toAbsolutePath());
+	}
+
+	// whether refs may be served from memory, only when no other node writes them
+	protected boolean isRefCacheEnabled() {
+		return true;
+	}
+
+	public String put(InputStream content) throws IOException {
+		Path temp = Files.createTempFile(tmp, "put-", ".tmp");
+		try {
+			MessageDigest digest = sha256();
+			try (InputStream in = new DigestInputStream(content, digest)) {
+				Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+			}
+			String hash = hex(digest.digest());
+			Path blob = blobPath(hash);
+			if (Files.exists(blob)) {
+				// deduplicated; refresh the time so collection spares it until it is linked
+				Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));
+			} else {
+				Files.createDirectories(blob.getParent());
+				move(temp, blob);
+			}
+			return hash;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	public Path get(String hash) {
+		if (hash == null || !HASH.matcher(hash).matches()) {
+			return null;
+		}
+		Path blob = blobPath(hash);
+		return Files.isRegularFile(blob) ? blob : null;
+	}
+
+	public String hashOf(Path file) {
+		if (file == null || !file.startsWith(blobs)) {
+			return null;
+		}
+		String fileName = file.getFileName().toString();
+		String hash = fileName.endsWith(".jpg") ? fileName.substring(0, fileName.length() - 4) : fileName;
+		return HASH.matcher(hash).matches() ? hash : null;
+	}
+
+	public void link(String productId, String name, String hash) throws IOException {
+		if (get(hash) == null) {
+			throw new IllegalArgumentException("No stored content " + hash);
+		}
+		Path ref = refPath(productId, name);
+		Files.createDirectories(ref.getParent());
+		Path temp = Files.createTempFile(tmp, "ref-", ".tmp");
+		try {
+			Files.write(temp, hash.getBytes(StandardCharsets.US_ASCII));
+			move(temp, ref);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		if (isRefCacheEnabled()) {
+			refCache.put(productId + "/" + name, hash);
+		}
+	}
+
+	public String resolve(String productId, String name) {
+		String key = productId + "/" + name;
+		String hash = isRefCacheEnabled() ? refCache.get(key) : null;
+		if (hash != null) {
+			return hash;
+		}
+		Path ref = refPath(productId, name);
+		if (!Files.isRegularFile(ref)) {
+			return null;
+		}
+		try {
+			hash = new String(Files.readAllBytes(ref), StandardCharsets.US_ASCII).trim();
+		} catch (IOException e) {
+			logger.warn("Could not read image ref {}", ref, e);
+			return null;
+		}
+		if (isRefCacheEnabled()) {
+			refCache.put(key, hash);
+		}
+		return hash;
+	}
+
+	public void unlink(String productId, String name) throws IOException {
+		Files.deleteIfExists(refPath(productId, name));
+		refCache.remove(productId + "/" + name);
+	}
+
+	public void unlinkAll(String productId) throws IOException {
+		Path directory = refs.resolve(checkName(productId));
+		if (Files.isDirectory(directory)) {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+				for (Path ref : stream) {
+					Files.deleteIfExists(ref);
+				}
+			}
+			Files.deleteIfExists(directory);
+		}
+		String prefix = productId + "/";
+		for (Iterator<String> keys = refCache.keySet().iterator(); keys.hasNext();) {
+			if (keys.next().startsWith(prefix)) {
+				keys.remove();
+			}
+		}
+	}
+
+	public int collectGarbage() throws IOException {
+		long cutoff = System.currentTimeMillis() - graceMillis;
+		Set<String> live = new HashSet<>();
+		try (DirectoryStream<Path> products = Files.newDirectoryStream(refs)) {
+			for (Path product : products) {
+				if (!Files.isDirectory(product)) {
+					continue;
+				}
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(product)) {
+					for (Path ref : stream) {
+						live.add(new String(Files.readAllBytes(ref), StandardCharsets.US_ASCII).trim());
+					}
+				}
+			}
+		}
+
+		int deleted = 0;
+		try (DirectoryStream<Path> level1 = Files.newDirectoryStream(blobs)) {
+			for (Path first : level1) {
+				try (DirectoryStream<Path> level2 = Files.newDirectoryStream(first)) {
+					for (Path second : level2) {
+						try (DirectoryStream<Path> stream = Files.newDirectoryStream(second)) {
+							for (Path blob : stream) {
+								String hash = hashOf(blob);
+								if (hash != null && !live.contains(hash)
+										&& Files.getLastModifiedTime(blob).toMillis() < cutoff
+										&& Files.deleteIfExists(blob)) {
+									deleted++;
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+
+		// leftovers of interrupted puts
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(tmp)) {
+			for (Path temp : stream) {
+				if (Files.getLastModifiedTime(temp).toMillis() < cutoff) {
+					Files.deleteIfExists(temp);
+				}
+			}
+		}
+		logger.info("Image store collection deleted {} unreferenced files, {} referenced", deleted, live.size());
+		return deleted;
+	}
+
+	private Path blobPath(String hash) {
+		return blobs.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + ".jpg");
+	}
+
+	private Path refPath(String productId, String name) {
+		return refs.resolve(checkName(productId)).resolve(checkName(name));
+	}
+
+	private static String checkName(String name) {
+		if (name == null || !NAME.matcher(name).matches()) {
+			throw new IllegalArgumentException("Invalid image store name: " + name);
+		}
+		return name;
+	}
+
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+}
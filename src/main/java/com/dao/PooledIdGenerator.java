@@ -0,0 +1,175 @@
+package com.dao;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.jdbc.AbstractReturningWork;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out numeric String ids from blocks reserved in the id_blocks table.
+ * One row per entity table holds the next free value; a block of block_size
+ * ids is claimed with a single update in its own transaction and then
+ * assigned from memory, so an insert no longer costs a sequence round trip
+ * and Hibernate can batch it. Blocks claimed by a node that restarts are
+ * simply skipped. The first block of a table starts after the highest
+ * numeric id already stored in it, which keeps ids issued before the switch
+ * from colliding.
+ *
+ * Mapped with
+ * {@code @GenericGenerator(name = "pooled", strategy = "com.dao.PooledIdGenerator")}.
+ */
+public class PooledIdGenerator implements PersistentIdentifierGenerator, Configurable {
+
+	private static final Logger logger = LoggerFactory.getLogger(PooledIdGenerator.class);
+
+	public static final String BLOCK_SIZE = "block_size";
+
+	public static final int DEFAULT_BLOCK_SIZE = 100;
+
+	private static final String BLOCK_TABLE = "id_blocks";
+
+	// attempts to claim a block when another node inserts the first row at the same time
+	private static final int MAX_CLAIM_ATTEMPTS = 3;
+
+	private String segment;
+	private String targetTable;
+	private String targetColumn;
+	private int blockSize;
+
+	private long next;
+	private long limit;
+
+	public void configure(Type type, Properties params, Dialect dialect) throws MappingException {
+		if (!String.class.equals(type.getReturnedClass())) {
+			throw new MappingException("PooledIdGenerator only generates String ids, found "
+					+ type.getReturnedClass().getName());
+		}
+		targetTable = params.getProperty(TABLE);
+		targetColumn = params.getProperty(PK);
+		segment = targetTable.toLowerCase();
+		blockSize = ConfigurationHelper.getInt(BLOCK_SIZE, params, DEFAULT_BLOCK_SIZE);
+		if (blockSize < 1) {
+			throw new MappingException("block_size must be positive for " + segment);
+		}
+	}
+
+	public synchronized Serializable generate(SessionImplementor session, Object object) throws HibernateException {
+		if (next >= limit) {
+			next = claimBlock(session);
+			limit = next + blockSize;
+		}
+		return Long.toString(next++);
+	}
+
+	private long claimBlock(SessionImplementor session) {
+		return session.getTransactionCoordinator().getTransaction().createIsolationDelegate()
+				.delegateWork(new AbstractReturningWork<Long>() {
+					public Long execute(Connection connection) throws SQLException {
+						for (int attempt = 1; ; attempt++) {
+							Long start = claimExisting(connection);
+							if (start == null) {
+								start = claimFirst(connection);
+							}
+							if (start != null) {
+								logger.debug("Claimed ids {} to {} for {}", start, start + blockSize - 1, segment);
+								return start;
+							}
+							if (attempt == MAX_CLAIM_ATTEMPTS) {
+								throw new HibernateException("Could not claim an id block for " + segment);
+							}
+						}
+					}
+				}, true);
+	}
+
+	private Long claimExisting(Connection connection) throws SQLException {
+		PreparedStatement select = connection
+				.prepareStatement("SELECT next_hi FROM " + BLOCK_TABLE + " WHERE name = ? FOR UPDATE");
+		long start;
+		try {
+			select.setString(1, segment);
+			ResultSet rs = select.executeQuery();
+			if (!rs.next()) {
+				return null;
+			}
+			start = rs.getLong(1);
+		} finally {
+			select.close();
+		}
+		PreparedStatement update = connection
+				.prepareStatement("UPDATE " + BLOCK_TABLE + " SET next_hi = ? WHERE name = ? AND next_hi = ?");
+		try {
+			update.setLong(1, start + blockSize);
+			update.setString(2, segment);
+			update.setLong(3, start);
+			return update.executeUpdate() == 1 ? start : null;
+		} finally {
+			update.close();
+		}
+	}
+
+	// first block for the table: continue after the ids the old generator left behind
+	private Long claimFirst(Connection connection) throws SQLException {
+		long start = highestExistingId(connection) + 1;
+		PreparedStatement insert = connection
+				.prepareStatement("INSERT INTO " + BLOCK_TABLE + " (name, next_hi) VALUES (?, ?)");
+		try {
+			insert.setString(1, segment);
+			insert.setLong(2, start + blockSize);
+			insert.executeUpdate();
+			return start;
+		} catch (SQLException e) {
+			// another node created the row first, its value is claimed on the next attempt
+			logger.debug("Id block row for {} already exists: {}", segment, e.getMessage());
+			return null;
+		} finally {
+			insert.close();
+		}
+	}
+
+	private long highestExistingId(Connection connection) throws SQLException {
+		PreparedStatement select = null;
+		try {
+			select = connection.prepareStatement("SELECT MAX(CAST(" + targetColumn + " AS BIGINT)) FROM "
+					+ targetTable + " WHERE " + targetColumn + " REGEXP '^[0-9]{1,18}$'");
+			ResultSet rs = select.executeQuery();
+			return rs.next() ? rs.getLong(1) : 0L;
+		} catch (SQLException e) {
+			// the table is created by the same schema update and may not exist yet
+			logger.debug("No existing ids read from {}: {}", targetTable, e.getMessage());
+			return 0L;
+		} finally {
+			if (select != null) {
+				select.close();
+			}
+		}
+	}
+
+	public String[] sqlCreateStrings(Dialect dialect) throws HibernateException {
+		return new String[] { "create table " + BLOCK_TABLE
+				+ " (name varchar(255) not null, next_hi bigint not null, primary key (name))" };
+	}
+
+	public String[] sqlDropStrings(Dialect dialect) throws HibernateException {
+		return new String[] { "drop table " + BLOCK_TABLE + dialect.getCascadeConstraintsString() };
+	}
+
+	public Object generatorKey() {
+		return BLOCK_TABLE;
+	}
+
+}
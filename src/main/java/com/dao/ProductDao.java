@@ -1,18 +1,39 @@
 package com.dao;
 
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 
 import com.model.Product;
+import com.model.ProductPageToken;
+import com.model.ProductSort;
+import com.model.ProductSummary;
 
 public interface ProductDao {
 
+	// Throws when the read fails rather than standing in an empty list
 	List<Product> getAllProducts();
 
+	// Listing columns only, read as a projection without loading entities
+	List<ProductSummary> getAllProductSummaries();
+
+	// Drops the product, or every product when the id is null, and the cached
+	// category searches from the second-level cache
+	void evictFromCache(String productId);
+
 	Product getProductById(String productId);
 
+	// Walks the listing columns of the whole catalog without holding it in
+	// memory, in the order of getAllProductSummaries; returns the number of products
+	int streamAllProductSummaries(ProductSummaryHandler handler) throws IOException;
+
 	void deleteProduct(String productId);
 
 	void addProduct(Product product);
+
+	// Bulk insert committed every commitInterval rows, the handler sees each
+	// product once its chunk is committed; returns the number committed
+	int importProducts(Iterator<Product> products, int commitInterval, ProductHandler handler) throws IOException;
 	
 	void editProduct(Product product);
 	
@@ -25,4 +46,9 @@ public interface ProductDao {
 	
 	List<Product> searchProducts(String searchTerm, String category, Double minPrice, Double maxPrice);
 	
+	// Keyset pagination: returns at most limit product summaries ordered by
+	// (sort key, Id) that come after the given token, or the first page when it is null
+	List<ProductSummary> getProductsPage(String searchTerm, String category, Double minPrice, Double maxPrice,
+			ProductSort sort, ProductPageToken after, int limit);
+	
 }
@@ -1,23 +1,49 @@
 package com.dao;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import com.model.Product;
+import com.model.ProductPageToken;
+import com.model.ProductSort;
+import com.model.ProductSummary;
 
 @Repository(value = "productDao")
 public class ProductDaoImpl implements ProductDao {
 
 	private static final Logger logger = LoggerFactory.getLogger(ProductDaoImpl.class);
+	private static final int STREAM_FETCH_SIZE = 200;
+
+	// query cache region of the category searches, sized in ehcache.xml
+	private static final String CATEGORY_QUERY_REGION = "query.productsByCategory";
+
+	// HQL rather than a Criteria projection: the HQL plan is cached after the
+	// first call while a Criteria regenerates its SQL every time, which for a
+	// page of summaries allocated more than loading the entities did
+	private static final String SUMMARY_SELECT = "select new com.model.ProductSummary(p.productId, p.productName,"
+			+ " p.productCategory, p.productManufacturer, p.productPrice, p.unitStock) from Product p";
 
 	@Autowired
 	private SessionFactory sessionFactory;
@@ -44,7 +70,26 @@ public class ProductDaoImpl implements ProductDao {
 			logger.debug("Retrieved {} products from database", products.size());
 			return products;
 		} catch (Exception e) {
+			// thrown rather than returned empty, so the catalog cache cannot keep a failed read
 			logger.error("Error retrieving all products", e);
+			throw new RuntimeException("Failed to retrieve products", e);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	public List<ProductSummary> getAllProductSummaries() {
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			@SuppressWarnings("unchecked")
+			List<ProductSummary> summaries = session.createQuery(SUMMARY_SELECT + " order by p.productId").list();
+			logger.debug("Retrieved {} product summaries from database", summaries.size());
+			return summaries;
+		} catch (Exception e) {
+			logger.error("Error retrieving product summaries", e);
 			return new ArrayList<>();
 		} finally {
 			if (session != null) {
@@ -53,6 +98,43 @@ public class ProductDaoImpl implements ProductDao {
 		}
 	}
 
+	public void evictFromCache(String productId) {
+		if (productId == null) {
+			sessionFactory.getCache().evictEntityRegion(Product.class);
+		} else {
+			sessionFactory.getCache().evictEntity(Product.class, productId);
+		}
+		sessionFactory.getCache().evictQueryRegion(CATEGORY_QUERY_REGION);
+	}
+
+	public int streamAllProductSummaries(ProductSummaryHandler handler) throws IOException {
+		// a stateless session has no persistence context, so rows are not
+		// retained once handled and memory stays flat for any catalog size
+		StatelessSession session = null;
+		ScrollableResults results = null;
+		try {
+			session = sessionFactory.openStatelessSession();
+			results = session.createQuery(SUMMARY_SELECT + " order by p.productId")
+					.setFetchSize(STREAM_FETCH_SIZE)
+					.setReadOnly(true)
+					.scroll(ScrollMode.FORWARD_ONLY);
+			int count = 0;
+			while (results.next()) {
+				handler.handle((ProductSummary) results.get(0));
+				count++;
+			}
+			logger.debug("Streamed {} product summaries from database", count);
+			return count;
+		} finally {
+			if (results != null) {
+				results.close();
+			}
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
 	public Product getProductById(String productId) {
 		if (productId == null || productId.trim().isEmpty()) {
 			logger.warn("Attempted to get product with null or empty productId");
@@ -84,17 +166,20 @@ public class ProductDaoImpl implements ProductDao {
 		}
 		
 		Session session = null;
+		Transaction transaction = null;
 		try {
 			session = sessionFactory.openSession();
+			transaction = session.beginTransaction();
 			Product product = (Product) session.get(Product.class, productId);
 			if (product != null) {
 				session.delete(product);
-				session.flush();
 				logger.info("Product deleted successfully with id: {}", productId);
 			} else {
 				logger.warn("Product not found for deletion with id: {}", productId);
 			}
+			transaction.commit();
 		} catch (Exception e) {
+			rollback(transaction);
 			logger.error("Error deleting product with id: {}", productId, e);
 			throw new RuntimeException("Failed to delete product", e);
 		} finally {
@@ -111,12 +196,18 @@ public class ProductDaoImpl implements ProductDao {
 		}
 		
 		Session session = null;
+		Transaction transaction = null;
 		try {
 			session = sessionFactory.openSession();
+			// writes commit a transaction rather than flush in autocommit: only the
+			// commit refreshes the second-level cache and the item table timestamp,
+			// without it the category query cache misses until the timestamp lapses
+			transaction = session.beginTransaction();
 			session.save(product);
-			session.flush();
+			transaction.commit();
 			logger.info("Product added successfully with id: {}", product.getProductId());
 		} catch (Exception e) {
+			rollback(transaction);
 			logger.error("Error adding product", e);
 			throw new RuntimeException("Failed to add product", e);
 		} finally {
@@ -126,6 +217,75 @@ public class ProductDaoImpl implements ProductDao {
 		}
 	}
 
+	public int importProducts(Iterator<Product> products, int commitInterval, ProductHandler handler)
+			throws IOException {
+		// inserts go straight to JDBC batches (hibernate.jdbc.batch_size), and
+		// with no persistence context there is nothing to flush or clear
+		// between chunks, each chunk is simply its own transaction
+		StatelessSession session = null;
+		Transaction transaction = null;
+		List<Product> chunk = new ArrayList<>(commitInterval);
+		int committed = 0;
+		try {
+			session = sessionFactory.openStatelessSession();
+			while (products.hasNext()) {
+				if (transaction == null) {
+					transaction = session.beginTransaction();
+				}
+				Product product = products.next();
+				session.insert(product);
+				chunk.add(product);
+				if (chunk.size() >= commitInterval) {
+					transaction.commit();
+					transaction = null;
+					committed += commitChunk(chunk, handler);
+				}
+			}
+			if (transaction != null) {
+				transaction.commit();
+				transaction = null;
+				committed += commitChunk(chunk, handler);
+			}
+			logger.info("Imported {} products", committed);
+			return committed;
+		} catch (IOException e) {
+			rollback(transaction);
+			throw e;
+		} catch (Exception e) {
+			rollback(transaction);
+			logger.error("Error importing products after {} committed", committed, e);
+			throw new RuntimeException("Failed to import products", e);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+			// stateless inserts bypass the second-level cache, so cached category
+			// results would not see the imported rows
+			if (committed > 0) {
+				sessionFactory.getCache().evictQueryRegion(CATEGORY_QUERY_REGION);
+			}
+		}
+	}
+
+	private static int commitChunk(List<Product> chunk, ProductHandler handler) throws IOException {
+		int size = chunk.size();
+		for (Product product : chunk) {
+			handler.handle(product);
+		}
+		chunk.clear();
+		return size;
+	}
+
+	private static void rollback(Transaction transaction) {
+		if (transaction != null && transaction.isActive()) {
+			try {
+				transaction.rollback();
+			} catch (Exception e) {
+				logger.error("Error rolling back product transaction", e);
+			}
+		}
+	}
+
 	public void editProduct(Product product) {
 		if (product == null) {
 			logger.warn("Attempted to edit null product");
@@ -133,12 +293,28 @@ public class ProductDaoImpl implements ProductDao {
 		}
 		
 		Session session = null;
+		Transaction transaction = null;
 		try {
 			session = sessionFactory.openSession();
+			transaction = session.beginTransaction();
+			// the update does not write the stock, an edit only adds its change to it
 			session.update(product);
-			session.flush();
+			if (product.getLoadedStock() != null && product.getUnitStock() != product.getLoadedStock()) {
+				restock(session, product.getProductId(), product.getUnitStock() - product.getLoadedStock());
+			}
+			Integer stock = (Integer) session
+					.createQuery("select p.unitStock from Product p where p.productId = :productId")
+					.setString("productId", product.getProductId())
+					.uniqueResult();
+			transaction.commit();
+			// the copy cached by the update holds the stock of the form
+			sessionFactory.getCache().evictEntity(Product.class, product.getProductId());
+			if (stock != null) {
+				product.setUnitStock(stock);
+			}
 			logger.info("Product updated successfully with id: {}", product.getProductId());
 		} catch (Exception e) {
+			rollback(transaction);
 			logger.error("Error updating product with id: {}", product.getProductId(), e);
 			throw new RuntimeException("Failed to update product", e);
 		} finally {
@@ -148,6 +324,25 @@ public class ProductDaoImpl implements ProductDao {
 		}
 	}
 
+	// Plain JDBC, so that Hibernate does not drop the whole product cache region
+	// as it does after a bulk update
+	private static void restock(Session session, final String productId, final int delta) {
+		session.doWork(new Work() {
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement update = connection
+						.prepareStatement("UPDATE item SET stock = GREATEST(stock + ?, 0) WHERE Id = ?");
+				try {
+					update.setInt(1, delta);
+					update.setString(2, productId);
+					update.executeUpdate();
+				} finally {
+					update.close();
+				}
+			}
+		});
+		logger.info("Restocked product {} by {}", productId, delta);
+	}
+
 	@Override
 	public List<Product> searchProductsByName(String searchTerm) {
 		if (searchTerm == null || searchTerm.trim().isEmpty()) {
@@ -186,6 +381,8 @@ public class ProductDaoImpl implements ProductDao {
 			session = sessionFactory.openSession();
 			Criteria criteria = session.createCriteria(Product.class);
 			criteria.add(Restrictions.eq("productCategory", category));
+			// only the ids are cached; the products come from the entity region
+			criteria.setCacheable(true).setCacheRegion(CATEGORY_QUERY_REGION);
 			@SuppressWarnings("unchecked")
 			List<Product> products = criteria.list();
 			logger.debug("Found {} products in category: {}", products.size(), category);
@@ -233,27 +430,15 @@ public class ProductDaoImpl implements ProductDao {
 			session = sessionFactory.openSession();
 			Criteria criteria = session.createCriteria(Product.class);
 			
-			if (searchTerm != null && !searchTerm.trim().isEmpty()) {
-				criteria.add(Restrictions.ilike("productName", "%" + searchTerm + "%"));
-			}
-			
-			if (category != null && !category.trim().isEmpty() && !category.equals("All")) {
-				criteria.add(Restrictions.eq("productCategory", category));
-			}
-			
-			if (minPrice != null && minPrice > 0) {
-				criteria.add(Restrictions.ge("productPrice", minPrice));
-			}
-			
-			if (maxPrice != null && maxPrice > 0) {
-				criteria.add(Restrictions.le("productPrice", maxPrice));
-			}
-			
 			// Validate price range if both are provided
-			if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+			if (!addSearchRestrictions(criteria, searchTerm, category, minPrice, maxPrice)) {
 				logger.warn("Invalid price range: min={}, max={}", minPrice, maxPrice);
 				return new ArrayList<>();
 			}
+			// a plain category filter repeats often enough to cache, free text and prices do not
+			if ((searchTerm == null || searchTerm.trim().isEmpty()) && minPrice == null && maxPrice == null) {
+				criteria.setCacheable(true).setCacheRegion(CATEGORY_QUERY_REGION);
+			}
 			
 			@SuppressWarnings("unchecked")
 			List<Product> products = criteria.list();
@@ -269,4 +454,94 @@ public class ProductDaoImpl implements ProductDao {
 		}
 	}
 
+	@Override
+	public List<ProductSummary> getProductsPage(String searchTerm, String category, Double minPrice, Double maxPrice,
+			ProductSort sort, ProductPageToken after, int limit) {
+		if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+			logger.warn("Invalid price range: min={}, max={}", minPrice, maxPrice);
+			return new ArrayList<>();
+		}
+		
+		// same filters as addSearchRestrictions; each combination is one query
+		// string, so the plan cache holds only a handful of them
+		StringBuilder hql = new StringBuilder(SUMMARY_SELECT).append(" where 1 = 1");
+		Map<String, Object> parameters = new HashMap<>();
+		if (searchTerm != null && !searchTerm.trim().isEmpty()) {
+			hql.append(" and lower(p.productName) like :term");
+			parameters.put("term", "%" + searchTerm.toLowerCase() + "%");
+		}
+		if (category != null && !category.trim().isEmpty() && !category.equals("All")) {
+			hql.append(" and p.productCategory = :category");
+			parameters.put("category", category);
+		}
+		if (minPrice != null && minPrice > 0) {
+			hql.append(" and p.productPrice >= :minPrice");
+			parameters.put("minPrice", minPrice);
+		}
+		if (maxPrice != null && maxPrice > 0) {
+			hql.append(" and p.productPrice <= :maxPrice");
+			parameters.put("maxPrice", maxPrice);
+		}
+		
+		// seek past the last row of the previous page instead of using an offset
+		String property = "p." + sort.getProperty();
+		if (after != null) {
+			hql.append(" and (").append(property).append(" > :sortKey or (").append(property)
+					.append(" = :sortKey and p.productId > :afterId))");
+			parameters.put("sortKey", after.getSortKey());
+			parameters.put("afterId", after.getProductId());
+		}
+		hql.append(" order by ").append(property).append(", p.productId");
+		
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			Query query = session.createQuery(hql.toString());
+			for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+				query.setParameter(parameter.getKey(), parameter.getValue());
+			}
+			query.setMaxResults(limit);
+			@SuppressWarnings("unchecked")
+			List<ProductSummary> products = query.list();
+			logger.debug("Retrieved page of {} products sorted by {}", products.size(), sort);
+			return products;
+		} catch (Exception e) {
+			logger.error("Error retrieving page of products sorted by {}", sort, e);
+			return new ArrayList<>();
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+	}
+
+	/**
+	 * Adds the search filters shared by the search and page queries.
+	 * 
+	 * @return false if the price range is invalid
+	 */
+	private boolean addSearchRestrictions(Criteria criteria, String searchTerm, String category, Double minPrice,
+			Double maxPrice) {
+		if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+			return false;
+		}
+		
+		if (searchTerm != null && !searchTerm.trim().isEmpty()) {
+			criteria.add(Restrictions.ilike("productName", "%" + searchTerm + "%"));
+		}
+		
+		if (category != null && !category.trim().isEmpty() && !category.equals("All")) {
+			criteria.add(Restrictions.eq("productCategory", category));
+		}
+		
+		if (minPrice != null && minPrice > 0) {
+			criteria.add(Restrictions.ge("productPrice", minPrice));
+		}
+		
+		if (maxPrice != null && maxPrice > 0) {
+			criteria.add(Restrictions.le("productPrice", maxPrice));
+		}
+		return true;
+	}
+
 }
@@ -0,0 +1,13 @@
+package com.dao;
+
+import java.io.IOException;
+
+import com.model.Product;
+
+/**
+ * Callback for products read one at a time from a scrolling query.
+ */
+public interface ProductHandler {
+
+	void handle(Product product) throws IOException;
+}
@@ -0,0 +1,13 @@
+package com.dao;
+
+import java.io.IOException;
+
+import com.model.ProductSummary;
+
+/**
+ * Callback for product summaries read one at a time from a scrolling query.
+ */
+public interface ProductSummaryHandler {
+
+	void handle(ProductSummary summary) throws IOException;
+}
@@ -0,0 +1,221 @@
+package com.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.Work;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Secondary indexes for the hot lookup columns. hbm2ddl only creates tables
+ * and keys, so the indexes are declared here and created at startup once the
+ * session factory has updated the schema. Each index comes with a query it
+ * is meant to serve, and the H2 plan of that query is checked to make sure
+ * it no longer scans the table. Rows that would break a unique index are
+ * repaired before it is created.
+ */
+@Repository
+public class SchemaIndexManager implements InitializingBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(SchemaIndexManager.class);
+
+	// H2 reports a full scan as "PUBLIC.<TABLE>.tableScan" in the plan
+	private static final String TABLE_SCAN = "tableScan";
+
+	// lines duplicated by concurrent adds before the unique cart line index
+	// existed are merged into the one with the lowest id
+	private static final String MERGE_DUPLICATE_LINES = "UPDATE cartitem c SET "
+			+ "quality = (SELECT SUM(d.quality) FROM cartitem d WHERE d.cartId = c.cartId AND d.productId = c.productId), "
+			+ "price = (SELECT SUM(d.price) FROM cartitem d WHERE d.cartId = c.cartId AND d.productId = c.productId) "
+			+ "WHERE c.cartItemId IN (SELECT MIN(cartItemId) FROM cartitem GROUP BY cartId, productId HAVING COUNT(*) > 1)";
+	private static final String DELETE_DUPLICATE_LINES = "DELETE FROM cartitem c WHERE EXISTS (SELECT 1 FROM cartitem d "
+			+ "WHERE d.cartId = c.cartId AND d.productId = c.productId AND d.cartItemId < c.cartItemId)";
+
+	// carts written before the totals were maintained get them summed once
+	private static final String BACKFILL_CART_TOTALS = "UPDATE cart c SET "
+			+ "totalPrice = (SELECT COALESCE(SUM(i.price), 0) FROM cartitem i WHERE i.cartId = c.cartId), "
+			+ "itemCount = (SELECT COALESCE(SUM(i.quality), 0) FROM cartitem i WHERE i.cartId = c.cartId) "
+			+ "WHERE c.itemCount = 0 AND (c.totalPrice <> 0 OR EXISTS (SELECT 1 FROM cartitem i WHERE i.cartId = c.cartId))";
+
+	private static final List<IndexDefinition> INDEXES;
+
+	static {
+		List<IndexDefinition> indexes = new ArrayList<>();
+		// CustomerDaoImpl.getCustomerByemailId and the users-by-username query
+		indexes.add(new IndexDefinition("idx_users_emailId", "users", "emailId",
+				"SELECT emailId, password, enabled FROM users WHERE emailId = 'probe'"));
+		// authorities-by-username query of Spring Security
+		indexes.add(new IndexDefinition("idx_authorities_emailId", "authorities", "emailId",
+				"SELECT emailId, authorities FROM authorities WHERE emailId = 'probe'"));
+		// cart items are always read and cleared by cart
+		indexes.add(new IndexDefinition("idx_cartitem_cartId", "cartitem", "cartId",
+				"SELECT * FROM cartitem WHERE cartId = 'probe'"));
+		// a cart has at most one line per product; CartItemDaoImpl counts on the
+		// insert of a first add failing here when another request created the line
+		indexes.add(new IndexDefinition("uk_cartitem_cart_product", "cartitem", "cartId, productId", true,
+				"SELECT * FROM cartitem WHERE cartId = 'probe' AND productId = 'probe'"));
+		// category searches and the keyset pages sorted by price
+		indexes.add(new IndexDefinition("idx_item_category", "item", "category",
+				"SELECT * FROM item WHERE category = 'probe'"));
+		indexes.add(new IndexDefinition("idx_item_price", "item", "price, Id",
+				"SELECT * FROM item WHERE price BETWEEN 100 AND 200"));
+		INDEXES = Collections.unmodifiableList(indexes);
+	}
+
+	@Autowired
+	private SessionFactory sessionFactory;
+
+	public SessionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	public void afterPropertiesSet() {
+		provisionIndexes();
+	}
+
+	public void provisionIndexes() {
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			session.doWork(new Work() {
+				public void execute(Connection connection) throws SQLException {
+					repairCartLines(connection);
+				}
+			});
+			session.doWork(new Work() {
+				public void execute(Connection connection) throws SQLException {
+					Statement statement = connection.createStatement();
+					try {
+						for (IndexDefinition index : INDEXES) {
+							statement.execute(index.createSql());
+							logger.debug("Index {} present on {}({})", index.name, index.table, index.columns);
+						}
+					} finally {
+						statement.close();
+					}
+				}
+			});
+			logger.info("Provisioned {} secondary indexes", INDEXES.size());
+		} catch (Exception e) {
+			logger.error("Error provisioning secondary indexes", e);
+			return;
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+
+		for (Map.Entry<String, String> plan : verifyQueryPlans().entrySet()) {
+			if (plan.getValue() == null || plan.getValue().contains(TABLE_SCAN)) {
+				logger.warn("Query for index {} does not use an index, plan: {}", plan.getKey(), plan.getValue());
+			}
+		}
+	}
+
+	// One transaction, so a failed repair leaves the lines as they were and
+	// the unique index is then not created over duplicates
+	private static void repairCartLines(Connection connection) throws SQLException {
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		Statement statement = connection.createStatement();
+		try {
+			int merged = statement.executeUpdate(MERGE_DUPLICATE_LINES);
+			int deleted = statement.executeUpdate(DELETE_DUPLICATE_LINES);
+			int backfilled = statement.executeUpdate(BACKFILL_CART_TOTALS);
+			connection.commit();
+			if (deleted > 0) {
+				logger.info("Merged {} duplicated cart lines into {}", deleted, merged);
+			}
+			if (backfilled > 0) {
+				logger.info("Summed the totals of {} carts", backfilled);
+			}
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			statement.close();
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Runs EXPLAIN on the query of every declared index.
+	 * 
+	 * @return the plan per index name, null when the plan could not be read
+	 */
+	public Map<String, String> verifyQueryPlans() {
+		final Map<String, String> plans = new LinkedHashMap<>();
+		Session session = null;
+		try {
+			session = sessionFactory.openSession();
+			session.doWork(new Work() {
+				public void execute(Connection connection) throws SQLException {
+					Statement statement = connection.createStatement();
+					try {
+						for (IndexDefinition index : INDEXES) {
+							ResultSet resultSet = statement.executeQuery("EXPLAIN " + index.query);
+							try {
+								plans.put(index.name, resultSet.next() ? resultSet.getString(1) : null);
+							} finally {
+								resultSet.close();
+							}
+						}
+					} finally {
+						statement.close();
+					}
+				}
+			});
+		} catch (Exception e) {
+			logger.error("Error reading query plans", e);
+		} finally {
+			if (session != null) {
+				session.close();
+			}
+		}
+		return plans;
+	}
+
+	private static final class IndexDefinition {
+
+		final String name;
+		final String table;
+		final String columns;
+		final boolean unique;
+		final String query;
+
+		IndexDefinition(String name, String table, String columns, String query) {
+			this(name, table, columns, false, query);
+		}
+
+		IndexDefinition(String name, String table, String columns, boolean unique, String query) {
+			this.name = name;
+			this.table = table;
+			this.columns = columns;
+			this.unique = unique;
+			this.query = query;
+		}
+
+		String createSql() {
+			return "CREATE " + (unique ? "UNIQUE " : "") + "INDEX IF NOT EXISTS " + name + " ON " + table + "("
+					+ columns + ")";
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package com.dao;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reads the hit, miss and size counters of the Hibernate second-level and
+ * query caches, per region, from the session factory statistics
+ * (hibernate.generate_statistics).
+ */
+@Repository
+public class SecondLevelCacheStatisticsReader {
+
+	@Autowired
+	private SessionFactory sessionFactory;
+
+	public SessionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	public Map<String, Object> getStatistics() {
+		Statistics statistics = sessionFactory.getStatistics();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("enabled", statistics.isStatisticsEnabled());
+		stats.put("hits", statistics.getSecondLevelCacheHitCount());
+		stats.put("misses", statistics.getSecondLevelCacheMissCount());
+		stats.put("puts", statistics.getSecondLevelCachePutCount());
+		stats.put("queryHits", statistics.getQueryCacheHitCount());
+		stats.put("queryMisses", statistics.getQueryCacheMissCount());
+		stats.put("queryPuts", statistics.getQueryCachePutCount());
+
+		String[] regionNames = statistics.getSecondLevelCacheRegionNames();
+		Arrays.sort(regionNames);
+		Map<String, Object> regions = new LinkedHashMap<>();
+		for (String regionName : regionNames) {
+			SecondLevelCacheStatistics region = statistics.getSecondLevelCacheStatistics(regionName);
+			if (region == null) {
+				continue;
+			}
+			Map<String, Object> regionStats = new LinkedHashMap<>();
+			regionStats.put("hits", region.getHitCount());
+			regionStats.put("misses", region.getMissCount());
+			regionStats.put("puts", region.getPutCount());
+			regionStats.put("elementsInMemory", region.getElementCountInMemory());
+			regionStats.put("sizeInMemory", region.getSizeInMemory());
+			regions.put(regionName, regionStats);
+		}
+		stats.put("regions", regions);
+		return stats;
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.dao;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Image store on a directory shared by several application nodes, such as
+ * an NFS mount. The layout is the one of LocalImageStore; refs are always
+ * read from the directory because other nodes change them, and content is
+ * kept for an hour before collection to cover a put on another node that
+ * has not been linked yet, and clock differences between nodes.
+ */
+public class SharedDirectoryImageStore extends LocalImageStore {
+
+	private static final long GRACE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	public SharedDirectoryImageStore(Path root) throws IOException {
+		super(root, GRACE_MILLIS);
+		if (!Files.isWritable(root)) {
+			throw new IOException("Shared image directory is not writable: " + root);
+		}
+	}
+
+	@Override
+	protected boolean isRefCacheEnabled() {
+		return false;
+	}
+
+}
@@ -4,18 +4,23 @@ import java.io.Serializable;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+
 @Entity
 @Table(name = "authorities")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "authorities")
 public class Authorities implements Serializable {
 
 	private static final long serialVersionUID = 8734140534986494039L;
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(generator = "pooled")
+	@GenericGenerator(name = "pooled", strategy = "com.dao.PooledIdGenerator")
 	private String authorityId;
 	private String emailId;
 	private String authorities;
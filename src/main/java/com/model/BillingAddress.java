@@ -4,11 +4,12 @@ import java.io.Serializable;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.GenericGenerator;
+
 @Entity
 @Table(name = "billingAddress")
 public class BillingAddress implements Serializable {
@@ -16,7 +17,8 @@ public class BillingAddress implements Serializable {
 	private static final long serialVersionUID = 1028098616457762743L;
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(generator = "pooled")
+	@GenericGenerator(name = "pooled", strategy = "com.dao.PooledIdGenerator")
 	private String billindAddressId;
 	private String address;
 	private String city;
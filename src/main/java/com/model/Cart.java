@@ -4,15 +4,19 @@ import java.io.Serializable;
 import java.util.List;
 
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.OptimisticLock;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
@@ -23,7 +27,8 @@ public class Cart implements Serializable {
 	private static final long serialVersionUID = 8436097833452420298L;
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(generator = "pooled")
+	@GenericGenerator(name = "pooled", strategy = "com.dao.PooledIdGenerator")
 	private String cartId;
 
 	@OneToOne
@@ -31,11 +36,23 @@ public class Cart implements Serializable {
 	@JsonIgnore
 	private Customer customer;
 
+	// items carry their own version, adding or removing one does not bump the cart's
 	@OneToMany(mappedBy = "cart", cascade = CascadeType.ALL,fetch=FetchType.EAGER)
+	@OptimisticLock(excluded = true)
 	private List<CartItem> cartItem;
 
+	// kept current by every line write, in the same transaction
 	private double totalPrice;
 
+	@Column(nullable = false, columnDefinition = "int default 0")
+	private int itemCount;
+
+	// the default lets hbm2ddl add the column to rows that predate it
+	@Version
+	@Column(nullable = false, columnDefinition = "bigint default 0")
+	@JsonIgnore
+	private long version;
+
 	public String getCartId() {
 		return cartId;
 	}
@@ -68,4 +85,20 @@ public class Cart implements Serializable {
 		this.totalPrice = totalPrice;
 	}
 
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	public void setItemCount(int itemCount) {
+		this.itemCount = itemCount;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 }
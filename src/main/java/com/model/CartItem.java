@@ -2,13 +2,16 @@ package com.model;
 
 import java.io.Serializable;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.GenericGenerator;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
@@ -19,7 +22,8 @@ public class CartItem implements Serializable {
 	private static final long serialVersionUID = -2455760938054036364L;
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(generator = "pooled")
+	@GenericGenerator(name = "pooled", strategy = "com.dao.PooledIdGenerator")
 	private String cartItemId;
 
 	private int quality;
@@ -35,6 +39,12 @@ public class CartItem implements Serializable {
 	@JsonIgnore
 	private Cart cart;
 
+	// the default lets hbm2ddl add the column to rows that predate it
+	@Version
+	@Column(nullable = false, columnDefinition = "bigint default 0")
+	@JsonIgnore
+	private long version;
+
 	public String getCartItemId() {
 		return cartItemId;
 	}
@@ -75,4 +85,12 @@ public class CartItem implements Serializable {
 		this.cart = cart;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 }
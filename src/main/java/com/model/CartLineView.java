@@ -0,0 +1,61 @@
+package com.model;
+
+import java.io.Serializable;
+
+/**
+ * Read-only line of a CartView: the product's id and name instead of the
+ * whole Product, the current unit price, the quantity and what the line adds
+ * to the cart total.
+ */
+public final class CartLineView implements Serializable {
+
+	private static final long serialVersionUID = 2870359415867306424L;
+
+	private final String cartItemId;
+	private final String productId;
+	private final String productName;
+	private final double unitPrice;
+	private final int quantity;
+	private final double lineTotal;
+
+	public CartLineView(String cartItemId, String productId, String productName, double unitPrice, int quantity,
+			double lineTotal) {
+		this.cartItemId = cartItemId;
+		this.productId = productId;
+		this.productName = productName;
+		this.unitPrice = unitPrice;
+		this.quantity = quantity;
+		this.lineTotal = lineTotal;
+	}
+
+	public static CartLineView of(CartItem cartItem) {
+		Product product = cartItem.getProduct();
+		return new CartLineView(cartItem.getCartItemId(), product.getProductId(), product.getProductName(),
+				product.getProductPrice(), cartItem.getQuality(), cartItem.getPrice());
+	}
+
+	public String getCartItemId() {
+		return cartItemId;
+	}
+
+	public String getProductId() {
+		return productId;
+	}
+
+	public String getProductName() {
+		return productName;
+	}
+
+	public double getUnitPrice() {
+		return unitPrice;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public double getLineTotal() {
+		return lineTotal;
+	}
+
+}
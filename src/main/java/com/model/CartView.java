@@ -0,0 +1,71 @@
+package com.model;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.DigestUtils;
+
+/**
+ * Read-only view of a cart with just what the cart page shows. The page
+ * polls it after every change, so it is built from one projection query
+ * rather than by loading the Cart entity with every line's full Product.
+ */
+public final class CartView implements Serializable {
+
+	private static final long serialVersionUID = -6305182466143707916L;
+
+	private final String cartId;
+	private final double totalPrice;
+	private final int itemCount;
+	private final List<CartLineView> lines;
+
+	public CartView(String cartId, double totalPrice, int itemCount, List<CartLineView> lines) {
+		this.cartId = cartId;
+		this.totalPrice = totalPrice;
+		this.itemCount = itemCount;
+		this.lines = lines;
+	}
+
+	public static CartView of(Cart cart) {
+		List<CartLineView> lines = new ArrayList<>();
+		for (CartItem cartItem : cart.getCartItem()) {
+			lines.add(CartLineView.of(cartItem));
+		}
+		return new CartView(cart.getCartId(), cart.getTotalPrice(), cart.getItemCount(), lines);
+	}
+
+	public String getCartId() {
+		return cartId;
+	}
+
+	public double getTotalPrice() {
+		return totalPrice;
+	}
+
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	public List<CartLineView> getLines() {
+		return lines;
+	}
+
+	/**
+	 * Strong ETag of everything the view shows. It is taken from the content
+	 * rather than the cart's row version: write-behind and guest carts have
+	 * none, and renaming or repricing a product does not bump it.
+	 */
+	public String etag() {
+		StringBuilder content = new StringBuilder(cartId).append('|').append(totalPrice).append('|')
+				.append(itemCount);
+		for (CartLineView line : lines) {
+			content.append('|').append(line.getCartItemId()).append(',').append(line.getProductId()).append(',')
+					.append(line.getProductName()).append(',').append(line.getUnitPrice()).append(',')
+					.append(line.getQuantity()).append(',').append(line.getLineTotal());
+		}
+		return "\"" + DigestUtils.md5DigestAsHex(content.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+	}
+
+}
@@ -6,12 +6,13 @@ import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.GenericGenerator;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Entity
@@ -21,7 +22,8 @@ public class Customer implements Serializable {
 	private static final long serialVersionUID = 2652327633296064143L;
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(generator = "pooled")
+	@GenericGenerator(name = "pooled", strategy = "com.dao.PooledIdGenerator")
 	private String customerId;
 	private String firstName;
 	private String lastName;
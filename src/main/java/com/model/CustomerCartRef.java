@@ -0,0 +1,36 @@
+package com.model;
+
+import java.io.Serializable;
+
+/**
+ * Ids of a logged in customer and of their cart. Captured once at login and
+ * kept in the HTTP session, so cart requests do not have to load the
+ * customer with all of its eager associations just to find the cart.
+ */
+public final class CustomerCartRef implements Serializable {
+
+	private static final long serialVersionUID = 6120733585914873102L;
+
+	private final String emailId;
+	private final String customerId;
+	private final String cartId;
+
+	public CustomerCartRef(String emailId, String customerId, String cartId) {
+		this.emailId = emailId;
+		this.customerId = customerId;
+		this.cartId = cartId;
+	}
+
+	public String getEmailId() {
+		return emailId;
+	}
+
+	public String getCustomerId() {
+		return customerId;
+	}
+
+	public String getCartId() {
+		return cartId;
+	}
+
+}
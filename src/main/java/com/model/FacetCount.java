@@ -0,0 +1,41 @@
+package com.model;
+
+/**
+ * Number of search results sharing one facet value. Price range facets also
+ * carry the bounds to filter on when the facet is selected.
+ */
+public class FacetCount {
+
+	private final String value;
+	private final int count;
+	private final Double minPrice;
+	private final Double maxPrice;
+
+	public FacetCount(String value, int count) {
+		this(value, count, null, null);
+	}
+
+	public FacetCount(String value, int count, Double minPrice, Double maxPrice) {
+		this.value = value;
+		this.count = count;
+		this.minPrice = minPrice;
+		this.maxPrice = maxPrice;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public Double getMinPrice() {
+		return minPrice;
+	}
+
+	public Double getMaxPrice() {
+		return maxPrice;
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cart of a shopper who has not logged in. It only holds the quantity of
+ * each product and travels in a signed cookie, so nothing is written to the
+ * database until it is merged into a customer's cart at login. No stock is
+ * reserved for it before then, so anonymous requests cannot hold units.
+ */
+public class GuestCart {
+
+	// the id the cart pages use for a guest cart, and the prefix of its line ids
+	public static final String CART_ID = "guest";
+	public static final String LINE_PREFIX = "guest-";
+
+	private final Map<String, Integer> quantities = new LinkedHashMap<>();
+
+	// Product id to quantity, in the order the products were added
+	public Map<String, Integer> getQuantities() {
+		return quantities;
+	}
+
+	public boolean isEmpty() {
+		return quantities.isEmpty();
+	}
+
+	public void add(String productId, int quantity) {
+		Integer current = quantities.get(productId);
+		quantities.put(productId, (current != null ? current : 0) + quantity);
+	}
+
+	// Returns the quantity the product had, 0 when it was not in the cart
+	public int remove(String productId) {
+		Integer removed = quantities.remove(productId);
+		return removed != null ? removed : 0;
+	}
+
+	public void clear() {
+		quantities.clear();
+	}
+
+	public static String lineId(String productId) {
+		return LINE_PREFIX + productId;
+	}
+
+	public static boolean isLineId(String cartItemId) {
+		return cartItemId.startsWith(LINE_PREFIX);
+	}
+
+	public static String productOfLine(String cartItemId) {
+		return cartItemId.substring(LINE_PREFIX.length());
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.model;
+
+/**
+ * A cache invalidation published by the node that made a write. The version
+ * is the position of the event in the shared change log, so every node sees
+ * the events in the same order and can tell which ones it has applied.
+ */
+public final class InvalidationEvent {
+
+	// a product was added, edited or deleted; the key is its id
+	public static final String PRODUCT = "product";
+	// the whole catalog changed, as after a bulk import; no key
+	public static final String CATALOG = "catalog";
+	// the stock of a product changed at checkout; the key is the product id
+	public static final String STOCK = "stock";
+	// a customer registered or changed; the key is the e-mail id
+	public static final String CUSTOMER = "customer";
+
+	private final long version;
+	private final String region;
+	private final String key;
+	private final String origin;
+
+	public InvalidationEvent(long version, String region, String key, String origin) {
+		this.version = version;
+		this.region = region;
+		this.key = key;
+		this.origin = origin;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	// id of the node that published the event
+	public String getOrigin() {
+		return origin;
+	}
+
+	@Override
+	public String toString() {
+		return region + ":" + key + "@" + version;
+	}
+
+}
@@ -5,25 +5,29 @@ import java.io.Serializable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.validator.constraints.NotEmpty;
 import org.springframework.web.multipart.MultipartFile;
 
 @Entity
 @Table(name = "item")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product")
 public class Product implements Serializable {
 
 	private static final long serialVersionUID = 5186013952828648626L;
 
 	@Id
 	@Column(name = "Id")
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(generator = "pooled")
+	@GenericGenerator(name = "pooled", strategy = "com.dao.PooledIdGenerator")
 	private String productId;
 	
 	@Column(name="category")
@@ -44,8 +48,16 @@ public class Product implements Serializable {
 	@Column(name = "price")
 	private double productPrice;
 	
-	@Column(name = "unit")
-	private String unitStock;
+	// units on hand. Updates of the product leave it alone: checkout takes
+	// units off with a conditional update and the admin edit adds the change
+	// made on its form, so neither writes over a sale made meanwhile
+	@Min(value = 0, message = "Stock cannot be negative")
+	@Column(name = "stock", columnDefinition = "int default 0", updatable = false)
+	private int unitStock;
+
+	// stock the edit form was loaded with, null outside of an edit
+	@Transient
+	private Integer loadedStock;
 
 	@Transient
 	private MultipartFile productImage;
@@ -76,7 +88,7 @@ public class Product implements Serializable {
 		return productPrice;
 	}
 
-	public String getUnitStock() {
+	public int getUnitStock() {
 		return unitStock;
 	}
 
@@ -104,10 +116,18 @@ public class Product implements Serializable {
 		this.productPrice = productPrice;
 	}
 
-	public void setUnitStock(String unitStock) {
+	public void setUnitStock(int unitStock) {
 		this.unitStock = unitStock;
 	}
 
+	public Integer getLoadedStock() {
+		return loadedStock;
+	}
+
+	public void setLoadedStock(Integer loadedStock) {
+		this.loadedStock = loadedStock;
+	}
+
 	public MultipartFile getProductImage() {
 		return productImage;
 	}
@@ -118,7 +138,7 @@ public class Product implements Serializable {
 
 	// Constructors
 	public Product(String productId, String productCategory, String productDescription, String productManufacturer,
-			String productName, double productPrice, String unitStock) {
+			String productName, double productPrice, int unitStock) {
 		super();
 		this.productId = productId;
 		this.productCategory = productCategory;
@@ -0,0 +1,39 @@
+package com.model;
+
+import java.util.List;
+
+/**
+ * Facet counts of a product search, one list per facet dimension.
+ */
+public class ProductFacets {
+
+	private final int totalCount;
+	private final List<FacetCount> categories;
+	private final List<FacetCount> manufacturers;
+	private final List<FacetCount> priceRanges;
+
+	public ProductFacets(int totalCount, List<FacetCount> categories, List<FacetCount> manufacturers,
+			List<FacetCount> priceRanges) {
+		this.totalCount = totalCount;
+		this.categories = categories;
+		this.manufacturers = manufacturers;
+		this.priceRanges = priceRanges;
+	}
+
+	public int getTotalCount() {
+		return totalCount;
+	}
+
+	public List<FacetCount> getCategories() {
+		return categories;
+	}
+
+	public List<FacetCount> getManufacturers() {
+		return manufacturers;
+	}
+
+	public List<FacetCount> getPriceRanges() {
+		return priceRanges;
+	}
+
+}
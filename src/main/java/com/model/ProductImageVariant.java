@@ -0,0 +1,45 @@
+package com.model;
+
+/**
+ * Pre-sized renditions of a product image, generated from the upload.
+ * The file of a variant is {productId}-{suffix}.jpg next to the original
+ * {productId}.jpg; sizes are twice the display size for high density screens.
+ */
+public enum ProductImageVariant {
+
+	// 100x90 cells of the product tables
+	THUMBNAIL("thumb", 200, 0.75f),
+	// cards of the product grid
+	GRID("grid", 480, 0.8f),
+	// the product page
+	DETAIL("detail", 1200, 0.85f);
+
+	private final String suffix;
+	private final int maxSize;
+	private final float quality;
+
+	private ProductImageVariant(String suffix, int maxSize, float quality) {
+		this.suffix = suffix;
+		this.maxSize = maxSize;
+		this.quality = quality;
+	}
+
+	public String getSuffix() {
+		return suffix;
+	}
+
+	// longest side in pixels, smaller images are not scaled up
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	// JPEG compression quality between 0 and 1
+	public float getQuality() {
+		return quality;
+	}
+
+	public String fileName(String productId) {
+		return productId + "-" + suffix + ".jpg";
+	}
+
+}
@@ -0,0 +1,125 @@
+package com.model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one bulk product import. Updated by the import thread and
+ * read by the progress endpoint, so counters are atomic and the rest volatile.
+ */
+public class ProductImportStatus {
+
+	public static final String QUEUED = "QUEUED";
+	public static final String RUNNING = "RUNNING";
+	public static final String COMPLETED = "COMPLETED";
+	public static final String FAILED = "FAILED";
+
+	private static final int MAX_ERRORS = 50;
+
+	private final String jobId;
+	private final String format;
+	private final Date submittedAt = new Date();
+
+	private volatile String state = QUEUED;
+	private volatile String message;
+	private volatile Date startedAt;
+	private volatile Date finishedAt;
+
+	private final AtomicLong rowsRead = new AtomicLong();
+	private final AtomicLong imported = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	// the first few rejected rows, enough to fix a file without flooding memory
+	private final List<String> errors = new ArrayList<>();
+
+	public ProductImportStatus(String jobId, String format) {
+		this.jobId = jobId;
+		this.format = format;
+	}
+
+	public void started() {
+		startedAt = new Date();
+		state = RUNNING;
+	}
+
+	public void rowRead() {
+		rowsRead.incrementAndGet();
+	}
+
+	public void imported(int count) {
+		imported.addAndGet(count);
+	}
+
+	public void rejected(long row, String reason) {
+		rejected.incrementAndGet();
+		synchronized (errors) {
+			if (errors.size() < MAX_ERRORS) {
+				errors.add("Row " + row + ": " + reason);
+			}
+		}
+	}
+
+	public void completed() {
+		finishedAt = new Date();
+		state = COMPLETED;
+	}
+
+	public void failed(String message) {
+		this.message = message;
+		finishedAt = new Date();
+		state = FAILED;
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public Date getSubmittedAt() {
+		return submittedAt;
+	}
+
+	public Date getStartedAt() {
+		return startedAt;
+	}
+
+	public Date getFinishedAt() {
+		return finishedAt;
+	}
+
+	public long getRowsRead() {
+		return rowsRead.get();
+	}
+
+	public long getImported() {
+		return imported.get();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public List<String> getErrors() {
+		synchronized (errors) {
+			return new ArrayList<>(errors);
+		}
+	}
+
+	public boolean isDone() {
+		return COMPLETED.equals(state) || FAILED.equals(state);
+	}
+
+}
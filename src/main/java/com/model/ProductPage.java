@@ -0,0 +1,42 @@
+package com.model;
+
+import java.util.List;
+
+/**
+ * One page of a product listing together with the token of the next page.
+ */
+public class ProductPage {
+
+	private final List<ProductSummary> products;
+	private final ProductSort sort;
+	private final int pageSize;
+	private final String nextPageToken;
+
+	public ProductPage(List<ProductSummary> products, ProductSort sort, int pageSize, String nextPageToken) {
+		this.products = products;
+		this.sort = sort;
+		this.pageSize = pageSize;
+		this.nextPageToken = nextPageToken;
+	}
+
+	public List<ProductSummary> getProducts() {
+		return products;
+	}
+
+	public ProductSort getSort() {
+		return sort;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public String getNextPageToken() {
+		return nextPageToken;
+	}
+
+	public boolean isHasNext() {
+		return nextPageToken != null;
+	}
+
+}
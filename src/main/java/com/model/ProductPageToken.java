@@ -0,0 +1,77 @@
+package com.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursor for keyset pagination. It holds the sort key and the Id of
+ * the last product of a page, so the next page starts right after that row
+ * instead of skipping over an OFFSET.
+ */
+public final class ProductPageToken {
+
+	private static final String SEPARATOR = "\n";
+
+	private final ProductSort sort;
+	private final String productId;
+	private final String sortKey;
+
+	public ProductPageToken(ProductSort sort, String productId, String sortKey) {
+		this.sort = sort;
+		this.productId = productId;
+		this.sortKey = sortKey;
+	}
+
+	public static ProductPageToken after(ProductSort sort, Product product) {
+		return after(sort, product, sort.keyOf(product));
+	}
+
+	public static ProductPageToken after(ProductSort sort, Product product, Object sortKey) {
+		return new ProductPageToken(sort, product.getProductId(), String.valueOf(sortKey));
+	}
+
+	public static ProductPageToken after(ProductSort sort, ProductSummary product) {
+		return new ProductPageToken(sort, product.getProductId(), String.valueOf(sort.keyOf(product)));
+	}
+
+	public ProductSort getSort() {
+		return sort;
+	}
+
+	public String getProductId() {
+		return productId;
+	}
+
+	public Object getSortKey() {
+		return sort.isNumeric() ? (Object) Double.valueOf(sortKey) : sortKey;
+	}
+
+	public String encode() {
+		String raw = sort.name() + SEPARATOR + productId + SEPARATOR + sortKey;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decodes a token produced by {@link #encode()}.
+	 * 
+	 * @return the token, or null if it is missing or malformed
+	 */
+	public static ProductPageToken decode(String token) {
+		if (token == null || token.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+			String[] parts = raw.split(SEPARATOR, 3);
+			if (parts.length != 3) {
+				return null;
+			}
+			ProductPageToken decoded = new ProductPageToken(ProductSort.valueOf(parts[0]), parts[1], parts[2]);
+			decoded.getSortKey(); // rejects a non numeric price key
+			return decoded;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.model;
+
+/**
+ * Sort orders supported by the paginated product listings.
+ * Every order is completed with the product Id so that the keyset is unique.
+ * RELEVANCE only applies to text searches, which are ordered in memory.
+ */
+public enum ProductSort {
+
+	NAME("productName"), PRICE("productPrice"), RELEVANCE(null);
+
+	private final String property;
+
+	private ProductSort(String property) {
+		this.property = property;
+	}
+
+	public String getProperty() {
+		return property;
+	}
+
+	public boolean isNumeric() {
+		return this != NAME;
+	}
+
+	/**
+	 * @return the sort key of the product, RELEVANCE keys come from the search index
+	 */
+	public Object keyOf(Product product) {
+		return this == PRICE ? (Object) product.getProductPrice() : product.getProductName();
+	}
+
+	public Object keyOf(ProductSummary product) {
+		return this == PRICE ? (Object) product.getProductPrice() : product.getProductName();
+	}
+
+	/**
+	 * Compares two keys of this sort in listing order (highest score first for RELEVANCE).
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public int compareKeys(Object first, Object second) {
+		int result = ((Comparable) first).compareTo(second);
+		return this == RELEVANCE ? -result : result;
+	}
+
+	public static ProductSort fromString(String value) {
+		return fromString(value, NAME);
+	}
+
+	public static ProductSort fromString(String value, ProductSort defaultSort) {
+		if (value != null) {
+			for (ProductSort sort : values()) {
+				if (sort.name().equalsIgnoreCase(value.trim())) {
+					return sort;
+				}
+			}
+		}
+		return defaultSort;
+	}
+
+}
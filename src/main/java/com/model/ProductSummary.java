@@ -0,0 +1,62 @@
+package com.model;
+
+import java.io.Serializable;
+
+/**
+ * Read-only view of a product with the columns the listings show. List and
+ * search pages are built from these instead of Product entities, so the
+ * description is never read and Hibernate keeps no managed copy or dirty-check
+ * snapshot of the rows. Property names match Product, so the list views bind
+ * to either.
+ */
+public final class ProductSummary implements Serializable {
+
+	private static final long serialVersionUID = -3918254718040339657L;
+
+	private final String productId;
+	private final String productName;
+	private final String productCategory;
+	private final String productManufacturer;
+	private final double productPrice;
+	private final int unitStock;
+
+	public ProductSummary(String productId, String productName, String productCategory, String productManufacturer,
+			double productPrice, int unitStock) {
+		this.productId = productId;
+		this.productName = productName;
+		this.productCategory = productCategory;
+		this.productManufacturer = productManufacturer;
+		this.productPrice = productPrice;
+		this.unitStock = unitStock;
+	}
+
+	public static ProductSummary of(Product product) {
+		return new ProductSummary(product.getProductId(), product.getProductName(), product.getProductCategory(),
+				product.getProductManufacturer(), product.getProductPrice(), product.getUnitStock());
+	}
+
+	public String getProductId() {
+		return productId;
+	}
+
+	public String getProductName() {
+		return productName;
+	}
+
+	public String getProductCategory() {
+		return productCategory;
+	}
+
+	public String getProductManufacturer() {
+		return productManufacturer;
+	}
+
+	public double getProductPrice() {
+		return productPrice;
+	}
+
+	public int getUnitStock() {
+		return unitStock;
+	}
+
+}
@@ -0,0 +1,33 @@
+package com.model;
+
+/**
+ * A typeahead suggestion, either a product name or a category.
+ */
+public class Suggestion {
+
+	public static final String PRODUCT = "product";
+	public static final String CATEGORY = "category";
+
+	private final String text;
+	private final String type;
+	private final String productId;
+
+	public Suggestion(String text, String type, String productId) {
+		this.text = text;
+		this.type = type;
+		this.productId = productId;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getProductId() {
+		return productId;
+	}
+
+}
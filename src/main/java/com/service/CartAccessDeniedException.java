@@ -0,0 +1,19 @@
+package com.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A cart request names a cart, or a line of a cart, that is neither the
+ * logged in customer's cart nor the guest cart of the request's cookie.
+ */
+@ResponseStatus(value = HttpStatus.FORBIDDEN, reason = "Not your cart")
+public class CartAccessDeniedException extends RuntimeException {
+
+	private static final long serialVersionUID = -6158935617290544178L;
+
+	public CartAccessDeniedException(String id) {
+		super("Cart or cart item " + id + " does not belong to the caller");
+	}
+
+}
@@ -1,11 +1,20 @@
 package com.service;
 
-import com.model.Cart;
+import java.util.List;
+
 import com.model.CartItem;
+import com.model.Product;
 
 public interface CartItemService {
 
-	void addCartItem(CartItem cartItem);
-	void removeCartItem(String CartItemId);
-	void removeAllCartItems(Cart cart);
+	CartItem getCartItemById(String cartItemId);
+	// Adds units of the product to the cart, retrying writes that conflict
+	void incrementQuantity(String cartId, Product product, int quantity);
+	// Adds the lines' quantities of their products to the cart in one write, the
+	// lines carry the product and the quantity
+	void addCartItems(String cartId, List<CartItem> cartItems);
+	// Returns the item that was removed, null when there was none
+	CartItem removeCartItem(String CartItemId);
+	// Empties the cart in one transaction, returns how many lines it had
+	int removeAllCartItems(String cartId);
 }
@@ -1,18 +1,36 @@
 package com.service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.stereotype.Service;
 
 import com.dao.CartItemDao;
-import com.model.Cart;
 import com.model.CartItem;
+import com.model.Product;
 
 @Service
 public class CartItemServiceImpl implements CartItemService {
 
+	private static final Logger logger = LoggerFactory.getLogger(CartItemServiceImpl.class);
+
+	// a write that conflicts with another one on the same cart line is tried
+	// again after a random pause below a doubling bound, up to this many times
+	private static final int MAX_ATTEMPTS = 5;
+	private static final long BASE_BACKOFF_MILLIS = 10;
+	private static final long MAX_BACKOFF_MILLIS = 200;
+
 	@Autowired
 	private CartItemDao cartItemDao;
 
+	@Autowired
+	private WriteBehindCartStore writeBehindCartStore;
+
 	public CartItemDao getCartItemDao() {
 		return cartItemDao;
 	}
@@ -21,17 +39,104 @@ public class CartItemServiceImpl implements CartItemService {
 		this.cartItemDao = cartItemDao;
 	}
 
-	public void addCartItem(CartItem cartItem) {
-		cartItemDao.addCartItem(cartItem);
+	public WriteBehindCartStore getWriteBehindCartStore() {
+		return writeBehindCartStore;
+	}
+
+	public void setWriteBehindCartStore(WriteBehindCartStore writeBehindCartStore) {
+		this.writeBehindCartStore = writeBehindCartStore;
+	}
+
+	public CartItem getCartItemById(String cartItemId) {
+		if (writeBehindCartStore.isActive()) {
+			return writeBehindCartStore.getCartItemById(cartItemId);
+		}
+		return cartItemDao.getCartItemById(cartItemId);
+	}
+
+	public void incrementQuantity(final String cartId, final Product product, final int quantity) {
+		if (writeBehindCartStore.isActive()) {
+			writeBehindCartStore.incrementQuantity(cartId, product, quantity);
+			return;
+		}
+		withRetry(new CartLineWrite<Void>() {
+			public Void run() {
+				cartItemDao.incrementQuantity(cartId, product.getProductId(), quantity, product.getProductPrice());
+				return null;
+			}
+		});
+	}
+
+	public void addCartItems(final String cartId, List<CartItem> cartItems) {
+		// priced here, so a retry writes the same amounts
+		final List<CartItem> lines = new ArrayList<>();
+		for (CartItem cartItem : cartItems) {
+			CartItem line = new CartItem();
+			line.setProduct(cartItem.getProduct());
+			line.setQuality(cartItem.getQuality());
+			line.setPrice(cartItem.getQuality() * cartItem.getProduct().getProductPrice());
+			lines.add(line);
+		}
+		if (lines.isEmpty()) {
+			return;
+		}
+		if (writeBehindCartStore.isActive()) {
+			writeBehindCartStore.addCartItems(cartId, lines);
+			return;
+		}
+		withRetry(new CartLineWrite<Void>() {
+			public Void run() {
+				cartItemDao.addCartItems(cartId, lines);
+				return null;
+			}
+		});
+	}
+
+	public CartItem removeCartItem(final String CartItemId) {
+		if (writeBehindCartStore.isActive()) {
+			return writeBehindCartStore.removeCartItem(CartItemId);
+		}
+		return withRetry(new CartLineWrite<CartItem>() {
+			public CartItem run() {
+				return cartItemDao.removeCartItem(CartItemId);
+			}
+		});
+	}
 
+	public int removeAllCartItems(final String cartId) {
+		if (writeBehindCartStore.isActive()) {
+			return writeBehindCartStore.removeAllCartItems(cartId);
+		}
+		return withRetry(new CartLineWrite<Integer>() {
+			public Integer run() {
+				return cartItemDao.removeAllCartItems(cartId);
+			}
+		});
 	}
 
-	public void removeCartItem(String CartItemId) {
-		cartItemDao.removeCartItem(CartItemId);
+	private <T> T withRetry(CartLineWrite<T> write) {
+		for (int attempt = 1;; attempt++) {
+			try {
+				return write.run();
+			} catch (ConcurrencyFailureException e) {
+				if (attempt >= MAX_ATTEMPTS) {
+					logger.warn("Giving up a cart line write after {} conflicting attempts", attempt);
+					throw e;
+				}
+				long bound = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+				logger.debug("Cart line write conflicted on attempt {}, retrying within {} ms", attempt, bound);
+				try {
+					Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
 	}
 
-	public void removeAllCartItems(Cart cart) {
-		cartItemDao.removeAllCartItems(cart);
+	private interface CartLineWrite<T> {
+		T run();
 	}
 
 }
@@ -1,8 +1,19 @@
 package com.service;
 
+import java.io.IOException;
+
 import com.model.Cart;
+import com.model.CartView;
 
 public interface CartService {
 
 	Cart getCartByCartId(String CartId);
+
+	// What the cart page shows, without loading the cart's entities
+	CartView getCartView(String cartId);
+
+	double getGrandTotal(String cartId);
+
+	// The cart for checkout, written to the tables first when it lives in memory
+	Cart validate(String cartId) throws IOException;
 }
@@ -1,10 +1,13 @@
 package com.service;
 
+import java.io.IOException;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.dao.CartDao;
 import com.model.Cart;
+import com.model.CartView;
 
 @Service
 public class CartServiceImpl implements CartService {
@@ -12,6 +15,9 @@ public class CartServiceImpl implements CartService {
 	@Autowired
 	private CartDao cartDao;
 
+	@Autowired
+	private WriteBehindCartStore writeBehindCartStore;
+
 	public CartDao getCartDao() {
 		return cartDao;
 	}
@@ -20,9 +26,42 @@ public class CartServiceImpl implements CartService {
 		this.cartDao = cartDao;
 	}
 
-	public Cart getCartByCartId(String CartId) {
+	public WriteBehindCartStore getWriteBehindCartStore() {
+		return writeBehindCartStore;
+	}
+
+	public void setWriteBehindCartStore(WriteBehindCartStore writeBehindCartStore) {
+		this.writeBehindCartStore = writeBehindCartStore;
+	}
 
+	public Cart getCartByCartId(String CartId) {
+		if (writeBehindCartStore.isActive()) {
+			return writeBehindCartStore.getCart(CartId);
+		}
 		return cartDao.getCartByCartId(CartId);
 	}
 
+	public CartView getCartView(String cartId) {
+		if (writeBehindCartStore.isActive()) {
+			// the live cart is in memory, only the product names come from the catalog cache
+			Cart cart = writeBehindCartStore.getCart(cartId);
+			return cart != null ? CartView.of(cart) : null;
+		}
+		return cartDao.getCartView(cartId);
+	}
+
+	public double getGrandTotal(String cartId) {
+		if (writeBehindCartStore.isActive()) {
+			return writeBehindCartStore.getGrandTotal(cartId);
+		}
+		return cartDao.getGrandTotal(cartId);
+	}
+
+	public Cart validate(String cartId) throws IOException {
+		if (writeBehindCartStore.isActive()) {
+			writeBehindCartStore.flush(cartId);
+		}
+		return cartDao.validate(cartId);
+	}
+
 }
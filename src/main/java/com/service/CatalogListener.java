@@ -0,0 +1,21 @@
+package com.service;
+
+import java.util.List;
+
+import com.model.Product;
+
+/**
+ * Receives catalog changes from ProductServiceImpl so that in-memory
+ * structures built over the products stay in step with the database.
+ * Listeners are called in their @Order and never concurrently.
+ */
+public interface CatalogListener {
+
+	// Replaces whatever the listener holds with the full catalog
+	void catalogLoaded(List<Product> products);
+
+	// A product was added or edited
+	void productSaved(Product product);
+
+	void productRemoved(String productId);
+}
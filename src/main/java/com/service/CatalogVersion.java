@@ -0,0 +1,49 @@
+package com.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Monotonic version of the product catalog, bumped by every product write.
+ * Controllers derive ETag and Last-Modified from it so unchanged catalog
+ * pages can be answered with a 304 before anything is loaded or rendered.
+ * The boot time is part of the ETag because the counter restarts with the
+ * application.
+ */
+@Component
+public class CatalogVersion {
+
+	private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+	private final AtomicLong version = new AtomicLong();
+
+	// HTTP dates have second precision
+	private volatile long lastModified = System.currentTimeMillis() / 1000 * 1000;
+
+	public long getVersion() {
+		return version.get();
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public long increment() {
+		lastModified = System.currentTimeMillis() / 1000 * 1000;
+		return version.incrementAndGet();
+	}
+
+	/**
+	 * Strong ETag of the current version, qualified by whatever else the
+	 * response depends on (the user for rendered pages).
+	 */
+	public String etag(String variant) {
+		StringBuilder etag = new StringBuilder("\"").append(epoch).append('-').append(version.get());
+		if (variant != null && !variant.isEmpty()) {
+			etag.append('-').append(variant);
+		}
+		return etag.append('"').toString();
+	}
+
+}
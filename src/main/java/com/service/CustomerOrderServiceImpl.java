@@ -1,13 +1,9 @@
 package com.service;
 
-import java.util.List;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.dao.CustomerOrderDao;
-import com.model.Cart;
-import com.model.CartItem;
 import com.model.CustomerOrder;
 
 @Service
@@ -23,15 +19,9 @@ public class CustomerOrderServiceImpl implements CustomerOrderService {
 		customerOrderDao.addCustomerOrder(customerOrder);
 	}
 
+	// summed by the database rather than by loading the cart and its items
 	public double getCustomerOrderGrandTotal(String cartId) {
-		double grandTotal=0;
-		Cart cart = cartService.getCartByCartId(cartId);
-		List<CartItem> cartItems = cart.getCartItem();
-		
-		for(CartItem item: cartItems){
-			grandTotal += item.getPrice();
-		}
-		return grandTotal;
+		return cartService.getGrandTotal(cartId);
 	}
 
 }
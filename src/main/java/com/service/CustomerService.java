@@ -3,6 +3,7 @@ package com.service;
 import java.util.List;
 
 import com.model.Customer;
+import com.model.CustomerCartRef;
 
 public interface CustomerService {
 
@@ -12,4 +13,6 @@ public interface CustomerService {
 
 	Customer getCustomerByemailId(String emailId);
 
+	CustomerCartRef getCartRefByemailId(String emailId);
+
 }
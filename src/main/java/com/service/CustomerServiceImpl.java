@@ -2,18 +2,40 @@ package com.service;
 
 import java.util.List;
 
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.dao.CustomerDao;
 import com.model.Customer;
+import com.model.CustomerCartRef;
+import com.model.InvalidationEvent;
 
 @Service
-public class CustomerServiceImpl implements CustomerService {
+public class CustomerServiceImpl implements CustomerService, InitializingBean {
 	@Autowired
 	private CustomerDao customerDao;
 
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	public void setCustomerDao(CustomerDao customerDao) {
+		this.customerDao = customerDao;
+	}
+
+	public void setInvalidationBus(InvalidationBus invalidationBus) {
+		this.invalidationBus = invalidationBus;
+	}
+
+	public void afterPropertiesSet() {
+		invalidationBus.subscribe(InvalidationEvent.CUSTOMER, new InvalidationListener() {
+			public void invalidate(InvalidationEvent event) {
+				customerDao.evictCachedCustomer(event.getKey());
+			}
+		});
+	}
+
 	// The database transaction happens inside the scope of a persistence
 	// context. The persistence context is in JPA the EntityManager ,
 	// implemented internally using an Hibernate Session (when using Hibernate
@@ -22,6 +44,7 @@ public class CustomerServiceImpl implements CustomerService {
 	@Transactional
 	public void addCustomer(Customer customer) {
 		customerDao.addCustomer(customer);
+		invalidationBus.publish(InvalidationEvent.CUSTOMER, customer.getUsers().getEmailId());
 	}
 
 	public List<Customer> getAllCustomers() {
@@ -33,4 +56,8 @@ public class CustomerServiceImpl implements CustomerService {
 		return customerDao.getCustomerByemailId(emailId);
 	}
 
+	public CustomerCartRef getCartRefByemailId(String emailId) {
+		return customerDao.getCartRefByemailId(emailId);
+	}
+
 }
@@ -0,0 +1,19 @@
+package com.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A guest cart cannot take more products; the shopper has to log in to keep
+ * adding to a cart of their own.
+ */
+@ResponseStatus(value = HttpStatus.FORBIDDEN, reason = "Guest cart is full")
+public class GuestCartFullException extends RuntimeException {
+
+	private static final long serialVersionUID = 5207784125398713106L;
+
+	public GuestCartFullException(String productId) {
+		super("Guest cart is full, cannot add product " + productId);
+	}
+
+}
@@ -0,0 +1,246 @@
+package com.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+
+import com.model.Cart;
+import com.model.CartItem;
+import com.model.GuestCart;
+import com.model.Product;
+
+/**
+ * Keeps guest carts in a cookie signed with HMAC-SHA256, so that anonymous
+ * shoppers cost no session and no database row. The cookie holds an expiry
+ * and the quantity of each product; prices are always taken from the
+ * catalog. The key comes from cart.guest.secret, which every node must
+ * share; without it a random key is used and guest carts do not survive a
+ * restart. Carts last cart.guest.days (30 by default) after their last change.
+ */
+public class GuestCartStore implements InitializingBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(GuestCartStore.class);
+
+	public static final String COOKIE_NAME = "guestCart";
+
+	// keeps the cookie well below the 4KB browsers accept
+	public static final int MAX_LINES = 50;
+	private static final int MAX_QUANTITY = 999;
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private static final String EXPIRED = "Thu, 01 Jan 1970 00:00:00 GMT";
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private Environment environment;
+
+	private final SecureRandom random = new SecureRandom();
+
+	private SecretKeySpec key;
+	private int maxAgeSeconds;
+
+	public ProductService getProductService() {
+		return productService;
+	}
+
+	public void setProductService(ProductService productService) {
+		this.productService = productService;
+	}
+
+	public void setEnvironment(Environment environment) {
+		this.environment = environment;
+	}
+
+	public void afterPropertiesSet() {
+		String secret = environment.getProperty("cart.guest.secret");
+		byte[] keyBytes;
+		if (secret == null || secret.isEmpty()) {
+			logger.warn("cart.guest.secret is not set, guest carts are signed with a key of this run only");
+			keyBytes = new byte[32];
+			random.nextBytes(keyBytes);
+		} else {
+			keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+		}
+		key = new SecretKeySpec(keyBytes, ALGORITHM);
+		maxAgeSeconds = (int) TimeUnit.DAYS.toSeconds(environment.getProperty("cart.guest.days", Integer.class, 30));
+	}
+
+	/**
+	 * The guest cart of the request's cookie; an empty cart when there is no
+	 * cookie or its signature or expiry does not hold.
+	 */
+	public GuestCart read(HttpServletRequest request) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies != null) {
+			for (Cookie cookie : cookies) {
+				if (COOKIE_NAME.equals(cookie.getName())) {
+					GuestCart guestCart = decode(cookie.getValue());
+					if (guestCart != null) {
+						return guestCart;
+					}
+				}
+			}
+		}
+		return new GuestCart();
+	}
+
+	// Sets the cookie to the cart, or deletes it when the cart is empty
+	public void write(GuestCart guestCart, HttpServletRequest request, HttpServletResponse response) {
+		if (guestCart.isEmpty()) {
+			clear(request, response);
+			return;
+		}
+		String expires = DateTimeFormatter.RFC_1123_DATE_TIME
+				.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(maxAgeSeconds));
+		addCookie(request, response, encode(guestCart), maxAgeSeconds, expires);
+	}
+
+	public void clear(HttpServletRequest request, HttpServletResponse response) {
+		addCookie(request, response, "", 0, EXPIRED);
+	}
+
+	/**
+	 * Adds units of the product to the cart.
+	 *
+	 * @return false when the cart is full
+	 */
+	public boolean add(GuestCart guestCart, String productId, int quantity) {
+		Integer current = guestCart.getQuantities().get(productId);
+		if (current == null && guestCart.getQuantities().size() >= MAX_LINES
+				|| (current != null ? current : 0) + quantity > MAX_QUANTITY) {
+			return false;
+		}
+		guestCart.add(productId, quantity);
+		return true;
+	}
+
+	/**
+	 * The guest cart as a Cart, with the lines and totals priced from the
+	 * catalog. Products no longer in the catalog are left out.
+	 */
+	public Cart toCart(GuestCart guestCart) {
+		Cart cart = new Cart();
+		cart.setCartId(GuestCart.CART_ID);
+		List<CartItem> cartItems = new ArrayList<>();
+		double totalPrice = 0;
+		int itemCount = 0;
+		for (CartItem cartItem : toCartItems(guestCart)) {
+			cartItem.setCartItemId(GuestCart.lineId(cartItem.getProduct().getProductId()));
+			cartItem.setCart(cart);
+			cartItems.add(cartItem);
+			totalPrice += cartItem.getPrice();
+			itemCount += cartItem.getQuality();
+		}
+		cart.setCartItem(cartItems);
+		cart.setTotalPrice(totalPrice);
+		cart.setItemCount(itemCount);
+		return cart;
+	}
+
+	// The lines of the cart with their products, as added to a customer's cart
+	public List<CartItem> toCartItems(GuestCart guestCart) {
+		List<CartItem> cartItems = new ArrayList<>();
+		for (Map.Entry<String, Integer> line : guestCart.getQuantities().entrySet()) {
+			Product product = productService.getProductById(line.getKey());
+			if (product == null) {
+				continue;
+			}
+			CartItem cartItem = new CartItem();
+			cartItem.setProduct(product);
+			cartItem.setQuality(line.getValue());
+			cartItem.setPrice(line.getValue() * product.getProductPrice());
+			cartItems.add(cartItem);
+		}
+		return cartItems;
+	}
+
+	// expiry seconds|productId:quantity,... in base64url, a dot and the signature
+	private String encode(GuestCart guestCart) {
+		StringBuilder payload = new StringBuilder().append(System.currentTimeMillis() / 1000 + maxAgeSeconds)
+				.append('|');
+		boolean first = true;
+		for (Map.Entry<String, Integer> line : guestCart.getQuantities().entrySet()) {
+			if (!first) {
+				payload.append(',');
+			}
+			payload.append(line.getKey()).append(':').append(line.getValue());
+			first = false;
+		}
+		byte[] bytes = payload.toString().getBytes(StandardCharsets.UTF_8);
+		Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		return encoder.encodeToString(bytes) + '.' + encoder.encodeToString(sign(bytes));
+	}
+
+	private GuestCart decode(String value) {
+		try {
+			int dot = value.indexOf('.');
+			if (dot < 0) {
+				return null;
+			}
+			Base64.Decoder decoder = Base64.getUrlDecoder();
+			byte[] bytes = decoder.decode(value.substring(0, dot));
+			if (!MessageDigest.isEqual(sign(bytes), decoder.decode(value.substring(dot + 1)))) {
+				logger.debug("Ignoring a guest cart cookie with a bad signature");
+				return null;
+			}
+			String[] fields = new String(bytes, StandardCharsets.UTF_8).split("\\|", -1);
+			if (fields.length != 2 || Long.parseLong(fields[0]) < System.currentTimeMillis() / 1000) {
+				return null;
+			}
+			GuestCart guestCart = new GuestCart();
+			if (!fields[1].isEmpty()) {
+				for (String line : fields[1].split(",")) {
+					int colon = line.lastIndexOf(':');
+					guestCart.add(line.substring(0, colon), Integer.parseInt(line.substring(colon + 1)));
+				}
+			}
+			return guestCart;
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			logger.debug("Ignoring a malformed guest cart cookie", e);
+			return null;
+		}
+	}
+
+	private byte[] sign(byte[] payload) {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(key);
+			return mac.doFinal(payload);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Cannot sign guest carts", e);
+		}
+	}
+
+	// written by hand, the Servlet 2.5 Cookie cannot be marked HttpOnly
+	private static void addCookie(HttpServletRequest request, HttpServletResponse response, String value,
+			int maxAge, String expires) {
+		String path = request.getContextPath();
+		response.addHeader("Set-Cookie", COOKIE_NAME + "=" + value + "; Max-Age=" + maxAge + "; Expires=" + expires
+				+ "; Path=" + (path.isEmpty() ? "/" : path) + "; HttpOnly");
+	}
+
+}
@@ -0,0 +1,20 @@
+package com.service;
+
+/**
+ * Carries cache invalidations between the nodes of a cluster. A node that
+ * writes updates its own caches and publishes the change; every other node
+ * receives it through the listeners subscribed to its region.
+ */
+public interface InvalidationBus {
+
+	// Publishes a change of the entity with the given key in a region of InvalidationEvent
+	void publish(String region, String key);
+
+	void subscribe(String region, InvalidationListener listener);
+
+	// Id of this node, the origin of the events it publishes
+	String getNodeId();
+
+	// Version of the last event this node has applied
+	long getAppliedVersion();
+}
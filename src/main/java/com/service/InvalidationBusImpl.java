@@ -0,0 +1,228 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import com.dao.ChangeLogDao;
+import com.model.InvalidationEvent;
+
+/**
+ * Invalidation bus over the change log table of the shared database. Every
+ * node polls the log (invalidation.poll.millis, 1000 by default) and hands
+ * the events of other nodes to the listeners of their region, so a cache
+ * is stale on the nodes that did not make a write for at most one poll
+ * interval. Events are kept for an hour; a node only applies those written
+ * after it started, since everything before is already in the database it
+ * loads from.
+ */
+@Service(value = "invalidationBus")
+public class InvalidationBusImpl implements InvalidationBus, InitializingBean, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(InvalidationBusImpl.class);
+
+	private static final int BATCH_SIZE = 500;
+
+	// a version is taken when an event is inserted but the row is only seen
+	// once committed, so a version skipped below the last one applied may
+	// still show up. Each poll looks for up to MAX_GAP_READ of them again,
+	// and gives a gap up as a rolled back insert after GAP_TIMEOUT_MILLIS
+	private static final int MAX_GAP_READ = 500;
+	private static final int MAX_GAPS = 10000;
+	private static final long GAP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private static final long RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+	private static final long PRUNE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	@Autowired
+	private ChangeLogDao changeLogDao;
+
+	@Autowired
+	private Environment environment;
+
+	private final String nodeId = UUID.randomUUID().toString();
+
+	private final ConcurrentHashMap<String, List<InvalidationListener>> listeners = new ConcurrentHashMap<>();
+
+	// skipped versions and when they were first missed, only used by the poller
+	private final TreeMap<Long, Long> gaps = new TreeMap<>();
+
+	private volatile long appliedVersion;
+	private long lastPrune;
+
+	private ScheduledExecutorService poller;
+
+	public ChangeLogDao getChangeLogDao() {
+		return changeLogDao;
+	}
+
+	public void setChangeLogDao(ChangeLogDao changeLogDao) {
+		this.changeLogDao = changeLogDao;
+	}
+
+	public void setEnvironment(Environment environment) {
+		this.environment = environment;
+	}
+
+	public void afterPropertiesSet() {
+		appliedVersion = changeLogDao.getLatestVersion();
+		lastPrune = System.currentTimeMillis();
+		long pollMillis = environment.getProperty("invalidation.poll.millis", Long.class, 1000L);
+		poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "invalidation-bus");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		poller.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					poll();
+				} catch (Exception e) {
+					logger.error("Error polling the cache change log", e);
+				}
+			}
+		}, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+		logger.info("Invalidation bus started as node {} at version {}", nodeId, appliedVersion);
+	}
+
+	public void destroy() {
+		if (poller != null) {
+			poller.shutdownNow();
+		}
+	}
+
+	public void publish(String region, String key) {
+		try {
+			long version = changeLogDao.append(region, key, nodeId);
+			logger.debug("Published invalidation {}:{}@{}", region, key, version);
+		} catch (Exception e) {
+			// the write itself is committed; other nodes catch up when their caches expire
+			logger.error("Error publishing invalidation {}:{}", region, key, e);
+		}
+	}
+
+	public void subscribe(String region, InvalidationListener listener) {
+		List<InvalidationListener> regionListeners = listeners.get(region);
+		if (regionListeners == null) {
+			List<InvalidationListener> created = new CopyOnWriteArrayList<>();
+			regionListeners = listeners.putIfAbsent(region, created);
+			if (regionListeners == null) {
+				regionListeners = created;
+			}
+		}
+		regionListeners.add(listener);
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public long getAppliedVersion() {
+		return appliedVersion;
+	}
+
+	/**
+	 * Applies the events committed since the last poll. Public so that a
+	 * caller can catch up without waiting for the next interval.
+	 */
+	public synchronized int poll() {
+		int applied = apply(changeLogDao.readVersions(oldestGaps()));
+		boolean more;
+		do {
+			List<InvalidationEvent> events = changeLogDao.readAfter(appliedVersion, BATCH_SIZE);
+			applied += apply(events);
+			// a full batch may have left newer events behind
+			more = events.size() == BATCH_SIZE;
+		} while (more);
+
+		long now = System.currentTimeMillis();
+		if (now - lastPrune > PRUNE_INTERVAL_MILLIS) {
+			lastPrune = now;
+			int pruned = changeLogDao.pruneOlderThan(RETENTION_MILLIS);
+			logger.debug("Pruned {} cache change log events", pruned);
+		}
+		return applied;
+	}
+
+	// Applies events read in version order, noting the versions they skip
+	private int apply(List<InvalidationEvent> events) {
+		int applied = 0;
+		long now = System.currentTimeMillis();
+		for (InvalidationEvent event : events) {
+			long version = event.getVersion();
+			if (version > appliedVersion) {
+				for (long skipped = Math.max(appliedVersion + 1, version - MAX_GAPS); skipped < version; skipped++) {
+					gaps.put(skipped, now);
+				}
+				appliedVersion = version;
+			} else if (gaps.remove(version) == null) {
+				continue;
+			}
+			if (!nodeId.equals(event.getOrigin())) {
+				dispatch(event);
+				applied++;
+			}
+		}
+		return applied;
+	}
+
+	// Drops the gaps that timed out or overflow, and returns the oldest of the rest
+	private List<Long> oldestGaps() {
+		long expired = System.currentTimeMillis() - GAP_TIMEOUT_MILLIS;
+		int dropped = 0;
+		Iterator<Map.Entry<Long, Long>> iterator = gaps.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Long, Long> gap = iterator.next();
+			if (gap.getValue() >= expired && gaps.size() <= MAX_GAPS) {
+				break;
+			}
+			iterator.remove();
+			dropped++;
+		}
+		if (dropped > 0) {
+			logger.debug("Gave up {} cache change log versions that never committed", dropped);
+		}
+		List<Long> oldest = new ArrayList<>();
+		for (Long version : gaps.keySet()) {
+			if (oldest.size() == MAX_GAP_READ) {
+				break;
+			}
+			oldest.add(version);
+		}
+		return oldest;
+	}
+
+	private void dispatch(InvalidationEvent event) {
+		List<InvalidationListener> regionListeners = listeners.get(event.getRegion());
+		if (regionListeners == null) {
+			return;
+		}
+		for (InvalidationListener listener : regionListeners) {
+			try {
+				listener.invalidate(event);
+			} catch (Exception e) {
+				logger.error("Error applying invalidation {}", event, e);
+			}
+		}
+	}
+
+}
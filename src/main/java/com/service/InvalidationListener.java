@@ -0,0 +1,13 @@
+package com.service;
+
+import com.model.InvalidationEvent;
+
+/**
+ * Drops or reloads the in-process state an invalidation event covers.
+ * Called on the polling thread of the InvalidationBus, one event at a time
+ * in version order, and only for events published by other nodes.
+ */
+public interface InvalidationListener {
+
+	void invalidate(InvalidationEvent event);
+}
@@ -0,0 +1,25 @@
+package com.service;
+
+import com.model.Cart;
+
+public interface InventoryService {
+
+	// Holds quantity units of the product for the cart, false when fewer are available
+	boolean reserve(String cartId, String productId, int quantity);
+
+	// Gives back up to quantity reserved units of the product
+	void release(String cartId, String productId, int quantity);
+
+	// Gives back everything the cart holds
+	void releaseAll(String cartId);
+
+	// Sells the cart contents: persists the stock decrement and drops the
+	// cart's reservations, throws OutOfStockException when an item is short
+	void commitReservations(Cart cart);
+
+	// Stock minus the units reserved by carts
+	int getAvailableStock(String productId);
+
+	// Forgets the cached stock of a product after it was changed elsewhere, null for all
+	void refreshStock(String productId);
+}
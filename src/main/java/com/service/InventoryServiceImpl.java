@@ -0,0 +1,322 @@
+package com.service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import com.dao.InventoryDao;
+import com.model.Cart;
+import com.model.CartItem;
+import com.model.InvalidationEvent;
+
+/**
+ * Stock reservations for carts. Each product has a reserved counter that is
+ * only raised by compare-and-set while it stays within the stock, so adding
+ * to carts never takes a lock shared between products. Reservations expire
+ * (inventory.reservation.minutes, 15 by default) after the last activity of
+ * their cart and are released by a background sweep.
+ * 
+ * The counters are per node. What makes overselling impossible is the
+ * conditional stock update at checkout, the reservations only keep carts
+ * from filling up with units that are not there.
+ */
+@Service(value = "inventoryService")
+public class InventoryServiceImpl implements InventoryService, InitializingBean, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(InventoryServiceImpl.class);
+	private static final long SWEEP_INTERVAL_SECONDS = 30;
+
+	@Autowired
+	private InventoryDao inventoryDao;
+
+	@Autowired
+	private ProductCatalogCache productCatalogCache;
+
+	@Autowired
+	private CatalogVersion catalogVersion;
+
+	@Autowired
+	private Environment environment;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	// persisted stock, loaded on first use
+	private final ConcurrentHashMap<String, Integer> stockLevels = new ConcurrentHashMap<>();
+
+	// units held by all carts, per product
+	private final ConcurrentHashMap<String, AtomicInteger> reserved = new ConcurrentHashMap<>();
+
+	// what each cart holds; a cart's map is its lock
+	private final ConcurrentHashMap<String, Map<String, Reservation>> reservations = new ConcurrentHashMap<>();
+
+	private long reservationMillis;
+
+	private ScheduledExecutorService sweeper;
+
+	public InventoryDao getInventoryDao() {
+		return inventoryDao;
+	}
+
+	public void setInventoryDao(InventoryDao inventoryDao) {
+		this.inventoryDao = inventoryDao;
+	}
+
+	public void setProductCatalogCache(ProductCatalogCache productCatalogCache) {
+		this.productCatalogCache = productCatalogCache;
+	}
+
+	public void setCatalogVersion(CatalogVersion catalogVersion) {
+		this.catalogVersion = catalogVersion;
+	}
+
+	public void setEnvironment(Environment environment) {
+		this.environment = environment;
+	}
+
+	public void setInvalidationBus(InvalidationBus invalidationBus) {
+		this.invalidationBus = invalidationBus;
+	}
+
+	public void afterPropertiesSet() {
+		reservationMillis = TimeUnit.MINUTES
+				.toMillis(environment.getProperty("inventory.reservation.minutes", Long.class, 15L));
+		sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "inventory-reservations");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		sweeper.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					releaseExpired();
+				} catch (Exception e) {
+					logger.error("Error releasing expired reservations", e);
+				}
+			}
+		}, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+		invalidationBus.subscribe(InvalidationEvent.STOCK, new InvalidationListener() {
+			public void invalidate(InvalidationEvent event) {
+				stockChangedElsewhere(event.getKey());
+			}
+		});
+	}
+
+	public void destroy() {
+		if (sweeper != null) {
+			sweeper.shutdownNow();
+		}
+	}
+
+	public boolean reserve(String cartId, String productId, int quantity) {
+		if (quantity <= 0) {
+			throw new IllegalArgumentException("Quantity must be positive");
+		}
+		int stock = stockOf(productId);
+		AtomicInteger counter = counterOf(productId);
+		int current;
+		do {
+			current = counter.get();
+			if (current + quantity > stock) {
+				return false;
+			}
+		} while (!counter.compareAndSet(current, current + quantity));
+
+		long expiresAt = System.currentTimeMillis() + reservationMillis;
+		for (;;) {
+			Map<String, Reservation> cart = cartReservations(cartId);
+			synchronized (cart) {
+				// the sweep may have dropped this map after we looked it up
+				if (reservations.get(cartId) != cart) {
+					continue;
+				}
+				Reservation reservation = cart.get(productId);
+				if (reservation == null) {
+					cart.put(productId, new Reservation(quantity));
+				} else {
+					reservation.quantity += quantity;
+				}
+				// any activity keeps the whole cart reserved
+				for (Reservation held : cart.values()) {
+					held.expiresAt = expiresAt;
+				}
+				return true;
+			}
+		}
+	}
+
+	public void release(String cartId, String productId, int quantity) {
+		Map<String, Reservation> cart = reservations.get(cartId);
+		if (cart == null) {
+			return;
+		}
+		synchronized (cart) {
+			Reservation reservation = cart.get(productId);
+			if (reservation == null) {
+				return;
+			}
+			int released = Math.min(quantity, reservation.quantity);
+			reservation.quantity -= released;
+			if (reservation.quantity == 0) {
+				cart.remove(productId);
+			}
+			counterOf(productId).addAndGet(-released);
+		}
+	}
+
+	public void releaseAll(String cartId) {
+		Map<String, Reservation> cart = reservations.remove(cartId);
+		if (cart == null) {
+			return;
+		}
+		synchronized (cart) {
+			releaseEntries(cart);
+		}
+	}
+
+	public void commitReservations(Cart cart) {
+		// the cart is what is sold, whether or not its reservations are still held
+		Map<String, Integer> quantities = new HashMap<>();
+		for (CartItem cartItem : cart.getCartItem()) {
+			String productId = cartItem.getProduct().getProductId();
+			Integer quantity = quantities.get(productId);
+			quantities.put(productId, (quantity != null ? quantity : 0) + cartItem.getQuality());
+		}
+		if (quantities.isEmpty()) {
+			return;
+		}
+		String shortOf = inventoryDao.decrementStock(quantities);
+		if (shortOf != null) {
+			refreshStock(shortOf);
+			throw new OutOfStockException(shortOf);
+		}
+		releaseAll(cart.getCartId());
+		for (Map.Entry<String, Integer> quantity : quantities.entrySet()) {
+			stockLevels.remove(quantity.getKey());
+			productCatalogCache.adjustStock(quantity.getKey(), -quantity.getValue());
+			invalidationBus.publish(InvalidationEvent.STOCK, quantity.getKey());
+		}
+		// product pages show the stock
+		catalogVersion.increment();
+		logger.info("Committed stock of cart {} for {} products", cart.getCartId(), quantities.size());
+	}
+
+	public int getAvailableStock(String productId) {
+		int stock = stockOf(productId);
+		AtomicInteger counter = reserved.get(productId);
+		return Math.max(0, stock - (counter != null ? counter.get() : 0));
+	}
+
+	public void refreshStock(String productId) {
+		if (productId == null) {
+			stockLevels.clear();
+		} else {
+			stockLevels.remove(productId);
+		}
+	}
+
+	// Another node sold units: read the stock back instead of dropping the
+	// cached product, which would also drop the whole catalog snapshot
+	private void stockChangedElsewhere(String productId) {
+		stockLevels.remove(productId);
+		inventoryDao.evictCachedStock(productId);
+		int stock = stockOf(productId);
+		if (stock >= 0) {
+			productCatalogCache.setStock(productId, stock);
+		}
+		catalogVersion.increment();
+	}
+
+	private int stockOf(String productId) {
+		Integer stock = stockLevels.get(productId);
+		if (stock == null) {
+			stock = inventoryDao.getStock(productId);
+			if (stock >= 0) {
+				stockLevels.put(productId, stock);
+			}
+		}
+		return stock;
+	}
+
+	private AtomicInteger counterOf(String productId) {
+		AtomicInteger counter = reserved.get(productId);
+		if (counter == null) {
+			AtomicInteger created = new AtomicInteger();
+			counter = reserved.putIfAbsent(productId, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	private Map<String, Reservation> cartReservations(String cartId) {
+		Map<String, Reservation> cart = reservations.get(cartId);
+		if (cart == null) {
+			Map<String, Reservation> created = new HashMap<>();
+			cart = reservations.putIfAbsent(cartId, created);
+			if (cart == null) {
+				cart = created;
+			}
+		}
+		return cart;
+	}
+
+	private void releaseEntries(Map<String, Reservation> cart) {
+		for (Map.Entry<String, Reservation> entry : cart.entrySet()) {
+			counterOf(entry.getKey()).addAndGet(-entry.getValue().quantity);
+		}
+		cart.clear();
+	}
+
+	private void releaseExpired() {
+		long now = System.currentTimeMillis();
+		int released = 0;
+		for (Map.Entry<String, Map<String, Reservation>> entry : reservations.entrySet()) {
+			Map<String, Reservation> cart = entry.getValue();
+			synchronized (cart) {
+				for (Iterator<Map.Entry<String, Reservation>> held = cart.entrySet().iterator(); held.hasNext();) {
+					Map.Entry<String, Reservation> reservation = held.next();
+					if (reservation.getValue().expiresAt <= now) {
+						counterOf(reservation.getKey()).addAndGet(-reservation.getValue().quantity);
+						held.remove();
+						released++;
+					}
+				}
+				if (cart.isEmpty()) {
+					reservations.remove(entry.getKey(), cart);
+				}
+			}
+		}
+		if (released > 0) {
+			logger.info("Released {} expired stock reservations", released);
+		}
+	}
+
+	private static final class Reservation {
+
+		int quantity;
+		long expiresAt;
+
+		Reservation(int quantity) {
+			this.quantity = quantity;
+		}
+	}
+
+}
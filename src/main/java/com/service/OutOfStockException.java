@@ -0,0 +1,25 @@
+package com.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Not enough stock of a product to reserve or sell the requested quantity.
+ */
+@ResponseStatus(value = HttpStatus.CONFLICT, reason = "Product is out of stock")
+public class OutOfStockException extends RuntimeException {
+
+	private static final long serialVersionUID = -3467118562153470551L;
+
+	private final String productId;
+
+	public OutOfStockException(String productId) {
+		super("Not enough stock of product " + productId);
+		this.productId = productId;
+	}
+
+	public String getProductId() {
+		return productId;
+	}
+
+}
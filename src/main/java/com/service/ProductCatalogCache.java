@@ -0,0 +1,139 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import com.model.Product;
+
+/**
+ * In-memory read-through cache for the product catalog.
+ * ProductServiceImpl loads entries from the ProductDao on a miss and keeps
+ * them current on add, edit and delete, so browsing does not go to the database.
+ * Every eviction bumps a generation; a load passes the generation it started
+ * under and is dropped when a write evicted in the meantime, so a reader can
+ * never put back what the write replaced.
+ */
+@Component
+public class ProductCatalogCache {
+
+	private final Map<String, Product> productsById = new ConcurrentHashMap<>();
+
+	// snapshot of the whole catalog, null until loaded or after a write
+	private volatile List<Product> allProducts;
+
+	// guarded by this, read without it to start a load
+	private volatile long generation;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public List<Product> getAllProducts() {
+		List<Product> products = allProducts;
+		record(products != null);
+		return products;
+	}
+
+	// Taken before loading from the database, for the put that follows
+	public long getGeneration() {
+		return generation;
+	}
+
+	public synchronized void putAllProducts(List<Product> products, long loadedGeneration) {
+		if (loadedGeneration != generation) {
+			return;
+		}
+		List<Product> snapshot = Collections.unmodifiableList(new ArrayList<>(products));
+		for (Product product : snapshot) {
+			productsById.put(product.getProductId(), product);
+		}
+		allProducts = snapshot;
+	}
+
+	public Product getProduct(String productId) {
+		Product product = productsById.get(productId);
+		record(product != null);
+		return product;
+	}
+
+	public synchronized void putProduct(Product product, long loadedGeneration) {
+		if (loadedGeneration == generation && product != null && product.getProductId() != null) {
+			productsById.put(product.getProductId(), product);
+		}
+	}
+
+	// Keeps the stock of a cached product current after a sale without
+	// dropping the catalog snapshot, which every order would otherwise do
+	public void adjustStock(String productId, int delta) {
+		Product product = productsById.get(productId);
+		if (product != null) {
+			synchronized (product) {
+				product.setUnitStock(Math.max(0, product.getUnitStock() + delta));
+			}
+		}
+	}
+
+	// Same for a stock read back from the database after another node sold units
+	public void setStock(String productId, int stock) {
+		Product product = productsById.get(productId);
+		if (product != null) {
+			synchronized (product) {
+				product.setUnitStock(stock);
+			}
+		}
+	}
+
+	public synchronized void evict(String productId) {
+		generation++;
+		if (productId != null) {
+			productsById.remove(productId);
+		}
+		allProducts = null;
+		evictions.incrementAndGet();
+	}
+
+	public synchronized void clear() {
+		generation++;
+		productsById.clear();
+		allProducts = null;
+		evictions.incrementAndGet();
+	}
+
+	private void record(boolean hit) {
+		if (hit) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public Map<String, Object> getStatistics() {
+		long hitCount = hits.get();
+		long missCount = misses.get();
+		long total = hitCount + missCount;
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("hits", hitCount);
+		stats.put("misses", missCount);
+		stats.put("hitRatio", total == 0 ? 0.0 : (double) hitCount / total);
+		stats.put("evictions", evictions.get());
+		stats.put("cachedProducts", productsById.size());
+		stats.put("catalogLoaded", allProducts != null);
+		return stats;
+	}
+
+}
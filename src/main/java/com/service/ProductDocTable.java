@@ -0,0 +1,93 @@
+package com.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.model.Product;
+
+/**
+ * Assigns dense int document ids to products. The in-memory catalog indexes
+ * store these ids instead of String product ids, so their posting lists and
+ * bitmaps can be primitive arrays. Doc ids of removed products are not
+ * reused until the next full load.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ProductDocTable implements CatalogListener {
+
+	private final Map<String, Integer> docIds = new HashMap<>();
+	private String[] productIds = new String[64];
+	private int maxDoc;
+	private int removed;
+
+	public synchronized void catalogLoaded(List<Product> products) {
+		docIds.clear();
+		productIds = new String[Math.max(64, products.size())];
+		maxDoc = 0;
+		removed = 0;
+		for (Product product : products) {
+			assign(product.getProductId());
+		}
+	}
+
+	public synchronized void productSaved(Product product) {
+		assign(product.getProductId());
+	}
+
+	// The mapping is kept so that listeners running after this one can still
+	// find the doc to unindex, only the reverse lookup is cleared
+	public synchronized void productRemoved(String productId) {
+		Integer doc = docIds.get(productId);
+		if (doc != null && productIds[doc] != null) {
+			productIds[doc] = null;
+			removed++;
+		}
+	}
+
+	private int assign(String productId) {
+		Integer doc = docIds.get(productId);
+		if (doc != null) {
+			if (productIds[doc] == null) {
+				productIds[doc] = productId;
+				removed--;
+			}
+			return doc;
+		}
+		if (maxDoc == productIds.length) {
+			productIds = Arrays.copyOf(productIds, maxDoc * 2);
+		}
+		productIds[maxDoc] = productId;
+		docIds.put(productId, maxDoc);
+		return maxDoc++;
+	}
+
+	/**
+	 * @return the doc id of the product, or -1 if it was never in the catalog
+	 */
+	public synchronized int docId(String productId) {
+		Integer doc = docIds.get(productId);
+		return doc == null ? -1 : doc;
+	}
+
+	/**
+	 * @return the product id of the doc, or null if it was removed
+	 */
+	public synchronized String productId(int doc) {
+		return doc >= 0 && doc < maxDoc ? productIds[doc] : null;
+	}
+
+	public synchronized int maxDoc() {
+		return maxDoc;
+	}
+
+	public synchronized int size() {
+		return docIds.size() - removed;
+	}
+
+}
@@ -0,0 +1,262 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.model.FacetCount;
+import com.model.Product;
+import com.model.ProductFacets;
+
+/**
+ * Compressed bitmap of doc ids (see ProductDocTable) per category,
+ * manufacturer and price bucket. Facet counts of a search are the
+ * cardinalities of these bitmaps intersected with the result bitmap, so all
+ * of them come from memory in one pass instead of one COUNT query each.
+ */
+@Component
+public class ProductFacetIndex implements CatalogListener {
+
+	// lower bounds of the price buckets, the last bucket is open ended
+	private static final double[] PRICE_BUCKETS = { 0, 500, 1000, 5000, 10000, 25000, 50000 };
+	private static final int MAX_MANUFACTURER_FACETS = 10;
+
+	@Autowired
+	private ProductDocTable productDocTable;
+
+	@Autowired
+	private ProductPriceIndex productPriceIndex;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final RoaringBitmap allDocs = new RoaringBitmap();
+	private final Map<String, RoaringBitmap> categories = new TreeMap<>();
+	private final Map<String, RoaringBitmap> manufacturers = new TreeMap<>();
+	private final RoaringBitmap[] priceBuckets = new RoaringBitmap[PRICE_BUCKETS.length];
+
+	// per doc: the facet values it was indexed under, to unindex on edit
+	private String[] docCategories = new String[64];
+	private String[] docManufacturers = new String[64];
+	private double[] docPrices = new double[64];
+
+	public ProductFacetIndex() {
+		for (int i = 0; i < priceBuckets.length; i++) {
+			priceBuckets[i] = new RoaringBitmap();
+		}
+	}
+
+	public ProductDocTable getProductDocTable() {
+		return productDocTable;
+	}
+
+	public void setProductDocTable(ProductDocTable productDocTable) {
+		this.productDocTable = productDocTable;
+	}
+
+	public ProductPriceIndex getProductPriceIndex() {
+		return productPriceIndex;
+	}
+
+	public void setProductPriceIndex(ProductPriceIndex productPriceIndex) {
+		this.productPriceIndex = productPriceIndex;
+	}
+
+	public void catalogLoaded(List<Product> products) {
+		lock.writeLock().lock();
+		try {
+			allDocs.clear();
+			categories.clear();
+			manufacturers.clear();
+			for (RoaringBitmap bucket : priceBuckets) {
+				bucket.clear();
+			}
+			int capacity = Math.max(64, productDocTable.maxDoc());
+			docCategories = new String[capacity];
+			docManufacturers = new String[capacity];
+			docPrices = new double[capacity];
+			for (Product product : products) {
+				index(product);
+			}
+			allDocs.runOptimize();
+			for (RoaringBitmap bitmap : categories.values()) {
+				bitmap.runOptimize();
+			}
+			for (RoaringBitmap bitmap : manufacturers.values()) {
+				bitmap.runOptimize();
+			}
+			for (RoaringBitmap bucket : priceBuckets) {
+				bucket.runOptimize();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void productSaved(Product product) {
+		lock.writeLock().lock();
+		try {
+			index(product);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void productRemoved(String productId) {
+		lock.writeLock().lock();
+		try {
+			int doc = productDocTable.docId(productId);
+			if (doc >= 0) {
+				unindex(doc);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Counts every facet value over the docs matching the text query, or over
+	 * the whole catalog when matches is null. Category counts ignore the
+	 * category filter and price counts ignore the price filter, so the other
+	 * values of a selected facet still show how many results they would give.
+	 */
+	public ProductFacets facets(RoaringBitmap matches, String category, Double minPrice, Double maxPrice) {
+		lock.readLock().lock();
+		try {
+			RoaringBitmap base = matches == null ? allDocs : RoaringBitmap.and(matches, allDocs);
+			RoaringBitmap inCategory = base;
+			if (category != null && !category.trim().isEmpty() && !category.equals("All")) {
+				RoaringBitmap categoryDocs = categories.get(category);
+				inCategory = categoryDocs == null ? new RoaringBitmap() : RoaringBitmap.and(base, categoryDocs);
+			}
+			RoaringBitmap inPriceRange = base;
+			RoaringBitmap result = inCategory;
+			if ((minPrice != null && minPrice > 0) || (maxPrice != null && maxPrice > 0)) {
+				RoaringBitmap priceDocs = productPriceIndex.rangeBitmap(minPrice, maxPrice);
+				inPriceRange = RoaringBitmap.and(base, priceDocs);
+				result = RoaringBitmap.and(inCategory, priceDocs);
+			}
+
+			List<FacetCount> categoryCounts = new ArrayList<>();
+			for (Map.Entry<String, RoaringBitmap> entry : categories.entrySet()) {
+				int count = RoaringBitmap.andCardinality(entry.getValue(), inPriceRange);
+				if (count > 0) {
+					categoryCounts.add(new FacetCount(entry.getKey(), count));
+				}
+			}
+
+			List<FacetCount> manufacturerCounts = new ArrayList<>();
+			for (Map.Entry<String, RoaringBitmap> entry : manufacturers.entrySet()) {
+				int count = RoaringBitmap.andCardinality(entry.getValue(), result);
+				if (count > 0) {
+					manufacturerCounts.add(new FacetCount(entry.getKey(), count));
+				}
+			}
+			Collections.sort(manufacturerCounts, new Comparator<FacetCount>() {
+				public int compare(FacetCount first, FacetCount second) {
+					return Integer.compare(second.getCount(), first.getCount());
+				}
+			});
+			if (manufacturerCounts.size() > MAX_MANUFACTURER_FACETS) {
+				manufacturerCounts = new ArrayList<>(manufacturerCounts.subList(0, MAX_MANUFACTURER_FACETS));
+			}
+
+			List<FacetCount> priceCounts = new ArrayList<>();
+			for (int i = 0; i < priceBuckets.length; i++) {
+				int count = RoaringBitmap.andCardinality(priceBuckets[i], inCategory);
+				if (count > 0) {
+					boolean last = i == priceBuckets.length - 1;
+					String label = last ? format(PRICE_BUCKETS[i]) + "+"
+							: format(PRICE_BUCKETS[i]) + " - " + format(PRICE_BUCKETS[i + 1]);
+					// the price filter is inclusive, so stop just below the next bucket
+					Double max = last ? null : PRICE_BUCKETS[i + 1] - 0.01;
+					priceCounts.add(new FacetCount(label, count, PRICE_BUCKETS[i], max));
+				}
+			}
+
+			return new ProductFacets(result.getCardinality(), categoryCounts, manufacturerCounts, priceCounts);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static String format(double price) {
+		return price == Math.rint(price) ? String.valueOf((long) price) : String.valueOf(price);
+	}
+
+	private static int bucketOf(double price) {
+		int bucket = 0;
+		while (bucket + 1 < PRICE_BUCKETS.length && price >= PRICE_BUCKETS[bucket + 1]) {
+			bucket++;
+		}
+		return bucket;
+	}
+
+	private void index(Product product) {
+		int doc = productDocTable.docId(product.getProductId());
+		if (doc < 0) {
+			return;
+		}
+		ensureCapacity(doc + 1);
+		unindex(doc);
+
+		allDocs.add(doc);
+		add(categories, product.getProductCategory(), doc);
+		add(manufacturers, product.getProductManufacturer(), doc);
+		priceBuckets[bucketOf(product.getProductPrice())].add(doc);
+		docCategories[doc] = product.getProductCategory();
+		docManufacturers[doc] = product.getProductManufacturer();
+		docPrices[doc] = product.getProductPrice();
+	}
+
+	private void unindex(int doc) {
+		if (doc >= docCategories.length || !allDocs.contains(doc)) {
+			return;
+		}
+		allDocs.remove(doc);
+		remove(categories, docCategories[doc], doc);
+		remove(manufacturers, docManufacturers[doc], doc);
+		priceBuckets[bucketOf(docPrices[doc])].remove(doc);
+		docCategories[doc] = null;
+		docManufacturers[doc] = null;
+	}
+
+	private static void add(Map<String, RoaringBitmap> facet, String value, int doc) {
+		if (value == null || value.trim().isEmpty()) {
+			return;
+		}
+		RoaringBitmap docs = facet.get(value);
+		if (docs == null) {
+			docs = new RoaringBitmap();
+			facet.put(value, docs);
+		}
+		docs.add(doc);
+	}
+
+	private static void remove(Map<String, RoaringBitmap> facet, String value, int doc) {
+		RoaringBitmap docs = value == null ? null : facet.get(value);
+		if (docs != null) {
+			docs.remove(doc);
+			if (docs.isEmpty()) {
+				facet.remove(value);
+			}
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > docCategories.length) {
+			int newCapacity = Math.max(capacity, docCategories.length * 2);
+			docCategories = Arrays.copyOf(docCategories, newCapacity);
+			docManufacturers = Arrays.copyOf(docManufacturers, newCapacity);
+			docPrices = Arrays.copyOf(docPrices, newCapacity);
+		}
+	}
+
+}
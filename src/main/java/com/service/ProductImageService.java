@@ -0,0 +1,27 @@
+package com.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import com.model.ProductImageVariant;
+
+public interface ProductImageService {
+
+	// Stores the upload as the original image and queues generation of its variants
+	void saveImage(String productId, MultipartFile image) throws IOException;
+
+	// Removes the original and every variant
+	void deleteImages(String productId);
+
+	// The file of a variant (null for the original), the original while the
+	// variant is not generated yet, null when the product has no image
+	Path getImageFile(String productId, ProductImageVariant variant);
+
+	// Short hex digest of the file content, cached until the file changes
+	String getContentHash(Path file) throws IOException;
+
+	// Content addressed URL of the image, relative to the context path
+	String getImageUrl(String productId, ProductImageVariant variant);
+}
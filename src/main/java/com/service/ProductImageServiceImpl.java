@@ -0,0 +1,370 @@
+package com.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.servlet.ServletContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.ServletContextAware;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.dao.ImageStore;
+import com.model.ProductImageVariant;
+
+/**
+ * Product image pipeline on top of the ImageStore. The request thread only
+ * stores the upload under the "original" ref; decoding, scaling and JPEG
+ * encoding of the variants, deletion and collection of unused content all
+ * run on the bounded image executor. Until a variant exists the original is
+ * served. Images deployed with the application under
+ * /WEB-INF/resource/images/products/ are still found there, read only.
+ */
+@Service(value = "productImageService")
+public class ProductImageServiceImpl implements ProductImageService, ServletContextAware {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProductImageServiceImpl.class);
+	private static final String LEGACY_IMAGES_PATH = "/WEB-INF/resource/images/products/";
+	private static final String IMAGES_URL = "/images/products/";
+	private static final String ORIGINAL = "original";
+	private static final int HASH_LENGTH = 16;
+
+	@Autowired
+	@Qualifier("imageExecutor")
+	private Executor imageExecutor;
+
+	@Autowired
+	private ImageStore imageStore;
+
+	private ServletContext servletContext;
+
+	// digests of legacy files, recomputed when size or modification time change
+	private final Map<Path, ContentHash> contentHashes = new ConcurrentHashMap<>();
+
+	// at most one collection waits in the executor queue
+	private final AtomicBoolean collectionPending = new AtomicBoolean();
+
+	public Executor getImageExecutor() {
+		return imageExecutor;
+	}
+
+	public void setImageExecutor(Executor imageExecutor) {
+		this.imageExecutor = imageExecutor;
+	}
+
+	public ImageStore getImageStore() {
+		return imageStore;
+	}
+
+	public void setImageStore(ImageStore imageStore) {
+		this.imageStore = imageStore;
+	}
+
+	public void setServletContext(ServletContext servletContext) {
+		this.servletContext = servletContext;
+	}
+
+	public void saveImage(final String productId, MultipartFile image) throws IOException {
+		final String hash;
+		try (InputStream content = image.getInputStream()) {
+			hash = imageStore.put(content);
+		}
+		imageStore.link(productId, ORIGINAL, hash);
+		// variants of a previous upload would show the old picture until regenerated
+		for (ProductImageVariant variant : ProductImageVariant.values()) {
+			imageStore.unlink(productId, variant.getSuffix());
+		}
+		logger.info("Product image of {} stored as {}", productId, hash);
+
+		imageExecutor.execute(new Runnable() {
+			public void run() {
+				generateVariants(productId, hash);
+			}
+		});
+	}
+
+	public void deleteImages(final String productId) {
+		imageExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					imageStore.unlinkAll(productId);
+				} catch (Exception e) {
+					logger.error("Error deleting images of productId: {}", productId, e);
+				}
+				Path directory = legacyDirectory();
+				if (directory != null) {
+					deleteLegacy(directory.resolve(productId + ".jpg"));
+					for (ProductImageVariant variant : ProductImageVariant.values()) {
+						deleteLegacy(directory.resolve(variant.fileName(productId)));
+					}
+				}
+				scheduleCollection();
+			}
+		});
+	}
+
+	public Path getImageFile(String productId, ProductImageVariant variant) {
+		if (productId == null) {
+			return null;
+		}
+		Path file = variant != null ? find(productId, variant) : null;
+		return file != null ? file : find(productId, null);
+	}
+
+	public String getContentHash(Path file) throws IOException {
+		String stored = imageStore.hashOf(file);
+		if (stored != null) {
+			return stored.substring(0, HASH_LENGTH);
+		}
+		long size = Files.size(file);
+		long lastModified = Files.getLastModifiedTime(file).toMillis();
+		ContentHash hash = contentHashes.get(file);
+		if (hash == null || hash.size != size || hash.lastModified != lastModified) {
+			hash = new ContentHash(size, lastModified, digest(file));
+			contentHashes.put(file, hash);
+		}
+		return hash.value;
+	}
+
+	public String getImageUrl(String productId, ProductImageVariant variant) {
+		String base = productId;
+		Path file = variant != null ? find(productId, variant) : null;
+		if (file != null) {
+			base = productId + "-" + variant.getSuffix();
+		} else {
+			file = find(productId, null);
+		}
+		if (file == null) {
+			// not content addressed, the image endpoint answers 404 or finds a late upload
+			return IMAGES_URL + productId + ".jpg";
+		}
+		try {
+			return IMAGES_URL + base + "." + getContentHash(file) + ".jpg";
+		} catch (IOException e) {
+			logger.warn("Could not hash product image {}", file, e);
+			return IMAGES_URL + base + ".jpg";
+		}
+	}
+
+	// the file of exactly this variant (null for the original), stored or legacy
+	private Path find(String productId, ProductImageVariant variant) {
+		try {
+			Path stored = imageStore.get(imageStore.resolve(productId, variant != null ? variant.getSuffix() : ORIGINAL));
+			if (stored != null) {
+				return stored;
+			}
+		} catch (IllegalArgumentException e) {
+			// not a valid store name, so not a stored product
+			return null;
+		}
+		Path directory = legacyDirectory();
+		if (directory == null) {
+			return null;
+		}
+		Path legacy = directory.resolve(variant != null ? variant.fileName(productId) : productId + ".jpg");
+		return Files.isRegularFile(legacy) ? legacy : null;
+	}
+
+	private void scheduleCollection() {
+		if (!collectionPending.compareAndSet(false, true)) {
+			return;
+		}
+		imageExecutor.execute(new Runnable() {
+			public void run() {
+				collectionPending.set(false);
+				try {
+					imageStore.collectGarbage();
+				} catch (Exception e) {
+					logger.error("Error collecting unused product images", e);
+				}
+			}
+		});
+	}
+
+	private static String digest(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		StringBuilder hex = new StringBuilder(HASH_LENGTH);
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			if (hex.length() >= HASH_LENGTH) {
+				break;
+			}
+		}
+		return hex.toString();
+	}
+
+	private void generateVariants(String productId, String hash) {
+		long start = System.currentTimeMillis();
+		try {
+			Path original = imageStore.get(hash);
+			BufferedImage source = original != null ? ImageIO.read(original.toFile()) : null;
+			if (source == null) {
+				logger.warn("Unsupported image format for product {}", productId);
+				return;
+			}
+			source = toRgb(source);
+			for (ProductImageVariant variant : ProductImageVariant.values()) {
+				if (!hash.equals(imageStore.resolve(productId, ORIGINAL))) {
+					logger.debug("Image of product {} replaced while generating variants", productId);
+					return;
+				}
+				BufferedImage scaled = scale(source, variant.getMaxSize());
+				imageStore.link(productId, variant.getSuffix(), storeJpeg(scaled, variant.getQuality()));
+			}
+			logger.debug("Generated image variants of product {} in {} ms", productId,
+					System.currentTimeMillis() - start);
+		} catch (Exception e) {
+			logger.error("Error generating image variants for productId: {}", productId, e);
+		}
+		// variants of a previous upload are unreferenced now
+		scheduleCollection();
+	}
+
+	// JPEG has no alpha channel, transparent areas become white
+	private static BufferedImage toRgb(BufferedImage image) {
+		if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+			return image;
+		}
+		BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = rgb.createGraphics();
+		try {
+			graphics.setColor(Color.WHITE);
+			graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+			graphics.drawImage(image, 0, 0, null);
+		} finally {
+			graphics.dispose();
+		}
+		return rgb;
+	}
+
+	/**
+	 * Fits the image into a maxSize square. Large reductions are done in
+	 * halving steps, a single bilinear pass would skip most source pixels.
+	 */
+	private static BufferedImage scale(BufferedImage image, int maxSize) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (width <= maxSize && height <= maxSize) {
+			return image;
+		}
+		double ratio = Math.min((double) maxSize / width, (double) maxSize / height);
+		int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+		int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+
+		BufferedImage current = image;
+		while (width != targetWidth || height != targetHeight) {
+			width = Math.max(targetWidth, width / 2);
+			height = Math.max(targetHeight, height / 2);
+			BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = step.createGraphics();
+			try {
+				graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+						RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				graphics.drawImage(current, 0, 0, width, height, null);
+			} finally {
+				graphics.dispose();
+			}
+			current = step;
+		}
+		return current;
+	}
+
+	// encoded to a temp file and stored, returns the digest
+	private String storeJpeg(BufferedImage image, float quality) throws IOException {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+		if (!writers.hasNext()) {
+			throw new IOException("No JPEG image writer available");
+		}
+		ImageWriter writer = writers.next();
+		Path temp = Files.createTempFile("variant-", ".jpg");
+		try {
+			ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile());
+			try {
+				ImageWriteParam param = writer.getDefaultWriteParam();
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(quality);
+				param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+				writer.setOutput(output);
+				writer.write(null, new IIOImage(image, null, null), param);
+			} finally {
+				output.close();
+			}
+			try (InputStream content = Files.newInputStream(temp)) {
+				return imageStore.put(content);
+			}
+		} finally {
+			writer.dispose();
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private Path legacyDirectory() {
+		String realPath = servletContext != null ? servletContext.getRealPath(LEGACY_IMAGES_PATH) : null;
+		return realPath != null ? Paths.get(realPath) : null;
+	}
+
+	private void deleteLegacy(Path path) {
+		contentHashes.remove(path);
+		try {
+			if (Files.deleteIfExists(path)) {
+				logger.info("Product image deleted: {}", path);
+			}
+		} catch (IOException e) {
+			logger.error("Error deleting product image {}", path, e);
+		}
+	}
+
+	private static final class ContentHash {
+
+		final long size;
+		final long lastModified;
+		final String value;
+
+		ContentHash(long size, long lastModified, String value) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.value = value;
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.service;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.model.ProductImageVariant;
+
+/**
+ * Image URLs for the JSPs, exposed to the views as "productImages" so a
+ * page can write ${productImages.thumbnail[prod.productId]}. Each property
+ * is a map view from product id to the content addressed URL.
+ */
+@Component(value = "productImages")
+public class ProductImageUrls {
+
+	@Autowired
+	private ProductImageService productImageService;
+
+	public void setProductImageService(ProductImageService productImageService) {
+		this.productImageService = productImageService;
+	}
+
+	public Map<String, String> getOriginal() {
+		return new UrlMap(null);
+	}
+
+	public Map<String, String> getThumbnail() {
+		return new UrlMap(ProductImageVariant.THUMBNAIL);
+	}
+
+	public Map<String, String> getGrid() {
+		return new UrlMap(ProductImageVariant.GRID);
+	}
+
+	public Map<String, String> getDetail() {
+		return new UrlMap(ProductImageVariant.DETAIL);
+	}
+
+	private final class UrlMap extends AbstractMap<String, String> {
+
+		private final ProductImageVariant variant;
+
+		UrlMap(ProductImageVariant variant) {
+			this.variant = variant;
+		}
+
+		@Override
+		public String get(Object productId) {
+			return productId != null ? productImageService.getImageUrl(productId.toString(), variant) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object productId) {
+			return productId != null;
+		}
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			return Collections.emptySet();
+		}
+	}
+
+}
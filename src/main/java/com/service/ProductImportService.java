@@ -0,0 +1,20 @@
+package com.service;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import com.model.ProductImportStatus;
+
+public interface ProductImportService {
+
+	String FORMAT_CSV = "csv";
+	String FORMAT_NDJSON = "ndjson";
+
+	// Queues an import of the file, which is deleted once the import is done
+	ProductImportStatus startImport(Path file, String format);
+
+	ProductImportStatus getImportStatus(String jobId);
+
+	// The most recent imports, newest first
+	List<ProductImportStatus> getRecentImports();
+}
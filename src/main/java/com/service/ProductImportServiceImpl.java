@@ -0,0 +1,408 @@
+package com.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.dao.ProductDao;
+import com.dao.ProductHandler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.model.Product;
+import com.model.ProductImportStatus;
+
+/**
+ * Bulk import of supplier catalogs. The upload is parsed row by row from a
+ * temp file on a single import thread and handed to the DAO as an iterator,
+ * so a file of any size is never held in memory. Rows that fail the same
+ * constraints as the add product form are skipped and reported.
+ */
+@Service(value = "productImportService")
+public class ProductImportServiceImpl implements ProductImportService, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProductImportServiceImpl.class);
+	private static final int COMMIT_INTERVAL = 1000;
+	private static final int MAX_KEPT_IMPORTS = 20;
+
+	// normalized column name -> product property
+	private static final Map<String, String> COLUMNS = new HashMap<>();
+
+	static {
+		COLUMNS.put("name", "name");
+		COLUMNS.put("category", "category");
+		COLUMNS.put("description", "description");
+		COLUMNS.put("manufacturer", "manufacturer");
+		COLUMNS.put("price", "price");
+		COLUMNS.put("unit", "unit");
+		COLUMNS.put("unitstock", "unit");
+		COLUMNS.put("stock", "unit");
+	}
+
+	@Autowired
+	private ProductDao productDao;
+
+	@Autowired
+	private ProductService productService;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+	// imports run one at a time so two large files do not compete for the database
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "product-import");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final Map<String, ProductImportStatus> imports = new LinkedHashMap<String, ProductImportStatus>() {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, ProductImportStatus> eldest) {
+			return size() > MAX_KEPT_IMPORTS && eldest.getValue().isDone();
+		}
+	};
+
+	public ProductDao getProductDao() {
+		return productDao;
+	}
+
+	public void setProductDao(ProductDao productDao) {
+		this.productDao = productDao;
+	}
+
+	public ProductService getProductService() {
+		return productService;
+	}
+
+	public void setProductService(ProductService productService) {
+		this.productService = productService;
+	}
+
+	public ProductImportStatus startImport(final Path file, String format) {
+		final ProductImportStatus status = new ProductImportStatus(UUID.randomUUID().toString(),
+				FORMAT_NDJSON.equals(format) ? FORMAT_NDJSON : FORMAT_CSV);
+		synchronized (imports) {
+			imports.put(status.getJobId(), status);
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				runImport(file, status);
+			}
+		});
+		logger.info("Queued {} product import {}", status.getFormat(), status.getJobId());
+		return status;
+	}
+
+	public ProductImportStatus getImportStatus(String jobId) {
+		synchronized (imports) {
+			return imports.get(jobId);
+		}
+	}
+
+	public List<ProductImportStatus> getRecentImports() {
+		List<ProductImportStatus> recent;
+		synchronized (imports) {
+			recent = new ArrayList<>(imports.values());
+		}
+		Collections.reverse(recent);
+		return recent;
+	}
+
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	private void runImport(Path file, final ProductImportStatus status) {
+		status.started();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			Iterator<Product> products = FORMAT_NDJSON.equals(status.getFormat())
+					? new NdjsonProducts(reader, status) : new CsvProducts(reader, status);
+			productDao.importProducts(products, COMMIT_INTERVAL, new ProductHandler() {
+				public void handle(Product product) {
+					status.imported(1);
+				}
+			});
+			status.completed();
+			logger.info("Product import {} finished: {} imported, {} rejected", status.getJobId(),
+					status.getImported(), status.getRejected());
+		} catch (Exception e) {
+			logger.error("Product import {} failed", status.getJobId(), e);
+			Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+			status.failed(cause.getMessage());
+		} finally {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				logger.warn("Could not delete import file {}", file, e);
+			}
+		}
+		// committed chunks are visible even when a later chunk failed
+		if (status.getImported() > 0) {
+			productService.reloadCatalog();
+		}
+	}
+
+	/**
+	 * Maps one parsed row to a product, or records why it was rejected.
+	 */
+	private Product toProduct(Map<String, String> row, long rowNumber, ProductImportStatus status) {
+		Product product = new Product();
+		product.setProductName(trim(row.get("name")));
+		product.setProductCategory(trim(row.get("category")));
+		product.setProductDescription(trim(row.get("description")));
+		product.setProductManufacturer(trim(row.get("manufacturer")));
+		String price = trim(row.get("price"));
+		if (price == null) {
+			status.rejected(rowNumber, "Please provide some price");
+			return null;
+		}
+		try {
+			product.setProductPrice(Double.parseDouble(price));
+		} catch (NumberFormatException e) {
+			status.rejected(rowNumber, "Invalid price '" + price + "'");
+			return null;
+		}
+		String stock = trim(row.get("unit"));
+		if (stock != null) {
+			try {
+				product.setUnitStock(Integer.parseInt(stock));
+			} catch (NumberFormatException e) {
+				status.rejected(rowNumber, "Invalid stock '" + stock + "'");
+				return null;
+			}
+		}
+		Set<ConstraintViolation<Product>> violations = validator.validate(product);
+		if (!violations.isEmpty()) {
+			status.rejected(rowNumber, violations.iterator().next().getMessage());
+			return null;
+		}
+		return product;
+	}
+
+	private static String trim(String value) {
+		if (value == null) {
+			return null;
+		}
+		value = value.trim();
+		return value.isEmpty() ? null : value;
+	}
+
+	// "productName", "Product Name" and "name" all map to the name property
+	private static String column(String header) {
+		String key = header.toLowerCase().replaceAll("[^a-z]", "");
+		if (key.startsWith("product") && key.length() > "product".length()) {
+			key = key.substring("product".length());
+		}
+		return COLUMNS.get(key);
+	}
+
+	/**
+	 * Iterates the valid products of a source, skipping rejected rows.
+	 */
+	private abstract class ProductRows implements Iterator<Product> {
+
+		protected final ProductImportStatus status;
+		private Product next;
+		private boolean done;
+
+		ProductRows(ProductImportStatus status) {
+			this.status = status;
+		}
+
+		// the next raw row mapped by property, null at the end of the input
+		protected abstract Map<String, String> readRow() throws IOException, RowRejectedException;
+
+		public boolean hasNext() {
+			while (next == null && !done) {
+				long rowNumber = status.getRowsRead() + 1;
+				try {
+					Map<String, String> row = readRow();
+					if (row == null) {
+						done = true;
+					} else if (row.isEmpty()) {
+						status.rowRead();
+						status.rejected(rowNumber, "No recognized columns");
+					} else {
+						status.rowRead();
+						next = toProduct(row, rowNumber, status);
+					}
+				} catch (RowRejectedException e) {
+					status.rowRead();
+					status.rejected(rowNumber, e.getMessage());
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return next != null;
+		}
+
+		public Product next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Product product = next;
+			next = null;
+			return product;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * RFC 4180 CSV with a header row; quoted fields may contain commas,
+	 * doubled quotes and line breaks.
+	 */
+	private final class CsvProducts extends ProductRows {
+
+		private final Reader reader;
+		private String[] properties;
+
+		CsvProducts(Reader reader, ProductImportStatus status) {
+			super(status);
+			this.reader = reader;
+		}
+
+		protected Map<String, String> readRow() throws IOException {
+			if (properties == null) {
+				List<String> header = readRecord();
+				if (header == null) {
+					return null;
+				}
+				properties = new String[header.size()];
+				for (int i = 0; i < properties.length; i++) {
+					properties[i] = column(header.get(i));
+				}
+			}
+			List<String> record;
+			do {
+				record = readRecord();
+			} while (record != null && record.size() == 1 && record.get(0).trim().isEmpty());
+			if (record == null) {
+				return null;
+			}
+			Map<String, String> row = new HashMap<>();
+			for (int i = 0; i < record.size() && i < properties.length; i++) {
+				if (properties[i] != null) {
+					row.put(properties[i], record.get(i));
+				}
+			}
+			return row;
+		}
+
+		private List<String> readRecord() throws IOException {
+			List<String> fields = new ArrayList<>();
+			StringBuilder field = new StringBuilder();
+			boolean quoted = false;
+			int c = reader.read();
+			if (c == -1) {
+				return null;
+			}
+			while (c != -1) {
+				if (quoted) {
+					if (c == '"') {
+						int following = reader.read();
+						if (following == '"') {
+							field.append('"');
+						} else {
+							quoted = false;
+							c = following;
+							continue;
+						}
+					} else {
+						field.append((char) c);
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					fields.add(field.toString());
+					field.setLength(0);
+				} else if (c == '\n') {
+					break;
+				} else if (c != '\r') {
+					field.append((char) c);
+				}
+				c = reader.read();
+			}
+			fields.add(field.toString());
+			return fields;
+		}
+	}
+
+	/**
+	 * One JSON object per line, a malformed line only rejects that row.
+	 */
+	private final class NdjsonProducts extends ProductRows {
+
+		private final BufferedReader reader;
+
+		NdjsonProducts(BufferedReader reader, ProductImportStatus status) {
+			super(status);
+			this.reader = reader;
+		}
+
+		protected Map<String, String> readRow() throws IOException, RowRejectedException {
+			String line;
+			do {
+				line = reader.readLine();
+			} while (line != null && line.trim().isEmpty());
+			if (line == null) {
+				return null;
+			}
+			Map<?, ?> values;
+			try {
+				values = objectMapper.readValue(line, Map.class);
+			} catch (IOException e) {
+				throw new RowRejectedException("Malformed JSON");
+			}
+			Map<String, String> row = new HashMap<>();
+			for (Map.Entry<?, ?> value : values.entrySet()) {
+				String property = column(String.valueOf(value.getKey()));
+				if (property != null && value.getValue() != null) {
+					row.put(property, String.valueOf(value.getValue()));
+				}
+			}
+			return row;
+		}
+	}
+
+	private static final class RowRejectedException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		RowRejectedException(String message) {
+			super(message);
+		}
+	}
+
+}
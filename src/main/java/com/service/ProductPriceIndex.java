@@ -0,0 +1,323 @@
+package com.service;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.model.Product;
+
+/**
+ * Product prices kept sorted in a primitive double[] with the matching doc
+ * ids (see ProductDocTable) and category ordinals in parallel arrays.
+ * A price range is two binary searches and a contiguous slice, and the
+ * cheapest products of a category are the first matches of a forward scan.
+ * The price of each doc is also kept by doc id, so that a single doc is
+ * checked against a range without materializing it.
+ *
+ * Readers use an immutable snapshot of the arrays without locking, writers
+ * are serialized and publish a new snapshot.
+ */
+@Component
+public class ProductPriceIndex implements CatalogListener {
+
+	@Autowired
+	private ProductDocTable productDocTable;
+
+	private volatile Snapshot snapshot = new Snapshot(new double[0], new int[0], new int[0], new double[0]);
+
+	private final Map<String, Integer> categoryOrdinals = new ConcurrentHashMap<>();
+
+	public ProductDocTable getProductDocTable() {
+		return productDocTable;
+	}
+
+	public void setProductDocTable(ProductDocTable productDocTable) {
+		this.productDocTable = productDocTable;
+	}
+
+	public synchronized void catalogLoaded(List<Product> products) {
+		final double[] docPrices = unindexed(Math.max(64, productDocTable.maxDoc()));
+		final int[] loadedDocs = new int[products.size()];
+		int[] loadedCategories = new int[products.size()];
+		int size = 0;
+		for (Product product : products) {
+			int doc = productDocTable.docId(product.getProductId());
+			if (doc < 0 || !Double.isNaN(docPrices[doc])) {
+				continue;
+			}
+			docPrices[doc] = product.getProductPrice();
+			loadedDocs[size] = doc;
+			loadedCategories[size] = ordinal(product.getProductCategory());
+			size++;
+		}
+
+		// order the loaded positions by (price, doc) and lay the arrays out that way
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer first, Integer second) {
+				int result = Double.compare(docPrices[loadedDocs[first]], docPrices[loadedDocs[second]]);
+				return result != 0 ? result : Integer.compare(loadedDocs[first], loadedDocs[second]);
+			}
+		});
+		double[] sortedPrices = new double[size];
+		int[] sortedDocs = new int[size];
+		int[] sortedCategories = new int[size];
+		for (int i = 0; i < size; i++) {
+			sortedDocs[i] = loadedDocs[order[i]];
+			sortedPrices[i] = docPrices[sortedDocs[i]];
+			sortedCategories[i] = loadedCategories[order[i]];
+		}
+		snapshot = new Snapshot(sortedPrices, sortedDocs, sortedCategories, docPrices);
+	}
+
+	public synchronized void productSaved(Product product) {
+		int doc = productDocTable.docId(product.getProductId());
+		if (doc < 0) {
+			return;
+		}
+		Snapshot current = snapshot;
+		double[] docPrices = current.docPrices;
+		if (doc >= docPrices.length) {
+			docPrices = unindexed(Math.max(doc + 1, docPrices.length * 2));
+			System.arraycopy(current.docPrices, 0, docPrices, 0, current.docPrices.length);
+		} else {
+			docPrices = docPrices.clone();
+		}
+		if (current.indexed(doc)) {
+			current = current.without(position(current, current.docPrices[doc], doc), docPrices);
+		}
+		docPrices[doc] = product.getProductPrice();
+		snapshot = current.with(position(current, product.getProductPrice(), doc), product.getProductPrice(), doc,
+				ordinal(product.getProductCategory()), docPrices);
+	}
+
+	public synchronized void productRemoved(String productId) {
+		int doc = productDocTable.docId(productId);
+		Snapshot current = snapshot;
+		if (doc < 0 || !current.indexed(doc)) {
+			return;
+		}
+		double[] docPrices = current.docPrices.clone();
+		docPrices[doc] = Double.NaN;
+		snapshot = current.without(position(current, current.docPrices[doc], doc), docPrices);
+	}
+
+	/**
+	 * Docs priced within the bounds in ascending price order. A bound that is
+	 * null or not positive is open, like in the database search.
+	 */
+	public int[] docsInRange(Double minPrice, Double maxPrice) {
+		Snapshot current = snapshot;
+		int from = lowerBound(current, minPrice != null && minPrice > 0 ? minPrice : Double.NEGATIVE_INFINITY);
+		int to = upperBound(current, maxPrice != null && maxPrice > 0 ? maxPrice : Double.POSITIVE_INFINITY);
+		return from < to ? Arrays.copyOfRange(current.docs, from, to) : new int[0];
+	}
+
+	/**
+	 * Docs of the category priced within the bounds, in ascending price order.
+	 * A null, empty or "All" category does not filter.
+	 */
+	public int[] docsInRange(Double minPrice, Double maxPrice, String category) {
+		if (category == null || category.trim().isEmpty() || category.equals("All")) {
+			return docsInRange(minPrice, maxPrice);
+		}
+		Integer ordinal = categoryOrdinals.get(category);
+		if (ordinal == null) {
+			return new int[0];
+		}
+		Snapshot current = snapshot;
+		int from = lowerBound(current, minPrice != null && minPrice > 0 ? minPrice : Double.NEGATIVE_INFINITY);
+		int to = upperBound(current, maxPrice != null && maxPrice > 0 ? maxPrice : Double.POSITIVE_INFINITY);
+		int[] docs = new int[Math.max(0, to - from)];
+		int found = 0;
+		for (int i = from; i < to; i++) {
+			if (current.categories[i] == ordinal) {
+				docs[found++] = current.docs[i];
+			}
+		}
+		return Arrays.copyOf(docs, found);
+	}
+
+	// Number of docs priced within the bounds, without materializing them
+	public int countInRange(Double minPrice, Double maxPrice) {
+		Snapshot current = snapshot;
+		int from = lowerBound(current, minPrice != null && minPrice > 0 ? minPrice : Double.NEGATIVE_INFINITY);
+		int to = upperBound(current, maxPrice != null && maxPrice > 0 ? maxPrice : Double.POSITIVE_INFINITY);
+		return Math.max(0, to - from);
+	}
+
+	// Whether the doc is indexed with a price within the bounds
+	public boolean inRange(int doc, Double minPrice, Double maxPrice) {
+		Snapshot current = snapshot;
+		if (!current.indexed(doc)) {
+			return false;
+		}
+		double price = current.docPrices[doc];
+		return (minPrice == null || minPrice <= 0 || price >= minPrice)
+				&& (maxPrice == null || maxPrice <= 0 || price <= maxPrice);
+	}
+
+	public RoaringBitmap rangeBitmap(Double minPrice, Double maxPrice) {
+		return RoaringBitmap.bitmapOf(docsInRange(minPrice, maxPrice));
+	}
+
+	/**
+	 * Doc ids of the count cheapest products of the category, cheapest first.
+	 * A null, empty or "All" category takes the whole catalog.
+	 */
+	public int[] cheapestInCategory(String category, int count) {
+		if (count <= 0) {
+			return new int[0];
+		}
+		Snapshot current = snapshot;
+		if (category == null || category.trim().isEmpty() || category.equals("All")) {
+			return Arrays.copyOf(current.docs, Math.min(count, current.docs.length));
+		}
+		Integer ordinal = categoryOrdinals.get(category);
+		if (ordinal == null) {
+			return new int[0];
+		}
+		int[] docs = new int[Math.min(count, current.docs.length)];
+		int found = 0;
+		for (int i = 0; i < current.docs.length && found < docs.length; i++) {
+			if (current.categories[i] == ordinal) {
+				docs[found++] = current.docs[i];
+			}
+		}
+		return Arrays.copyOf(docs, found);
+	}
+
+	public int size() {
+		return snapshot.docs.length;
+	}
+
+	private int ordinal(String category) {
+		String key = category == null ? "" : category;
+		Integer ordinal = categoryOrdinals.get(key);
+		if (ordinal == null) {
+			ordinal = categoryOrdinals.size();
+			categoryOrdinals.put(key, ordinal);
+		}
+		return ordinal;
+	}
+
+	// position of the (price, doc) pair, or where it would be inserted
+	private static int position(Snapshot current, double price, int doc) {
+		int low = 0;
+		int high = current.prices.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			int result = Double.compare(current.prices[middle], price);
+			if (result == 0) {
+				result = Integer.compare(current.docs[middle], doc);
+			}
+			if (result < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	// first position with a price >= min
+	private static int lowerBound(Snapshot current, double min) {
+		int low = 0;
+		int high = current.prices.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (current.prices[middle] < min) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	// first position with a price > max
+	private static int upperBound(Snapshot current, double max) {
+		int low = 0;
+		int high = current.prices.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (current.prices[middle] <= max) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	// per-doc prices with no doc indexed, NaN marking a doc that is not
+	private static double[] unindexed(int capacity) {
+		double[] docPrices = new double[capacity];
+		Arrays.fill(docPrices, Double.NaN);
+		return docPrices;
+	}
+
+	private static final class Snapshot {
+
+		final double[] prices;
+		final int[] docs;
+		final int[] categories;
+		// price by doc id, NaN for docs that are not indexed
+		final double[] docPrices;
+
+		Snapshot(double[] prices, int[] docs, int[] categories, double[] docPrices) {
+			this.prices = prices;
+			this.docs = docs;
+			this.categories = categories;
+			this.docPrices = docPrices;
+		}
+
+		boolean indexed(int doc) {
+			return doc >= 0 && doc < docPrices.length && !Double.isNaN(docPrices[doc]);
+		}
+
+		Snapshot with(int position, double price, int doc, int category, double[] newDocPrices) {
+			int size = prices.length;
+			double[] newPrices = new double[size + 1];
+			int[] newDocs = new int[size + 1];
+			int[] newCategories = new int[size + 1];
+			System.arraycopy(prices, 0, newPrices, 0, position);
+			System.arraycopy(docs, 0, newDocs, 0, position);
+			System.arraycopy(categories, 0, newCategories, 0, position);
+			newPrices[position] = price;
+			newDocs[position] = doc;
+			newCategories[position] = category;
+			System.arraycopy(prices, position, newPrices, position + 1, size - position);
+			System.arraycopy(docs, position, newDocs, position + 1, size - position);
+			System.arraycopy(categories, position, newCategories, position + 1, size - position);
+			return new Snapshot(newPrices, newDocs, newCategories, newDocPrices);
+		}
+
+		Snapshot without(int position, double[] newDocPrices) {
+			int size = prices.length;
+			if (position >= size) {
+				return new Snapshot(prices, docs, categories, newDocPrices);
+			}
+			double[] newPrices = new double[size - 1];
+			int[] newDocs = new int[size - 1];
+			int[] newCategories = new int[size - 1];
+			System.arraycopy(prices, 0, newPrices, 0, position);
+			System.arraycopy(docs, 0, newDocs, 0, position);
+			System.arraycopy(categories, 0, newCategories, 0, position);
+			System.arraycopy(prices, position + 1, newPrices, position, size - position - 1);
+			System.arraycopy(docs, position + 1, newDocs, position, size - position - 1);
+			System.arraycopy(categories, position + 1, newCategories, position, size - position - 1);
+			return new Snapshot(newPrices, newDocs, newCategories, newDocPrices);
+		}
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.service;
+
+/**
+ * A product matched by the search index with its relevance score.
+ */
+public class ProductSearchHit {
+
+	private final int doc;
+	private final String productId;
+	private final int score;
+
+	public ProductSearchHit(int doc, String productId, int score) {
+		this.doc = doc;
+		this.productId = productId;
+		this.score = score;
+	}
+
+	public int getDoc() {
+		return doc;
+	}
+
+	public String getProductId() {
+		return productId;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+}
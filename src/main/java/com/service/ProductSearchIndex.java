@@ -0,0 +1,362 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.model.Product;
+
+/**
+ * Tokenized inverted index over product name, manufacturer and description.
+ * Each term maps to a posting list of doc ids (see ProductDocTable) sorted
+ * ascending, with a field weight per doc used for relevance. A query matches
+ * products containing every query token, where a token also matches indexed
+ * terms that start with it, so "sam gal" still finds "Samsung Galaxy".
+ */
+@Component
+public class ProductSearchIndex implements CatalogListener {
+
+	private static final int NAME_WEIGHT = 4;
+	private static final int MANUFACTURER_WEIGHT = 2;
+	private static final int DESCRIPTION_WEIGHT = 1;
+
+	@Autowired
+	private ProductDocTable productDocTable;
+
+	@Autowired
+	private ProductPriceIndex productPriceIndex;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final TreeMap<String, Postings> postings = new TreeMap<>();
+
+	// per doc: its indexed terms (to unindex on edit) and category
+	private String[][] docTerms = new String[64][];
+	private String[] docCategories = new String[64];
+
+	public ProductDocTable getProductDocTable() {
+		return productDocTable;
+	}
+
+	public void setProductDocTable(ProductDocTable productDocTable) {
+		this.productDocTable = productDocTable;
+	}
+
+	public ProductPriceIndex getProductPriceIndex() {
+		return productPriceIndex;
+	}
+
+	public void setProductPriceIndex(ProductPriceIndex productPriceIndex) {
+		this.productPriceIndex = productPriceIndex;
+	}
+
+	public void catalogLoaded(List<Product> products) {
+		lock.writeLock().lock();
+		try {
+			postings.clear();
+			int capacity = Math.max(64, productDocTable.maxDoc());
+			docTerms = new String[capacity][];
+			docCategories = new String[capacity];
+			for (Product product : products) {
+				index(product);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void productSaved(Product product) {
+		lock.writeLock().lock();
+		try {
+			index(product);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void productRemoved(String productId) {
+		lock.writeLock().lock();
+		try {
+			int doc = productDocTable.docId(productId);
+			if (doc >= 0) {
+				unindex(doc);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the products containing all tokens of the query, restricted to the
+	 * category and price bounds when given, best matches first.
+	 */
+	public List<ProductSearchHit> search(String query, String category, Double minPrice, Double maxPrice) {
+		List<String> tokens = tokenize(query);
+		if (tokens.isEmpty()) {
+			return Collections.emptyList();
+		}
+		boolean filterCategory = category != null && !category.trim().isEmpty() && !category.equals("All");
+		boolean filterPrice = (minPrice != null && minPrice > 0) || (maxPrice != null && maxPrice > 0);
+
+		lock.readLock().lock();
+		try {
+			List<DocScores> matches = new ArrayList<>(tokens.size());
+			for (String token : new LinkedHashSet<>(tokens)) {
+				DocScores match = match(token);
+				if (match.size == 0) {
+					return Collections.emptyList();
+				}
+				matches.add(match);
+			}
+			// intersect starting from the rarest token to keep the candidates small
+			Collections.sort(matches, new Comparator<DocScores>() {
+				public int compare(DocScores first, DocScores second) {
+					return Integer.compare(first.size, second.size);
+				}
+			});
+			DocScores result = matches.get(0);
+			for (int i = 1; i < matches.size() && result.size > 0; i++) {
+				result = result.intersect(matches.get(i));
+			}
+
+			List<ProductSearchHit> hits = new ArrayList<>(result.size);
+			if (filterPrice && productPriceIndex.countInRange(minPrice, maxPrice) < result.size) {
+				// fewer products in the price range than text matches: look each of them up in the matches
+				for (int doc : productPriceIndex.docsInRange(minPrice, maxPrice)) {
+					int i = Arrays.binarySearch(result.docs, 0, result.size, doc);
+					if (i >= 0) {
+						addHit(hits, result, i, filterCategory ? category : null);
+					}
+				}
+			} else {
+				// otherwise check the price of each match
+				for (int i = 0; i < result.size; i++) {
+					if (!filterPrice || productPriceIndex.inRange(result.docs[i], minPrice, maxPrice)) {
+						addHit(hits, result, i, filterCategory ? category : null);
+					}
+				}
+			}
+			Collections.sort(hits, RELEVANCE_ORDER);
+			return hits;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int getTermCount() {
+		lock.readLock().lock();
+		try {
+			return postings.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static final Comparator<ProductSearchHit> RELEVANCE_ORDER = new Comparator<ProductSearchHit>() {
+		public int compare(ProductSearchHit first, ProductSearchHit second) {
+			int result = Integer.compare(second.getScore(), first.getScore());
+			return result != 0 ? result : first.getProductId().compareTo(second.getProductId());
+		}
+	};
+
+	// Union of the postings of every term starting with the token. Exact
+	// term matches count double so that "tab" ranks "Tab S4" over "Tablet".
+	private DocScores match(String token) {
+		Map<String, Postings> terms = postings.subMap(token, true, token + Character.MAX_VALUE, false);
+		int total = 0;
+		for (Postings list : terms.values()) {
+			total += list.size;
+		}
+		long[] packed = new long[total];
+		int n = 0;
+		for (Map.Entry<String, Postings> entry : terms.entrySet()) {
+			Postings list = entry.getValue();
+			int factor = entry.getKey().equals(token) ? 2 : 1;
+			for (int i = 0; i < list.size; i++) {
+				packed[n++] = ((long) list.docs[i] << 32) | (list.weights[i] * factor);
+			}
+		}
+		Arrays.sort(packed);
+
+		DocScores result = new DocScores(total);
+		for (long entry : packed) {
+			int doc = (int) (entry >>> 32);
+			int score = (int) entry;
+			if (result.size > 0 && result.docs[result.size - 1] == doc) {
+				result.scores[result.size - 1] += score;
+			} else {
+				result.docs[result.size] = doc;
+				result.scores[result.size++] = score;
+			}
+		}
+		return result;
+	}
+
+	// Adds the i-th match as a hit unless it is outside the category, when one is given
+	private void addHit(List<ProductSearchHit> hits, DocScores result, int i, String category) {
+		int doc = result.docs[i];
+		if (category != null && !category.equals(docCategories[doc])) {
+			return;
+		}
+		String productId = productDocTable.productId(doc);
+		if (productId != null) {
+			hits.add(new ProductSearchHit(doc, productId, result.scores[i]));
+		}
+	}
+
+	private void index(Product product) {
+		int doc = productDocTable.docId(product.getProductId());
+		if (doc < 0) {
+			return;
+		}
+		ensureCapacity(doc + 1);
+		unindex(doc);
+
+		Map<String, Integer> weights = new LinkedHashMap<>();
+		addTerms(weights, product.getProductName(), NAME_WEIGHT);
+		addTerms(weights, product.getProductManufacturer(), MANUFACTURER_WEIGHT);
+		addTerms(weights, product.getProductDescription(), DESCRIPTION_WEIGHT);
+		for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+			Postings list = postings.get(entry.getKey());
+			if (list == null) {
+				list = new Postings();
+				postings.put(entry.getKey(), list);
+			}
+			list.add(doc, entry.getValue());
+		}
+		docTerms[doc] = weights.keySet().toArray(new String[weights.size()]);
+		docCategories[doc] = product.getProductCategory();
+	}
+
+	private void unindex(int doc) {
+		if (doc >= docTerms.length || docTerms[doc] == null) {
+			return;
+		}
+		for (String term : docTerms[doc]) {
+			Postings list = postings.get(term);
+			if (list != null && list.remove(doc) && list.size == 0) {
+				postings.remove(term);
+			}
+		}
+		docTerms[doc] = null;
+		docCategories[doc] = null;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > docTerms.length) {
+			int newCapacity = Math.max(capacity, docTerms.length * 2);
+			docTerms = Arrays.copyOf(docTerms, newCapacity);
+			docCategories = Arrays.copyOf(docCategories, newCapacity);
+		}
+	}
+
+	private static void addTerms(Map<String, Integer> weights, String text, int weight) {
+		for (String term : tokenize(text)) {
+			Integer current = weights.get(term);
+			weights.put(term, current == null ? weight : current + weight);
+		}
+	}
+
+	/**
+	 * Splits text into lower case runs of letters and digits.
+	 */
+	public static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<>();
+		if (text == null) {
+			return tokens;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean letterOrDigit = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (letterOrDigit && start < 0) {
+				start = i;
+			} else if (!letterOrDigit && start >= 0) {
+				tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Posting list of one term: doc ids in ascending order with their weights.
+	 */
+	private static final class Postings {
+
+		int[] docs = new int[4];
+		int[] weights = new int[4];
+		int size;
+
+		void add(int doc, int weight) {
+			int index = size == 0 || docs[size - 1] < doc ? -(size + 1) : Arrays.binarySearch(docs, 0, size, doc);
+			if (index >= 0) {
+				weights[index] = weight;
+				return;
+			}
+			index = -(index + 1);
+			if (size == docs.length) {
+				docs = Arrays.copyOf(docs, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+			}
+			System.arraycopy(docs, index, docs, index + 1, size - index);
+			System.arraycopy(weights, index, weights, index + 1, size - index);
+			docs[index] = doc;
+			weights[index] = weight;
+			size++;
+		}
+
+		boolean remove(int doc) {
+			int index = Arrays.binarySearch(docs, 0, size, doc);
+			if (index < 0) {
+				return false;
+			}
+			System.arraycopy(docs, index + 1, docs, index, size - index - 1);
+			System.arraycopy(weights, index + 1, weights, index, size - index - 1);
+			size--;
+			return true;
+		}
+	}
+
+	/**
+	 * Candidate docs of a query in ascending order with accumulated scores.
+	 */
+	private static final class DocScores {
+
+		final int[] docs;
+		final int[] scores;
+		int size;
+
+		DocScores(int capacity) {
+			docs = new int[capacity];
+			scores = new int[capacity];
+		}
+
+		DocScores intersect(DocScores other) {
+			DocScores result = new DocScores(Math.min(size, other.size));
+			int i = 0;
+			int j = 0;
+			while (i < size && j < other.size) {
+				if (docs[i] < other.docs[j]) {
+					i++;
+				} else if (docs[i] > other.docs[j]) {
+					j++;
+				} else {
+					result.docs[result.size] = docs[i];
+					result.scores[result.size++] = scores[i++] + other.scores[j++];
+				}
+			}
+			return result;
+		}
+	}
+
+}
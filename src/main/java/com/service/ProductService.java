@@ -1,13 +1,23 @@
 package com.service;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
+import com.dao.ProductSummaryHandler;
 import com.model.Product;
+import com.model.ProductFacets;
+import com.model.ProductPage;
+import com.model.ProductSummary;
+import com.model.Suggestion;
 
 public interface ProductService {
 
 	public List<Product> getAllProducts();
 
+	// The listing columns of every product, for list views
+	List<ProductSummary> getAllProductSummaries();
+
 	Product getProductById(String productId);
 
 	void deleteProduct(String productId);
@@ -15,6 +25,9 @@ public interface ProductService {
 	void addProduct(Product product);
 	
 	void editProduct(Product product);
+
+	// Drops the cached catalog and rebuilds the in-memory indexes from the database
+	void reloadCatalog();
 	
 	// Search methods
 	List<Product> searchProductsByName(String searchTerm);
@@ -24,4 +37,29 @@ public interface ProductService {
 	List<Product> searchProductsByPriceRange(double minPrice, double maxPrice);
 	
 	List<Product> searchProducts(String searchTerm, String category, Double minPrice, Double maxPrice);
+	
+	// The count cheapest products of a category, cheapest first
+	List<Product> getCheapestProducts(String category, int count);
+
+	// Keyset paginated listing, page tokens come from ProductPage.getNextPageToken()
+	ProductPage getProductsPage(String searchTerm, String category, Double minPrice, Double maxPrice,
+			String sort, String pageToken, int pageSize);
+
+	// Category, manufacturer and price range counts of a search
+	ProductFacets getProductFacets(String searchTerm, String category, Double minPrice, Double maxPrice);
+
+	// Typeahead suggestions for a name or category prefix
+	Suggestion[] suggestProducts(String query);
+
+	// Counts a product page view towards its suggestion ranking
+	void recordProductView(String productId);
+
+	// Hands the summary of every product to the handler as it is read from the database
+	int streamAllProductSummaries(ProductSummaryHandler handler) throws IOException;
+
+	// Catalog cache hit/miss counters
+	Map<String, Object> getCatalogCacheStatistics();
+
+	// Hibernate second-level and query cache counters, per region
+	Map<String, Object> getSecondLevelCacheStatistics();
 }
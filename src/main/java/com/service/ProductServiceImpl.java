@@ -1,20 +1,77 @@
 package com.service;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.dao.ProductDao;
+import com.dao.ProductSummaryHandler;
+import com.dao.SecondLevelCacheStatisticsReader;
+import com.model.InvalidationEvent;
 import com.model.Product;
+import com.model.ProductFacets;
+import com.model.ProductPage;
+import com.model.ProductPageToken;
+import com.model.ProductSort;
+import com.model.ProductSummary;
+import com.model.Suggestion;
 
 @Service(value="productService")
-public class ProductServiceImpl implements ProductService {
+public class ProductServiceImpl implements ProductService, InitializingBean {
+
+	public static final int DEFAULT_PAGE_SIZE = 20;
+	public static final int MAX_PAGE_SIZE = 100;
 
 	@Autowired
 	private ProductDao productDao;
 
+	@Autowired
+	private ProductCatalogCache productCatalogCache;
+
+	@Autowired
+	private ProductSearchIndex productSearchIndex;
+
+	@Autowired
+	private ProductFacetIndex productFacetIndex;
+
+	@Autowired
+	private ProductSuggestIndex productSuggestIndex;
+
+	@Autowired
+	private ProductPriceIndex productPriceIndex;
+
+	@Autowired
+	private ProductDocTable productDocTable;
+
+	@Autowired
+	private CatalogVersion catalogVersion;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private SecondLevelCacheStatisticsReader secondLevelCacheStatisticsReader;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	// in-memory indexes over the catalog, notified of every write
+	@Autowired(required = false)
+	private List<CatalogListener> catalogListeners = Collections.emptyList();
+
+	private final Object catalogLock = new Object();
+	private volatile boolean catalogIndexed;
+
 	public ProductDao getProductDao() {
 		return productDao;
 	}
@@ -23,32 +80,402 @@ public class ProductServiceImpl implements ProductService {
 		this.productDao = productDao;
 	}
 
+	public ProductCatalogCache getProductCatalogCache() {
+		return productCatalogCache;
+	}
+
+	public void setProductCatalogCache(ProductCatalogCache productCatalogCache) {
+		this.productCatalogCache = productCatalogCache;
+	}
+
+	public ProductSearchIndex getProductSearchIndex() {
+		return productSearchIndex;
+	}
+
+	public void setProductSearchIndex(ProductSearchIndex productSearchIndex) {
+		this.productSearchIndex = productSearchIndex;
+	}
+
+	public ProductFacetIndex getProductFacetIndex() {
+		return productFacetIndex;
+	}
+
+	public void setProductFacetIndex(ProductFacetIndex productFacetIndex) {
+		this.productFacetIndex = productFacetIndex;
+	}
+
+	public ProductSuggestIndex getProductSuggestIndex() {
+		return productSuggestIndex;
+	}
+
+	public void setProductSuggestIndex(ProductSuggestIndex productSuggestIndex) {
+		this.productSuggestIndex = productSuggestIndex;
+	}
+
+	public ProductPriceIndex getProductPriceIndex() {
+		return productPriceIndex;
+	}
+
+	public void setProductPriceIndex(ProductPriceIndex productPriceIndex) {
+		this.productPriceIndex = productPriceIndex;
+	}
+
+	public ProductDocTable getProductDocTable() {
+		return productDocTable;
+	}
+
+	public void setProductDocTable(ProductDocTable productDocTable) {
+		this.productDocTable = productDocTable;
+	}
+
+	public CatalogVersion getCatalogVersion() {
+		return catalogVersion;
+	}
+
+	public void setCatalogVersion(CatalogVersion catalogVersion) {
+		this.catalogVersion = catalogVersion;
+	}
+
+	public void setInventoryService(InventoryService inventoryService) {
+		this.inventoryService = inventoryService;
+	}
+
+	public void setSecondLevelCacheStatisticsReader(SecondLevelCacheStatisticsReader secondLevelCacheStatisticsReader) {
+		this.secondLevelCacheStatisticsReader = secondLevelCacheStatisticsReader;
+	}
+
+	public void setCatalogListeners(List<CatalogListener> catalogListeners) {
+		this.catalogListeners = catalogListeners;
+	}
+
+	public void setInvalidationBus(InvalidationBus invalidationBus) {
+		this.invalidationBus = invalidationBus;
+	}
+
+	public void afterPropertiesSet() {
+		invalidationBus.subscribe(InvalidationEvent.PRODUCT, new InvalidationListener() {
+			public void invalidate(InvalidationEvent event) {
+				productChangedElsewhere(event.getKey());
+			}
+		});
+		invalidationBus.subscribe(InvalidationEvent.CATALOG, new InvalidationListener() {
+			public void invalidate(InvalidationEvent event) {
+				productDao.evictFromCache(null);
+				reload();
+			}
+		});
+	}
+
+	// Throws when the database read fails, so an outage is not shown as an empty catalog
 	@Transactional
 	public List<Product> getAllProducts() {
-		return productDao.getAllProducts();
+		List<Product> products = productCatalogCache.getAllProducts();
+		if (products == null) {
+			long generation = productCatalogCache.getGeneration();
+			products = productDao.getAllProducts();
+			productCatalogCache.putAllProducts(products, generation);
+		}
+		return products;
+	}
+
+	public List<ProductSummary> getAllProductSummaries() {
+		// a loaded catalog is already in memory, otherwise only the listing columns are read
+		List<Product> products = productCatalogCache.getAllProducts();
+		if (products != null) {
+			return toSummaries(products);
+		}
+		return productDao.getAllProductSummaries();
+	}
+
+	private static List<ProductSummary> toSummaries(List<Product> products) {
+		List<ProductSummary> summaries = new ArrayList<>(products.size());
+		for (Product product : products) {
+			summaries.add(ProductSummary.of(product));
+		}
+		return summaries;
 	}
 
 	
 	public Product getProductById(String productId) {
-		return productDao.getProductById(productId);
+		Product product = productCatalogCache.getProduct(productId);
+		if (product == null) {
+			long generation = productCatalogCache.getGeneration();
+			product = productDao.getProductById(productId);
+			productCatalogCache.putProduct(product, generation);
+		}
+		return product;
 	}
 
 	
 	public void deleteProduct(String productId) {
 		productDao.deleteProduct(productId);
+		productCatalogCache.evict(productId);
+		inventoryService.refreshStock(productId);
+		fireProductRemoved(productId);
+		catalogVersion.increment();
+		invalidationBus.publish(InvalidationEvent.PRODUCT, productId);
 	}
 	
 	public void addProduct(Product product){
 		productDao.addProduct(product);
+		// the bound form object still holds the upload, so reload it lazily
+		productCatalogCache.evict(product.getProductId());
+		inventoryService.refreshStock(product.getProductId());
+		fireProductSaved(product);
+		catalogVersion.increment();
+		invalidationBus.publish(InvalidationEvent.PRODUCT, product.getProductId());
 	}
 	
 	public void editProduct(Product product){
 		productDao.editProduct(product);
+		productCatalogCache.evict(product.getProductId());
+		inventoryService.refreshStock(product.getProductId());
+		fireProductSaved(product);
+		catalogVersion.increment();
+		invalidationBus.publish(InvalidationEvent.PRODUCT, product.getProductId());
+	}
+
+	// Another node wrote the product: drop every local copy and re-index what
+	// the database now holds
+	private void productChangedElsewhere(String productId) {
+		productDao.evictFromCache(productId);
+		productCatalogCache.evict(productId);
+		inventoryService.refreshStock(productId);
+		Product product = productDao.getProductById(productId);
+		if (product != null) {
+			fireProductSaved(product);
+		} else {
+			fireProductRemoved(productId);
+		}
+		catalogVersion.increment();
+	}
+
+	/**
+	 * Used after writes that bypass this service, such as a bulk import.
+	 * Reloading under the catalog lock keeps single product writes from
+	 * interleaving with the rebuild.
+	 */
+	public void reloadCatalog() {
+		reload();
+		invalidationBus.publish(InvalidationEvent.CATALOG, null);
+	}
+
+	private void reload() {
+		synchronized (catalogLock) {
+			productCatalogCache.clear();
+			inventoryService.refreshStock(null);
+			List<Product> products = getAllProducts();
+			for (CatalogListener listener : catalogListeners) {
+				listener.catalogLoaded(products);
+			}
+			catalogIndexed = true;
+		}
+		catalogVersion.increment();
+	}
+
+	/**
+	 * Loads the whole catalog into the listeners the first time an index is
+	 * needed. Until then writes are not propagated since the load sees them.
+	 */
+	private void ensureCatalogIndexed() {
+		if (catalogIndexed) {
+			return;
+		}
+		synchronized (catalogLock) {
+			if (!catalogIndexed) {
+				// a failed load leaves the indexes to the next request instead of indexing nothing
+				List<Product> products = getAllProducts();
+				for (CatalogListener listener : catalogListeners) {
+					listener.catalogLoaded(products);
+				}
+				catalogIndexed = true;
+			}
+		}
+	}
+
+	private void fireProductSaved(Product product) {
+		synchronized (catalogLock) {
+			if (catalogIndexed) {
+				for (CatalogListener listener : catalogListeners) {
+					listener.productSaved(product);
+				}
+			}
+		}
+	}
+
+	private void fireProductRemoved(String productId) {
+		synchronized (catalogLock) {
+			if (catalogIndexed) {
+				for (CatalogListener listener : catalogListeners) {
+					listener.productRemoved(productId);
+				}
+			}
+		}
+	}
+
+	private static boolean hasText(String value) {
+		return value != null && !value.trim().isEmpty();
+	}
+
+	private static boolean hasPriceBound(Double minPrice, Double maxPrice) {
+		return (minPrice != null && minPrice > 0) || (maxPrice != null && maxPrice > 0);
+	}
+
+	// Resolves index docs through the catalog cache, keeping their order
+	private List<Product> toProducts(int[] docs) {
+		List<Product> products = new ArrayList<>(docs.length);
+		for (int doc : docs) {
+			String productId = productDocTable.productId(doc);
+			Product product = productId == null ? null : getProductById(productId);
+			if (product != null) {
+				products.add(product);
+			}
+		}
+		return products;
+	}
+
+	// Resolves index hits through the catalog cache, keeping their order
+	private List<Product> toProducts(List<ProductSearchHit> hits) {
+		List<Product> products = new ArrayList<>(hits.size());
+		for (ProductSearchHit hit : hits) {
+			Product product = getProductById(hit.getProductId());
+			if (product != null) {
+				products.add(product);
+			}
+		}
+		return products;
+	}
+
+	@Transactional
+	public ProductPage getProductsPage(String searchTerm, String category, Double minPrice, Double maxPrice,
+			String sort, String pageToken, int pageSize) {
+		boolean textSearch = hasText(searchTerm);
+		ProductSort productSort = ProductSort.fromString(sort, textSearch ? ProductSort.RELEVANCE : ProductSort.NAME);
+		if (productSort == ProductSort.RELEVANCE && !textSearch) {
+			productSort = ProductSort.NAME;
+		}
+		int size = pageSize <= 0 ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+
+		// a token issued for another sort order cannot be continued, start over
+		ProductPageToken after = ProductPageToken.decode(pageToken);
+		if (after != null && after.getSort() != productSort) {
+			after = null;
+		}
+
+		if (textSearch || hasPriceBound(minPrice, maxPrice)) {
+			return getIndexedPage(searchTerm, category, minPrice, maxPrice, productSort, after, size);
+		}
+
+		// one extra row tells whether there is a next page
+		List<ProductSummary> products = productDao.getProductsPage(searchTerm, category, minPrice, maxPrice,
+				productSort, after, size + 1);
+		String nextPageToken = null;
+		if (products.size() > size) {
+			products = products.subList(0, size);
+			nextPageToken = ProductPageToken.after(productSort, products.get(size - 1)).encode();
+		}
+		return new ProductPage(products, productSort, size, nextPageToken);
+	}
+
+	// Text and price range searches come from the in-memory indexes, so their
+	// pages are cut in memory with the same (sort key, Id) keyset as the
+	// database pages
+	private ProductPage getIndexedPage(String searchTerm, String category, Double minPrice, Double maxPrice,
+			final ProductSort sort, ProductPageToken after, int size) {
+		if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+			return new ProductPage(new ArrayList<ProductSummary>(), sort, size, null);
+		}
+		ensureCatalogIndexed();
+		final Map<Product, Object> keys = new IdentityHashMap<>();
+		List<Product> products;
+		if (hasText(searchTerm)) {
+			List<ProductSearchHit> hits = productSearchIndex.search(searchTerm, category, minPrice, maxPrice);
+			products = new ArrayList<>(hits.size());
+			for (ProductSearchHit hit : hits) {
+				Product product = getProductById(hit.getProductId());
+				if (product != null) {
+					products.add(product);
+					keys.put(product, sort == ProductSort.RELEVANCE ? (Object) (double) hit.getScore() : sort.keyOf(product));
+				}
+			}
+		} else {
+			products = toProducts(productPriceIndex.docsInRange(minPrice, maxPrice, category));
+			for (Product product : products) {
+				keys.put(product, sort.keyOf(product));
+			}
+		}
+		if (sort != ProductSort.RELEVANCE) {
+			Collections.sort(products, new Comparator<Product>() {
+				public int compare(Product first, Product second) {
+					int result = sort.compareKeys(keys.get(first), keys.get(second));
+					return result != 0 ? result : first.getProductId().compareTo(second.getProductId());
+				}
+			});
+		}
+
+		int start = 0;
+		if (after != null) {
+			while (start < products.size()) {
+				Product product = products.get(start);
+				int result = sort.compareKeys(keys.get(product), after.getSortKey());
+				if (result > 0 || (result == 0 && product.getProductId().compareTo(after.getProductId()) > 0)) {
+					break;
+				}
+				start++;
+			}
+		}
+		int end = Math.min(start + size, products.size());
+		List<Product> page = products.subList(start, end);
+		String nextPageToken = null;
+		if (end < products.size()) {
+			Product last = page.get(page.size() - 1);
+			nextPageToken = ProductPageToken.after(sort, last, keys.get(last)).encode();
+		}
+		return new ProductPage(toSummaries(page), sort, size, nextPageToken);
+	}
+
+	public ProductFacets getProductFacets(String searchTerm, String category, Double minPrice, Double maxPrice) {
+		ensureCatalogIndexed();
+		RoaringBitmap matches = null;
+		if (hasText(searchTerm)) {
+			matches = new RoaringBitmap();
+			for (ProductSearchHit hit : productSearchIndex.search(searchTerm, null, null, null)) {
+				matches.add(hit.getDoc());
+			}
+		}
+		return productFacetIndex.facets(matches, category, minPrice, maxPrice);
+	}
+
+	public Suggestion[] suggestProducts(String query) {
+		ensureCatalogIndexed();
+		return productSuggestIndex.suggest(query);
+	}
+
+	public void recordProductView(String productId) {
+		if (catalogIndexed) {
+			productSuggestIndex.recordView(productId);
+		}
+	}
+
+	public int streamAllProductSummaries(ProductSummaryHandler handler) throws IOException {
+		return productDao.streamAllProductSummaries(handler);
+	}
+
+	public Map<String, Object> getCatalogCacheStatistics() {
+		return productCatalogCache.getStatistics();
+	}
+
+	public Map<String, Object> getSecondLevelCacheStatistics() {
+		return secondLevelCacheStatisticsReader.getStatistics();
 	}
 
 	@Transactional
 	public List<Product> searchProductsByName(String searchTerm) {
-		return productDao.searchProductsByName(searchTerm);
+		if (!hasText(searchTerm)) {
+			return getAllProducts();
+		}
+		ensureCatalogIndexed();
+		return toProducts(productSearchIndex.search(searchTerm, null, null, null));
 	}
 
 	@Transactional
@@ -58,12 +485,33 @@ public class ProductServiceImpl implements ProductService {
 
 	@Transactional
 	public List<Product> searchProductsByPriceRange(double minPrice, double maxPrice) {
-		return productDao.searchProductsByPriceRange(minPrice, maxPrice);
+		if (minPrice < 0 || maxPrice < 0 || minPrice > maxPrice) {
+			return new ArrayList<>();
+		}
+		ensureCatalogIndexed();
+		return toProducts(productPriceIndex.docsInRange(minPrice, maxPrice));
 	}
 
 	@Transactional
 	public List<Product> searchProducts(String searchTerm, String category, Double minPrice, Double maxPrice) {
+		if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+			return new ArrayList<>();
+		}
+		if (hasText(searchTerm)) {
+			// the text match comes from the index, category and price narrow it down
+			ensureCatalogIndexed();
+			return toProducts(productSearchIndex.search(searchTerm, category, minPrice, maxPrice));
+		}
+		if (hasPriceBound(minPrice, maxPrice)) {
+			ensureCatalogIndexed();
+			return toProducts(productPriceIndex.docsInRange(minPrice, maxPrice, category));
+		}
 		return productDao.searchProducts(searchTerm, category, minPrice, maxPrice);
 	}
 
+	public List<Product> getCheapestProducts(String category, int count) {
+		ensureCatalogIndexed();
+		return toProducts(productPriceIndex.cheapestInCategory(category, Math.min(count, MAX_PAGE_SIZE)));
+	}
+
 }
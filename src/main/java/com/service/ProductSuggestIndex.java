@@ -0,0 +1,349 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.model.Product;
+import com.model.Suggestion;
+
+/**
+ * Prefix trie over product names and categories for typeahead. Every node
+ * stores the top suggestions of its subtree by popularity, so a lookup is a
+ * walk down the query characters that returns the array held by the last
+ * node without allocating. Names are also reachable from each word start,
+ * so "gal" suggests "Samsung Galaxy".
+ *
+ * Writes are serialized and publish new arrays, readers never lock.
+ * A node's top list is the best of its own entries and its children's top
+ * lists, so after a change only the nodes on the changed paths are redone.
+ */
+@Component
+public class ProductSuggestIndex implements CatalogListener {
+
+	private static final int TOP_K = 8;
+	private static final int MAX_KEY_LENGTH = 24;
+	private static final Suggestion[] NO_SUGGESTIONS = new Suggestion[0];
+
+	private volatile Node root = new Node();
+
+	// writer side bookkeeping, guarded by this
+	private final Map<String, Entry> productEntries = new HashMap<>();
+	private final Map<String, Entry> categoryEntries = new HashMap<>();
+	private final Map<String, Integer> views = new HashMap<>();
+
+	/**
+	 * Returns up to TOP_K suggestions for the prefix, most popular first.
+	 * The returned array is shared and must not be modified.
+	 */
+	public Suggestion[] suggest(CharSequence query) {
+		if (query == null) {
+			return NO_SUGGESTIONS;
+		}
+		Node node = root;
+		int depth = 0;
+		boolean pendingSpace = false;
+		for (int i = 0; i < query.length() && depth < MAX_KEY_LENGTH; i++) {
+			char c = query.charAt(i);
+			if (!Character.isLetterOrDigit(c)) {
+				pendingSpace = depth > 0;
+				continue;
+			}
+			if (pendingSpace) {
+				node = node.child(' ');
+				depth++;
+				pendingSpace = false;
+				if (node == null || depth == MAX_KEY_LENGTH) {
+					break;
+				}
+			}
+			node = node.child(Character.toLowerCase(c));
+			depth++;
+			if (node == null) {
+				return NO_SUGGESTIONS;
+			}
+		}
+		return node == null || depth == 0 ? NO_SUGGESTIONS : node.suggestions;
+	}
+
+	public synchronized void catalogLoaded(List<Product> products) {
+		productEntries.clear();
+		categoryEntries.clear();
+		Map<String, Integer> categoryCounts = new HashMap<>();
+		Node newRoot = new Node();
+		for (Product product : products) {
+			Entry entry = productEntry(product);
+			if (entry != null) {
+				productEntries.put(product.getProductId(), entry);
+				insert(newRoot, entry);
+			}
+			String category = product.getProductCategory();
+			if (category != null && !category.trim().isEmpty()) {
+				Integer count = categoryCounts.get(category);
+				categoryCounts.put(category, count == null ? 1 : count + 1);
+			}
+		}
+		for (Map.Entry<String, Integer> count : categoryCounts.entrySet()) {
+			Entry entry = new Entry(new Suggestion(count.getKey(), Suggestion.CATEGORY, null), count.getValue());
+			categoryEntries.put(count.getKey(), entry);
+			insert(newRoot, entry);
+		}
+		recomputeSubtree(newRoot);
+		root = newRoot;
+	}
+
+	public synchronized void productSaved(Product product) {
+		Entry old = productEntries.remove(product.getProductId());
+		if (old != null) {
+			remove(old);
+			changeCategoryCount(old.category, -1);
+		}
+		Entry entry = productEntry(product);
+		if (entry != null) {
+			productEntries.put(product.getProductId(), entry);
+			add(entry);
+			changeCategoryCount(product.getProductCategory(), 1);
+		}
+	}
+
+	public synchronized void productRemoved(String productId) {
+		Entry old = productEntries.remove(productId);
+		views.remove(productId);
+		if (old != null) {
+			remove(old);
+			changeCategoryCount(old.category, -1);
+		}
+	}
+
+	/**
+	 * Counts a product page view. The suggestion is re-ranked each time the
+	 * count reaches a power of two, which keeps trie writes logarithmic.
+	 */
+	public synchronized void recordView(String productId) {
+		Integer count = views.get(productId);
+		int newCount = count == null ? 1 : count + 1;
+		views.put(productId, newCount);
+		Entry old = productEntries.get(productId);
+		if (old != null && Integer.bitCount(newCount) == 1) {
+			Entry entry = new Entry(old.suggestion, 1 + newCount, old.category);
+			productEntries.put(productId, entry);
+			remove(old);
+			add(entry);
+		}
+	}
+
+	private Entry productEntry(Product product) {
+		if (product.getProductName() == null || product.getProductName().trim().isEmpty()) {
+			return null;
+		}
+		Integer count = views.get(product.getProductId());
+		Suggestion suggestion = new Suggestion(product.getProductName(), Suggestion.PRODUCT, product.getProductId());
+		return new Entry(suggestion, 1 + (count == null ? 0 : count), product.getProductCategory());
+	}
+
+	private void changeCategoryCount(String category, int delta) {
+		if (category == null || category.trim().isEmpty()) {
+			return;
+		}
+		Entry old = categoryEntries.remove(category);
+		int count = (old == null ? 0 : old.weight) + delta;
+		if (old != null) {
+			remove(old);
+		}
+		if (count > 0) {
+			Entry entry = new Entry(new Suggestion(category, Suggestion.CATEGORY, null), count);
+			categoryEntries.put(category, entry);
+			add(entry);
+		}
+	}
+
+	private void add(Entry entry) {
+		for (String key : keys(entry.suggestion.getText())) {
+			insertKey(root, key, entry);
+			recomputePath(root, key);
+		}
+	}
+
+	private void remove(Entry entry) {
+		for (String key : keys(entry.suggestion.getText())) {
+			Node node = root;
+			for (int i = 0; i < key.length() && node != null; i++) {
+				node = node.child(key.charAt(i));
+			}
+			if (node != null) {
+				node.entries.remove(entry);
+				recomputePath(root, key);
+			}
+		}
+	}
+
+	private static void insert(Node root, Entry entry) {
+		for (String key : keys(entry.suggestion.getText())) {
+			insertKey(root, key, entry);
+		}
+	}
+
+	private static void insertKey(Node root, String key, Entry entry) {
+		Node node = root;
+		for (int i = 0; i < key.length(); i++) {
+			node = node.childOrCreate(key.charAt(i));
+		}
+		if (!node.entries.contains(entry)) {
+			node.entries.add(entry);
+		}
+	}
+
+	// redoes the top lists of the nodes along the key, deepest first
+	private static void recomputePath(Node root, String key) {
+		Node[] path = new Node[key.length() + 1];
+		path[0] = root;
+		int length = 1;
+		for (int i = 0; i < key.length(); i++) {
+			Node child = path[length - 1].child(key.charAt(i));
+			if (child == null) {
+				break;
+			}
+			path[length++] = child;
+		}
+		for (int i = length - 1; i >= 0; i--) {
+			path[i].recompute();
+		}
+	}
+
+	private static void recomputeSubtree(Node node) {
+		for (Node child : node.children.nodes) {
+			recomputeSubtree(child);
+		}
+		node.recompute();
+	}
+
+	/**
+	 * Normalized text (lower case, single spaces between words) and its
+	 * suffixes starting at each word, each cut to MAX_KEY_LENGTH.
+	 */
+	private static List<String> keys(String text) {
+		List<String> words = ProductSearchIndex.tokenize(text);
+		List<String> keys = new ArrayList<>(words.size());
+		for (int start = 0; start < words.size(); start++) {
+			StringBuilder key = new StringBuilder();
+			for (int i = start; i < words.size() && key.length() < MAX_KEY_LENGTH; i++) {
+				if (key.length() > 0) {
+					key.append(' ');
+				}
+				key.append(words.get(i));
+			}
+			String value = key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key.toString();
+			if (!keys.contains(value)) {
+				keys.add(value);
+			}
+		}
+		return keys;
+	}
+
+	private static final Comparator<Entry> BY_WEIGHT = new Comparator<Entry>() {
+		public int compare(Entry first, Entry second) {
+			int result = Integer.compare(second.weight, first.weight);
+			return result != 0 ? result : first.suggestion.getText().compareTo(second.suggestion.getText());
+		}
+	};
+
+	private static final class Entry {
+
+		final Suggestion suggestion;
+		final int weight;
+		final String category;
+
+		Entry(Suggestion suggestion, int weight) {
+			this(suggestion, weight, null);
+		}
+
+		Entry(Suggestion suggestion, int weight, String category) {
+			this.suggestion = suggestion;
+			this.weight = weight;
+			this.category = category;
+		}
+	}
+
+	// child labels and nodes, replaced together so readers see a consistent pair
+	private static final class Children {
+
+		static final Children EMPTY = new Children(new char[0], new Node[0]);
+
+		final char[] labels;
+		final Node[] nodes;
+
+		Children(char[] labels, Node[] nodes) {
+			this.labels = labels;
+			this.nodes = nodes;
+		}
+	}
+
+	private static final class Node {
+
+		volatile Children children = Children.EMPTY;
+		volatile Suggestion[] suggestions = NO_SUGGESTIONS;
+
+		// writer side only
+		final List<Entry> entries = new ArrayList<>(1);
+		Entry[] top = new Entry[0];
+
+		Node child(char label) {
+			Children current = children;
+			int index = Arrays.binarySearch(current.labels, label);
+			return index < 0 ? null : current.nodes[index];
+		}
+
+		Node childOrCreate(char label) {
+			Children current = children;
+			int index = Arrays.binarySearch(current.labels, label);
+			if (index >= 0) {
+				return current.nodes[index];
+			}
+			index = -(index + 1);
+			int size = current.labels.length;
+			char[] labels = new char[size + 1];
+			Node[] nodes = new Node[size + 1];
+			System.arraycopy(current.labels, 0, labels, 0, index);
+			System.arraycopy(current.nodes, 0, nodes, 0, index);
+			System.arraycopy(current.labels, index, labels, index + 1, size - index);
+			System.arraycopy(current.nodes, index, nodes, index + 1, size - index);
+			Node child = new Node();
+			labels[index] = label;
+			nodes[index] = child;
+			children = new Children(labels, nodes);
+			return child;
+		}
+
+		void recompute() {
+			List<Entry> candidates = new ArrayList<>(entries);
+			for (Node child : children.nodes) {
+				Collections.addAll(candidates, child.top);
+			}
+			Collections.sort(candidates, BY_WEIGHT);
+			Map<Entry, Boolean> seen = new IdentityHashMap<>();
+			List<Entry> best = new ArrayList<>(TOP_K);
+			for (Entry entry : candidates) {
+				if (best.size() == TOP_K) {
+					break;
+				}
+				if (seen.put(entry, Boolean.TRUE) == null) {
+					best.add(entry);
+				}
+			}
+			Suggestion[] bestSuggestions = new Suggestion[best.size()];
+			for (int i = 0; i < bestSuggestions.length; i++) {
+				bestSuggestions[i] = best.get(i).suggestion;
+			}
+			top = best.toArray(new Entry[best.size()]);
+			suggestions = bestSuggestions;
+		}
+	}
+
+}
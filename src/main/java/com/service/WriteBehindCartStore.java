@@ -0,0 +1,568 @@
+package com.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+
+import com.dao.CartDao;
+import com.dao.CartItemDao;
+import com.dao.CartJournal;
+import com.model.Cart;
+import com.model.CartItem;
+import com.model.Product;
+
+/**
+ * Write-behind store of carts, used when cart.store.mode=write-behind. Live
+ * carts are kept in memory, each change is appended to a local journal that
+ * is group committed before the request returns, and the cart and cartitem
+ * tables are written in batches every cart.store.flush.millis (2000 by
+ * default) and for a cart going to checkout. Adding to a cart therefore costs
+ * a local fsync shared with the concurrent requests instead of a database
+ * transaction. On startup the journal left by the last run is replayed over
+ * the tables and written out.
+ *
+ * Journal records hold the resulting state of a line rather than the change,
+ * so replaying a record that already reached the tables changes nothing.
+ * The carts of a node are only seen by others once written, so the mode is
+ * meant for a single node or for sessions pinned to a node. Carts not touched
+ * for cart.store.idle.minutes (30 by default) are dropped from memory once
+ * written.
+ */
+public class WriteBehindCartStore implements InitializingBean, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindCartStore.class);
+
+	public static final String MODE = "write-behind";
+
+	private static final int STRIPES = 64;
+
+	// record types: the state of a line, a removed line, a cleared cart
+	private static final String SET_LINE = "S";
+	private static final String REMOVE_LINE = "R";
+	private static final String CLEAR_CART = "C";
+
+	@Autowired
+	private CartDao cartDao;
+
+	@Autowired
+	private CartItemDao cartItemDao;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private Environment environment;
+
+	private final ConcurrentHashMap<String, LiveCart> carts = new ConcurrentHashMap<>();
+
+	// cart of every line held in memory, for the requests that only name the line
+	private final ConcurrentHashMap<String, String> cartOfLine = new ConcurrentHashMap<>();
+
+	// carts changed since they were last written
+	private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+	// a cart is read and changed under the lock of its stripe
+	private final Object[] stripes = new Object[STRIPES];
+
+	// one database write at a time, so journal segments are only deleted
+	// once nothing they hold is still on its way to the tables
+	private final Object writeLock = new Object();
+
+	private boolean active;
+	private long idleMillis;
+	private CartJournal journal;
+	private ScheduledExecutorService flusher;
+
+	public WriteBehindCartStore() {
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Object();
+		}
+	}
+
+	public CartDao getCartDao() {
+		return cartDao;
+	}
+
+	public void setCartDao(CartDao cartDao) {
+		this.cartDao = cartDao;
+	}
+
+	public CartItemDao getCartItemDao() {
+		return cartItemDao;
+	}
+
+	public void setCartItemDao(CartItemDao cartItemDao) {
+		this.cartItemDao = cartItemDao;
+	}
+
+	public ProductService getProductService() {
+		return productService;
+	}
+
+	public void setProductService(ProductService productService) {
+		this.productService = productService;
+	}
+
+	public void setEnvironment(Environment environment) {
+		this.environment = environment;
+	}
+
+	public void afterPropertiesSet() throws IOException {
+		active = MODE.equals(environment.getProperty("cart.store.mode", "database"));
+		if (!active) {
+			return;
+		}
+		idleMillis = TimeUnit.MINUTES.toMillis(environment.getProperty("cart.store.idle.minutes", Long.class, 30L));
+		Path directory = Paths.get(environment.getProperty("cart.store.journal.directory",
+				Paths.get(System.getProperty("user.home"), "shopieasy", "cart-journal").toString()));
+		journal = new CartJournal(directory);
+		replay(journal.recover());
+		try {
+			flushDirty();
+		} catch (Exception e) {
+			// the recovered carts stay dirty and in the journal until a flush succeeds
+			logger.error("Error writing the carts recovered from the journal", e);
+		}
+
+		long flushMillis = environment.getProperty("cart.store.flush.millis", Long.class, 2000L);
+		flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cart-write-behind");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					flushDirty();
+					evictIdle();
+				} catch (Exception e) {
+					logger.error("Error writing carts behind", e);
+				}
+			}
+		}, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+		logger.info("Write-behind cart store journaling to {}", directory);
+	}
+
+	public void destroy() throws IOException {
+		if (!active) {
+			return;
+		}
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(10, TimeUnit.SECONDS);
+			flushDirty();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			logger.error("Error writing carts at shutdown, they are recovered from the journal", e);
+		}
+		journal.close();
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	public void incrementQuantity(String cartId, Product product, int quantity) {
+		long sequence;
+		synchronized (lockOf(cartId)) {
+			sequence = addToLine(live(cartId), product.getProductId(), quantity, quantity * product.getProductPrice());
+		}
+		sync(cartId, sequence);
+	}
+
+	// Adds the quantity and price of each line, with a single wait for the journal
+	public void addCartItems(String cartId, List<CartItem> cartItems) {
+		long sequence = 0;
+		synchronized (lockOf(cartId)) {
+			LiveCart cart = live(cartId);
+			for (CartItem cartItem : cartItems) {
+				sequence = addToLine(cart, cartItem.getProduct().getProductId(), cartItem.getQuality(),
+						cartItem.getPrice());
+			}
+		}
+		sync(cartId, sequence);
+	}
+
+	public CartItem removeCartItem(String cartItemId) {
+		String cartId = cartOf(cartItemId);
+		if (cartId == null) {
+			return null;
+		}
+		long sequence;
+		LiveLine removed = null;
+		synchronized (lockOf(cartId)) {
+			LiveCart cart = live(cartId);
+			for (Iterator<LiveLine> lines = cart.lines.values().iterator(); lines.hasNext();) {
+				LiveLine line = lines.next();
+				if (line.cartItemId.equals(cartItemId)) {
+					lines.remove();
+					removed = line;
+					break;
+				}
+			}
+			if (removed == null) {
+				return null;
+			}
+			cartOfLine.remove(cartItemId);
+			sequence = record(cart, REMOVE_LINE + '\t' + cartId + '\t' + cartItemId);
+		}
+		sync(cartId, sequence);
+		return toCartItem(cartId, removed.copy());
+	}
+
+	public int removeAllCartItems(String cartId) {
+		long sequence;
+		int removed;
+		synchronized (lockOf(cartId)) {
+			LiveCart cart = live(cartId);
+			removed = cart.lines.size();
+			for (LiveLine line : cart.lines.values()) {
+				cartOfLine.remove(line.cartItemId);
+			}
+			cart.lines.clear();
+			sequence = record(cart, CLEAR_CART + '\t' + cartId);
+		}
+		sync(cartId, sequence);
+		return removed;
+	}
+
+	public CartItem getCartItemById(String cartItemId) {
+		String cartId = cartOf(cartItemId);
+		if (cartId == null) {
+			return null;
+		}
+		LiveLine found = null;
+		synchronized (lockOf(cartId)) {
+			for (LiveLine line : live(cartId).lines.values()) {
+				if (line.cartItemId.equals(cartItemId)) {
+					found = line.copy();
+				}
+			}
+		}
+		return found != null ? toCartItem(cartId, found) : null;
+	}
+
+	/**
+	 * The cart as the rest of the application sees it, built from memory.
+	 *
+	 * @return a detached cart, null when there is no such cart
+	 */
+	public Cart getCart(String cartId) {
+		List<LiveLine> lines = new ArrayList<>();
+		synchronized (lockOf(cartId)) {
+			LiveCart cart = carts.get(cartId);
+			if (cart == null) {
+				cart = load(cartId);
+				if (cart == null) {
+					return null;
+				}
+			}
+			for (LiveLine line : cart.lines.values()) {
+				lines.add(line.copy());
+			}
+		}
+		Cart cart = new Cart();
+		cart.setCartId(cartId);
+		List<CartItem> cartItems = new ArrayList<>();
+		double totalPrice = 0;
+		int itemCount = 0;
+		for (LiveLine line : lines) {
+			CartItem cartItem = toCartItem(cartId, line);
+			cartItem.setCart(cart);
+			cartItems.add(cartItem);
+			totalPrice += line.price;
+			itemCount += line.quantity;
+		}
+		cart.setCartItem(cartItems);
+		cart.setTotalPrice(totalPrice);
+		cart.setItemCount(itemCount);
+		return cart;
+	}
+
+	public double getGrandTotal(String cartId) {
+		synchronized (lockOf(cartId)) {
+			double total = 0;
+			for (LiveLine line : live(cartId).lines.values()) {
+				total += line.price;
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * Writes the cart to the tables now, as checkout reads it from there.
+	 */
+	public void flush(String cartId) {
+		synchronized (writeLock) {
+			Map<String, List<CartItem>> snapshot = new HashMap<>();
+			takeSnapshot(cartId, snapshot);
+			write(snapshot);
+		}
+	}
+
+	/**
+	 * Writes every changed cart in one transaction, then drops the journal
+	 * segments whose changes are all in the tables.
+	 */
+	public void flushDirty() throws IOException {
+		synchronized (writeLock) {
+			// changes appended from here on go to the new segment; the older
+			// segments only hold changes of carts that are dirty now
+			long segment = journal.rotate();
+			Map<String, List<CartItem>> snapshot = new HashMap<>();
+			for (String cartId : dirty) {
+				takeSnapshot(cartId, snapshot);
+			}
+			write(snapshot);
+			journal.deleteSegmentsBefore(segment);
+			if (!snapshot.isEmpty()) {
+				logger.debug("Wrote {} carts behind", snapshot.size());
+			}
+		}
+	}
+
+	private void takeSnapshot(String cartId, Map<String, List<CartItem>> snapshot) {
+		synchronized (lockOf(cartId)) {
+			LiveCart cart = carts.get(cartId);
+			if (cart == null || !dirty.remove(cartId)) {
+				return;
+			}
+			List<CartItem> lines = new ArrayList<>();
+			for (LiveLine line : cart.lines.values()) {
+				lines.add(toStoredItem(line));
+			}
+			snapshot.put(cartId, lines);
+		}
+	}
+
+	private void write(Map<String, List<CartItem>> snapshot) {
+		if (snapshot.isEmpty()) {
+			return;
+		}
+		try {
+			cartItemDao.writeCarts(snapshot);
+		} catch (RuntimeException e) {
+			dirty.addAll(snapshot.keySet());
+			throw e;
+		}
+	}
+
+	private void evictIdle() {
+		long idleSince = System.currentTimeMillis() - idleMillis;
+		for (Map.Entry<String, LiveCart> entry : carts.entrySet()) {
+			String cartId = entry.getKey();
+			if (entry.getValue().lastAccess >= idleSince) {
+				continue;
+			}
+			synchronized (lockOf(cartId)) {
+				LiveCart cart = carts.get(cartId);
+				if (cart != null && cart.lastAccess < idleSince && !dirty.contains(cartId)) {
+					carts.remove(cartId);
+					for (LiveLine line : cart.lines.values()) {
+						cartOfLine.remove(line.cartItemId);
+					}
+				}
+			}
+		}
+	}
+
+	private void replay(List<String> records) {
+		for (String record : records) {
+			String[] fields = record.split("\t");
+			String cartId = fields[1];
+			synchronized (lockOf(cartId)) {
+				LiveCart cart = carts.get(cartId);
+				if (cart == null) {
+					cart = load(cartId);
+					if (cart == null) {
+						logger.warn("Skipping journal record of missing cart {}", cartId);
+						continue;
+					}
+				}
+				if (SET_LINE.equals(fields[0])) {
+					LiveLine previous = cart.lines.get(fields[2]);
+					if (previous != null) {
+						cartOfLine.remove(previous.cartItemId);
+					}
+					LiveLine line = new LiveLine(fields[3], fields[2]);
+					line.quantity = Integer.parseInt(fields[4]);
+					line.price = Double.parseDouble(fields[5]);
+					cart.lines.put(line.productId, line);
+					cartOfLine.put(line.cartItemId, cartId);
+				} else if (REMOVE_LINE.equals(fields[0])) {
+					for (Iterator<LiveLine> lines = cart.lines.values().iterator(); lines.hasNext();) {
+						if (lines.next().cartItemId.equals(fields[2])) {
+							lines.remove();
+						}
+					}
+					cartOfLine.remove(fields[2]);
+				} else if (CLEAR_CART.equals(fields[0])) {
+					for (LiveLine line : cart.lines.values()) {
+						cartOfLine.remove(line.cartItemId);
+					}
+					cart.lines.clear();
+				}
+				dirty.add(cartId);
+			}
+		}
+	}
+
+	// the cart in memory, read from the tables on first use; caller holds the stripe
+	private LiveCart live(String cartId) {
+		LiveCart cart = carts.get(cartId);
+		if (cart == null) {
+			cart = load(cartId);
+			if (cart == null) {
+				throw new IllegalArgumentException("No cart " + cartId);
+			}
+		}
+		return cart;
+	}
+
+	private LiveCart load(String cartId) {
+		Cart stored = cartDao.getCartByCartId(cartId);
+		if (stored == null) {
+			return null;
+		}
+		LiveCart cart = new LiveCart(cartId);
+		for (CartItem cartItem : stored.getCartItem()) {
+			LiveLine line = new LiveLine(cartItem.getCartItemId(), cartItem.getProduct().getProductId());
+			line.quantity = cartItem.getQuality();
+			line.price = cartItem.getPrice();
+			cart.lines.put(line.productId, line);
+			cartOfLine.put(line.cartItemId, cartId);
+		}
+		carts.put(cartId, cart);
+		return cart;
+	}
+
+	private String cartOf(String cartItemId) {
+		String cartId = cartOfLine.get(cartItemId);
+		if (cartId == null) {
+			// a line of a cart that is not in memory yet
+			CartItem stored = cartItemDao.getCartItemById(cartItemId);
+			if (stored != null) {
+				cartId = stored.getCart().getCartId();
+			}
+		}
+		return cartId;
+	}
+
+	// caller holds the stripe
+	private long addToLine(LiveCart cart, String productId, int quantity, double price) {
+		LiveLine line = cart.lines.get(productId);
+		if (line == null) {
+			line = new LiveLine(cartItemDao.nextCartItemId(), productId);
+			cart.lines.put(line.productId, line);
+			cartOfLine.put(line.cartItemId, cart.cartId);
+		}
+		line.quantity += quantity;
+		line.price += price;
+		return record(cart, SET_LINE + '\t' + cart.cartId + '\t' + line.productId + '\t' + line.cartItemId + '\t'
+				+ line.quantity + '\t' + line.price);
+	}
+
+	// caller holds the stripe, so records of one cart are appended in order
+	private long record(LiveCart cart, String record) {
+		cart.lastAccess = System.currentTimeMillis();
+		dirty.add(cart.cartId);
+		return journal.append(record);
+	}
+
+	private void sync(String cartId, long sequence) {
+		try {
+			journal.sync(sequence);
+		} catch (IOException e) {
+			// without the journal the change is only safe once in the tables
+			logger.error("Error journaling a change of cart {}, writing it through", cartId, e);
+			flush(cartId);
+		}
+	}
+
+	private CartItem toCartItem(String cartId, LiveLine line) {
+		Product product = productService.getProductById(line.productId);
+		if (product == null) {
+			product = new Product();
+			product.setProductId(line.productId);
+		}
+		Cart cart = new Cart();
+		cart.setCartId(cartId);
+		CartItem cartItem = new CartItem();
+		cartItem.setCartItemId(line.cartItemId);
+		cartItem.setQuality(line.quantity);
+		cartItem.setPrice(line.price);
+		cartItem.setProduct(product);
+		cartItem.setCart(cart);
+		return cartItem;
+	}
+
+	private static CartItem toStoredItem(LiveLine line) {
+		Product product = new Product();
+		product.setProductId(line.productId);
+		CartItem cartItem = new CartItem();
+		cartItem.setCartItemId(line.cartItemId);
+		cartItem.setQuality(line.quantity);
+		cartItem.setPrice(line.price);
+		cartItem.setProduct(product);
+		return cartItem;
+	}
+
+	private Object lockOf(String cartId) {
+		return stripes[(cartId.hashCode() & Integer.MAX_VALUE) % STRIPES];
+	}
+
+	private static final class LiveCart {
+
+		final String cartId;
+		// lines by product id, in the order they were added
+		final Map<String, LiveLine> lines = new LinkedHashMap<>();
+		long lastAccess = System.currentTimeMillis();
+
+		LiveCart(String cartId) {
+			this.cartId = cartId;
+		}
+	}
+
+	private static final class LiveLine {
+
+		final String cartItemId;
+		final String productId;
+		int quantity;
+		double price;
+
+		LiveLine(String cartItemId, String productId) {
+			this.cartItemId = cartItemId;
+			this.productId = productId;
+		}
+
+		LiveLine copy() {
+			LiveLine copy = new LiveLine(cartItemId, productId);
+			copy.quantity = quantity;
+			copy.price = price;
+			return copy;
+		}
+	}
+
+}
@@ -0,0 +1,23 @@
+<%@ taglib prefix="spring" uri="http://www.springframework.org/tags"%>
+<%@ include file="/WEB-INF/page/navbar.jsp"%>
+<%@ page isELIgnored="false"%>
+<div class="container-wrapper">
+	<div class="container" style="margin-bottom: 180px;">
+		<section>
+			<div class="jumbotron">
+				<div class="container">
+					<h1>Out of Stock!</h1>
+					<p>Some items in your cart sold out before the order was placed. Nothing has been charged.</p>
+				</div>
+			</div>
+		</section>
+
+		<section class="container">
+			<p>
+				<center><a href="<spring:url value="/cart/getCartById" />"
+					class="btn btn-default">Review Cart</a></center>
+			</p>
+		</section>
+	</div>
+</div>
+<%@ include file="/WEB-INF/page/footer.jsp"%>
@@ -76,6 +76,7 @@
 								 <form:input type="text"
 									placeholder="Number of Products.." class="form-control"
 									path="unitStock"></form:input>
+								 <form:errors path="unitStock"></form:errors>
 							</div>
 						</div>
 					 	<div class="form-group">
@@ -27,7 +27,7 @@
 		style="width: 1145px; margin-top: 20px; margin-bottom: 180px;">
 		<div ng-app="myapp" ng-controller="myController"
 			style="margin-bottom: 30px">
-			<div ng-init="getCart(${cartId})">
+			<div ng-init="getCart('${cartId}')">
 				<br> List of Products Purchased
 				<div>
 
@@ -37,7 +37,13 @@
 					</a>
 				</div>
 				<div>
-					<c:url value="/order/${cartId}" var="url1"></c:url>
+					<!-- a guest cart is added to the customer's cart at login -->
+					<security:authorize access="isAnonymous()">
+						<c:url value="/login" var="url1"></c:url>
+					</security:authorize>
+					<security:authorize access="isAuthenticated()">
+						<c:url value="/order/${cartId}" var="url1"></c:url>
+					</security:authorize>
 					<a href="${url1}" class="btn btn-danger pull-left"
 						style="margin-top: 15px; margin-left: 20px"> <span
 						class="glyphicon glyphicon-shipping-cart"> </span>Check Out
@@ -53,13 +59,13 @@
 						</tr>
 					</thead>
 					<tbody>
-						<tr ng-repeat="cart in carts.cartItem">
-							<td>{{cart.product.productName}}</td>
-							<td>{{cart.quality}}</td>
-							<td>{{cart.product.productPrice}}</td>
-							<td>{{cart.price}}</td>
+						<tr ng-repeat="line in carts.lines">
+							<td>{{line.productName}}</td>
+							<td>{{line.quantity}}</td>
+							<td>{{line.unitPrice}}</td>
+							<td>{{line.lineTotal}}</td>
 							<td><a href="#" class="btn btn-danger"
-								ng-click="removeFromCart(cart.cartItemId)"
+								ng-click="removeFromCart(line.cartItemId)"
 								style="margin-top: 0px;"><span
 									class="glyphicon glyphicon-trash"></span>remove</a></td>
 					</tbody>
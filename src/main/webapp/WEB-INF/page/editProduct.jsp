@@ -76,6 +76,8 @@
 								<form:label path="unitStock">Number of Products</form:label>
 								<form:input type="text" placeholder="Number of Products.."
 									class="form-control" path="unitStock"></form:input>
+								<!-- the change to this value is what gets applied to the stock -->
+								<input type="hidden" name="loadedStock" value="${editProductObj.unitStock}" />
 							</div>
 						</div>
 						<div class="form-actions">
@@ -74,7 +74,7 @@
 			<ul class="nav navbar-nav navbar-right">
 
 				<c:if test="${pageContext.request.userPrincipal.name==null}">
-					<li><a href="<c:url value="/login" />"><span
+					<li><a href="<c:url value="/cart/getCartById" />"><span
 							class="glyphicon glyphicon-shopping-cart"></span>My Cart</a></li>
 					<li><a href="<c:url value="/customer/registration" />"><span
 							class="glyphicon glyphicon-log-user"></span> SignUp</a></li>
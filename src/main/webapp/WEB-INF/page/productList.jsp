@@ -25,6 +25,24 @@
 <script
 	src="https://ajax.googleapis.com/ajax/libs/angularjs/1.4.8/angular.min.js"></script>
 <script src="<c:url value="../resource/js/productController.js"/>"></script>
+<script>
+	// typeahead: ask /products/suggest as the user types and fill the datalist
+	$(function() {
+		var suggestUrl = "<c:url value='/products/suggest'/>";
+		$("#searchTerm").on("input", function() {
+			var query = $(this).val();
+			if (query.length < 2) {
+				return;
+			}
+			$.getJSON(suggestUrl, { q : query }, function(suggestions) {
+				var list = $("#productSuggestions").empty();
+				$.each(suggestions, function(i, suggestion) {
+					list.append($("<option>").attr("value", suggestion.text));
+				});
+			});
+		});
+	});
+</script>
 </head>
 <body ng-app="myapp">
 	<div class="container" id="productTable"
@@ -44,12 +62,14 @@
 					<div class="row">
 						<div class="col-sm-4">
 							<div class="form-group">
-								<label for="searchTerm" class="control-label">Search by Name:</label>
+								<label for="searchTerm" class="control-label">Search:</label>
 								<input type="text" class="form-control" id="searchTerm" name="searchTerm" 
-									placeholder="Enter product name..." value="${searchTerm}">
+									placeholder="Name, manufacturer or description..." value="${searchTerm}"
+									list="productSuggestions" autocomplete="off">
+								<datalist id="productSuggestions"></datalist>
 							</div>
 						</div>
-						<div class="col-sm-3">
+						<div class="col-sm-2">
 							<div class="form-group">
 								<label for="category" class="control-label">Category:</label>
 								<select class="form-control" id="category" name="category">
@@ -75,6 +95,18 @@
 									placeholder="Max" min="0" step="0.01" value="${maxPrice}">
 							</div>
 						</div>
+						<div class="col-sm-1">
+							<div class="form-group">
+								<label for="sort" class="control-label">Sort:</label>
+								<select class="form-control" id="sort" name="sort">
+									<c:if test="${not empty searchTerm}">
+										<option value="RELEVANCE" ${page.sort == 'RELEVANCE' ? 'selected' : ''}>Relevance</option>
+									</c:if>
+									<option value="NAME" ${page.sort == 'NAME' ? 'selected' : ''}>Name</option>
+									<option value="PRICE" ${page.sort == 'PRICE' ? 'selected' : ''}>Price</option>
+								</select>
+							</div>
+						</div>
 						<div class="col-sm-1">
 							<div class="form-group">
 								<label class="control-label">&nbsp;</label>
@@ -91,7 +123,7 @@
 							</a>
 							<c:if test="${not empty searchTerm or (not empty selectedCategory and selectedCategory != 'All') or not empty minPrice or not empty maxPrice}">
 								<span class="label label-info" style="margin-left: 10px;">
-									Found ${fn:length(products)} product(s)
+									Found ${facets.totalCount} product(s)
 								</span>
 							</c:if>
 						</div>
@@ -100,6 +132,48 @@
 			</div>
 		</div>
 		
+		<!-- Facet counts of the current search -->
+		<c:if test="${not empty facets}">
+			<div class="row" style="margin-bottom: 20px;">
+				<div class="col-sm-4">
+					<strong>Category</strong>
+					<ul class="list-unstyled">
+						<c:forEach items="${facets.categories}" var="facet">
+							<c:url value="/searchProducts" var="facetUrl">
+								<c:param name="searchTerm" value="${searchTerm}" />
+								<c:param name="category" value="${facet.value}" />
+								<c:param name="minPrice" value="${minPrice}" />
+								<c:param name="maxPrice" value="${maxPrice}" />
+							</c:url>
+							<li><a href="${facetUrl}">${facet.value}</a> <span class="badge">${facet.count}</span></li>
+						</c:forEach>
+					</ul>
+				</div>
+				<div class="col-sm-4">
+					<strong>Price</strong>
+					<ul class="list-unstyled">
+						<c:forEach items="${facets.priceRanges}" var="facet">
+							<c:url value="/searchProducts" var="facetUrl">
+								<c:param name="searchTerm" value="${searchTerm}" />
+								<c:param name="category" value="${selectedCategory}" />
+								<c:param name="minPrice" value="${facet.minPrice}" />
+								<c:param name="maxPrice" value="${facet.maxPrice}" />
+							</c:url>
+							<li><a href="${facetUrl}">${facet.value}</a> <span class="badge">${facet.count}</span></li>
+						</c:forEach>
+					</ul>
+				</div>
+				<div class="col-sm-4">
+					<strong>Manufacturer</strong>
+					<ul class="list-unstyled">
+						<c:forEach items="${facets.manufacturers}" var="facet">
+							<li>${facet.value} <span class="badge">${facet.count}</span></li>
+						</c:forEach>
+					</ul>
+				</div>
+			</div>
+		</c:if>
+
 		<table class="table table-hover" id="productList">
 			<thead>
 				<tr>
@@ -109,9 +183,8 @@
 					<th>Product Name</th>
 					<th>Products Price</th>
 					<th>Stock Unit</th>
-					<th>Description</th>
 					<th>Manufacturer</th>
-					<th>View <security:authorize access="hasAnyRole('ROLE_USER')">
+					<th>View <security:authorize access="!hasRole('ROLE_ADMIN')">
 					/ Add to Cart
 					</security:authorize> <!-- 					views only to the admin --> <security:authorize
 							 access="hasAnyRole('ROLE_ADMIN')">
@@ -124,21 +197,20 @@
 				<c:forEach items="${products}" var="prod">
 					<tr>
 						<td style="width: 171px"><img
-							src="<c:url value="/resource/images/products/${prod.productId}.jpg"/>"
-							style="width: 100px; height: 90px;" ${prod.productName}"  /></td>
+							src="<c:url value="${productImages.thumbnail[prod.productId]}"/>"
+							loading="lazy" style="width: 100px; height: 90px;" alt="${prod.productName}"  /></td>
 						<td>${prod.productId}</td>
 						<td>${prod.productCategory}</td>
 						<td>${prod.productName}</td>
 						<td>${prod.productPrice}</td>
 						<td>${prod.unitStock}</td>
-						<td style="width: 180px">${prod.productDescription}</td>
 						<td>${prod.productManufacturer}</td>
 						<td ng-controller="myController"><a
 							href="getProductById/${prod.productId}" class="btn btn-info"
 							role="button"> <span class="glyphicon glyphicon-info-sign"></span></a>
 
-							<!-- 						view only for user --> <security:authorize
-								 access="hasAnyRole('ROLE_USER')">
+							<!-- 						view for users and guests --> <security:authorize
+								 access="!hasRole('ROLE_ADMIN')">
 								<a href="#" ng-click="addToCart(${prod.productId})"
 									class="btn btn-primary" style="margin-left: 5px"> <span
 									class="glyphicon glyphicon-shopping-cart"></span></a>
@@ -155,6 +227,33 @@
 				</c:forEach>
 			</tbody>
 		</table>
+
+		<!-- Keyset pagination: the next page continues after the last row of this one -->
+		<ul class="pager">
+			<c:url value="${pageAction}" var="firstPageUrl">
+				<c:param name="sort" value="${page.sort}" />
+				<c:if test="${pageAction == '/searchProducts'}">
+					<c:param name="searchTerm" value="${searchTerm}" />
+					<c:param name="category" value="${selectedCategory}" />
+					<c:param name="minPrice" value="${minPrice}" />
+					<c:param name="maxPrice" value="${maxPrice}" />
+				</c:if>
+			</c:url>
+			<li class="previous"><a href="${firstPageUrl}">&larr; First page</a></li>
+			<c:if test="${page.hasNext}">
+				<c:url value="${pageAction}" var="nextPageUrl">
+					<c:param name="sort" value="${page.sort}" />
+					<c:param name="pageToken" value="${page.nextPageToken}" />
+					<c:if test="${pageAction == '/searchProducts'}">
+						<c:param name="searchTerm" value="${searchTerm}" />
+						<c:param name="category" value="${selectedCategory}" />
+						<c:param name="minPrice" value="${minPrice}" />
+						<c:param name="maxPrice" value="${maxPrice}" />
+					</c:if>
+				</c:url>
+				<li class="next"><a href="${nextPageUrl}">Next page &rarr;</a></li>
+			</c:if>
+		</ul>
 	</div>
 </body>
 </html>
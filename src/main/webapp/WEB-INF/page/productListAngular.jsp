@@ -40,7 +40,6 @@
 							<th>Product Name</th>
 							<th>Products Price</th>
 							<th>Stock Unit</th>
-							<th>Description</th>
 							<th>Manufacturer</th>
 							<th>View <security:authorize ifAnyGranted="ROLE_USER">
 					/ Add to Cart
@@ -55,14 +54,13 @@
 
 						<tr ng-repeat="b in products | filter:searchCondition">
 							<td style="width: 171px"><img
-								src="<c:url value="../resource/images/products/{{b.productId}}.jpg"/>"
-								style="width: 100px; height: 90px;" {{b.productName}}"  /></td>
+								ng-src="<c:url value="../images/products/{{b.productId}}-thumb.jpg"/>"
+								loading="lazy" style="width: 100px; height: 90px;" alt="{{b.productName}}"  /></td>
 							<td>{{b.productId}}</td>
 							<td>{{b.productCategory}}</td>
 							<td>{{b.productName}}</td>
 							<td>{{b.productPrice}}</td>
 							<td>{{b.unitStock}}</td>
-							<td style="width: 180px">{{b.productDescription}}</td>
 							<td>{{b.productManufacturer}}</td>
 							<td><a href="getProductById/{{b.productId}}"
 								class="btn btn-info" role="button"> <span
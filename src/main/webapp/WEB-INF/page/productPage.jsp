@@ -28,7 +28,7 @@
 					<tr>
 						<td>Prodcut Image</td>
 						<td><img
-							src="<c:url value="/resource/images/products/${productObj.productId}.jpg"/>"
+							src="<c:url value="${productImages.detail[productObj.productId]}"/>"
 							width="40%" alt="${productObj.productName}" /></td>
 					</tr>
 					<tr>
@@ -64,7 +64,7 @@
 						<td><c:url value="/cart/add/${productObj.productId}"
 								var="addcart"></c:url>
 							<div ng-controller="myController">
-								<security:authorize access="hasRole('ROLE_USER')">
+								<security:authorize access="!hasRole('ROLE_ADMIN')">
 									<a href="#" ng-click="addToCart(${productObj.productId})"
 										class="btn btn-info"
 										style="margin-top: 0px; width: 150px; float: left; margin-right: 31px;">
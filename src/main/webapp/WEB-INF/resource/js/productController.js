@@ -16,8 +16,16 @@ var app = angular.module("myapp", []).controller(
 						.success(function() {
 							alert("Added Successfully");
 						})
+						.error(function(data, status) {
+							if (status == 409) {
+								alert("Sorry, this product is out of stock");
+							} else if (status == 403) {
+								alert("Your cart is full, please log in to add more");
+							}
+						})
 			}
 
+			// the browser revalidates with the cart's ETag, an unchanged cart comes back as a 304
 			$scope.refreshCart = function() {
 				$http.get(BASE_PATH + "/cart/getCart/"
 								+ $scope.cartId).success(function(data) {
@@ -44,11 +52,8 @@ var app = angular.module("myapp", []).controller(
 				});
 			}
 
+			// the server keeps the total current on every change of the cart
 			$scope.calculateGrandTotal = function() {
-				var grandTotal = 0.0;
-				for (var i = 0; i < $scope.carts.cartItem.length; i++)
-					grandTotal = grandTotal + $scope.carts.cartItem[i].price;
-				return grandTotal;
-
+				return $scope.carts.totalPrice;
 			}
 		});
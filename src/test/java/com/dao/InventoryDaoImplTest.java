@@ -0,0 +1,103 @@
+package com.dao;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import com.model.Product;
+
+/**
+ * Checks the two writers of product stock on in-memory H2: checkout takes
+ * units off without dropping other cached products, and an admin edit adds
+ * its change without writing over units sold meanwhile.
+ */
+public class InventoryDaoImplTest extends TestCase {
+
+	private SessionFactory sessionFactory;
+	private InventoryDaoImpl inventoryDao;
+	private ProductDaoImpl productDao;
+	private String first;
+	private String second;
+
+	protected void setUp() {
+		sessionFactory = TestDatabase.open(getName());
+		Session session = sessionFactory.openSession();
+		Transaction transaction = session.beginTransaction();
+		first = (String) session.save(new Product(null, "Android", "d", "m", "first", 150, 10));
+		second = (String) session.save(new Product(null, "Android", "d", "m", "second", 250, 10));
+		transaction.commit();
+		session.close();
+		inventoryDao = new InventoryDaoImpl();
+		inventoryDao.setSessionFactory(sessionFactory);
+		productDao = new ProductDaoImpl();
+		productDao.setSessionFactory(sessionFactory);
+	}
+
+	protected void tearDown() {
+		sessionFactory.close();
+	}
+
+	public void testCheckoutEvictsOnlyTheSoldProducts() {
+		productDao.getProductById(first);
+		productDao.getProductById(second);
+		assertTrue(sessionFactory.getCache().containsEntity(Product.class, second));
+
+		assertNull(inventoryDao.decrementStock(Collections.singletonMap(first, 3)));
+
+		assertFalse(sessionFactory.getCache().containsEntity(Product.class, first));
+		assertTrue(sessionFactory.getCache().containsEntity(Product.class, second));
+		assertEquals(7, productDao.getProductById(first).getUnitStock());
+	}
+
+	public void testCheckoutShortOfStockChangesNothing() {
+		Map<String, Integer> quantities = new HashMap<>();
+		quantities.put(first, 3);
+		quantities.put(second, 11);
+
+		assertEquals(second, inventoryDao.decrementStock(quantities));
+
+		assertEquals(10, inventoryDao.getStock(first));
+		assertEquals(10, inventoryDao.getStock(second));
+	}
+
+	public void testEditAddsItsChangeToUnitsSoldMeanwhile() {
+		Product form = editForm(first);
+		assertNull(inventoryDao.decrementStock(Collections.singletonMap(first, 3)));
+		form.setUnitStock(15);
+
+		productDao.editProduct(form);
+
+		assertEquals(12, inventoryDao.getStock(first));
+		assertEquals(12, form.getUnitStock());
+		assertEquals(12, productDao.getProductById(first).getUnitStock());
+	}
+
+	public void testEditLeavingStockAloneKeepsSales() {
+		Product form = editForm(first);
+		assertNull(inventoryDao.decrementStock(Collections.singletonMap(first, 4)));
+		form.setProductName("renamed");
+
+		productDao.editProduct(form);
+
+		Product edited = productDao.getProductById(first);
+		assertEquals("renamed", edited.getProductName());
+		assertEquals(6, edited.getUnitStock());
+	}
+
+	// The product as the edit form posts it back, with the stock it was loaded with
+	private Product editForm(String productId) {
+		Product product = productDao.getProductById(productId);
+		Product form = new Product(product.getProductId(), product.getProductCategory(),
+				product.getProductDescription(), product.getProductManufacturer(), product.getProductName(),
+				product.getProductPrice(), product.getUnitStock());
+		form.setLoadedStock(product.getUnitStock());
+		return form;
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.dao;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.criterion.Order;
+
+import com.model.Product;
+import com.model.ProductSort;
+import com.model.ProductSummary;
+
+/**
+ * Measures what a listing page allocates when it is read as ProductSummary
+ * projections rather than as Product entities, the way it was read before.
+ * Bytes come from the current thread's allocation counter, so the numbers
+ * hold on any JVM that exposes com.sun.management.ThreadMXBean. The
+ * streamed listing is checked against the listed one.
+ */
+public class ProductDaoImplTest extends TestCase {
+
+	private static final int PRODUCTS = 2000;
+	private static final int CALLS = 500;
+
+	private SessionFactory sessionFactory;
+	private ProductDaoImpl productDao;
+
+	protected void setUp() {
+		sessionFactory = TestDatabase.open(getName());
+		StringBuilder description = new StringBuilder();
+		while (description.length() < 250) {
+			description.append("long description ");
+		}
+		Session session = sessionFactory.openSession();
+		Transaction transaction = session.beginTransaction();
+		for (int i = 0; i < PRODUCTS; i++) {
+			Product product = new Product();
+			product.setProductName("name" + i);
+			product.setProductPrice(100 + i);
+			product.setProductCategory("Android");
+			product.setProductManufacturer("Maker");
+			product.setProductDescription(description.substring(0, 250));
+			product.setUnitStock(5);
+			session.save(product);
+			if (i % 50 == 0) {
+				session.flush();
+				session.clear();
+			}
+		}
+		transaction.commit();
+		session.close();
+		productDao = new ProductDaoImpl();
+		productDao.setSessionFactory(sessionFactory);
+	}
+
+	protected void tearDown() {
+		sessionFactory.close();
+	}
+
+	public void testSummaryPagesAllocateLessThanEntityPages() {
+		for (int pageSize : new int[] { 20, 100 }) {
+			final int limit = pageSize + 1;
+			Page entities = new Page() {
+				public List<?> read() {
+					Session session = sessionFactory.openSession();
+					try {
+						return session.createCriteria(Product.class)
+								.addOrder(Order.asc("productName"))
+								.addOrder(Order.asc("productId"))
+								.setMaxResults(limit)
+								.list();
+					} finally {
+						session.close();
+					}
+				}
+			};
+			Page summaries = new Page() {
+				public List<?> read() {
+					return productDao.getProductsPage(null, null, null, null, ProductSort.NAME, null, limit);
+				}
+			};
+			assertSamePage(entities.read(), summaries.read());
+
+			long entityBytes = bytesPerCall(entities);
+			long summaryBytes = bytesPerCall(summaries);
+			if (entityBytes > 0) {
+				assertTrue("summaries allocate " + summaryBytes + " B against " + entityBytes + " B",
+						summaryBytes < entityBytes);
+			}
+		}
+	}
+
+	public void testStreamedSummariesMatchTheList() throws Exception {
+		final List<ProductSummary> streamed = new ArrayList<>();
+		int count = productDao.streamAllProductSummaries(new ProductSummaryHandler() {
+			public void handle(ProductSummary summary) {
+				streamed.add(summary);
+			}
+		});
+
+		List<ProductSummary> listed = productDao.getAllProductSummaries();
+		assertEquals(PRODUCTS, count);
+		assertEquals(listed.size(), streamed.size());
+		for (int i = 0; i < listed.size(); i++) {
+			assertEquals(listed.get(i).getProductId(), streamed.get(i).getProductId());
+			assertEquals(listed.get(i).getProductPrice(), streamed.get(i).getProductPrice(), 1e-9);
+			assertEquals(listed.get(i).getUnitStock(), streamed.get(i).getUnitStock());
+		}
+	}
+
+	private interface Page {
+		List<?> read();
+	}
+
+	private static void assertSamePage(List<?> entities, List<?> summaries) {
+		assertEquals(entities.size(), summaries.size());
+		for (int i = 0; i < entities.size(); i++) {
+			Product product = (Product) entities.get(i);
+			ProductSummary summary = (ProductSummary) summaries.get(i);
+			assertEquals(product.getProductId(), summary.getProductId());
+			assertEquals(product.getProductName(), summary.getProductName());
+		}
+	}
+
+	// Average bytes one read allocates after warming up, 0 when the JVM cannot tell
+	private static long bytesPerCall(Page page) {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			return 0;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		for (int i = 0; i < CALLS; i++) {
+			page.read();
+		}
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < CALLS; i++) {
+			page.read();
+		}
+		return (threads.getThreadAllocatedBytes(thread) - before) / CALLS;
+	}
+
+}
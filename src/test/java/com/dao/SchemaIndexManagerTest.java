@@ -0,0 +1,177 @@
+package com.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.Work;
+
+import com.model.Product;
+import com.model.ProductPageToken;
+import com.model.ProductSort;
+import com.model.ProductSummary;
+
+/**
+ * Checks on in-memory H2 that the queries the DAOs actually send use the
+ * secondary indexes. The SQL is taken from H2's query statistics and run
+ * again under EXPLAIN.
+ */
+public class SchemaIndexManagerTest extends TestCase {
+
+	// H2 reports a full scan as "PUBLIC.<TABLE>.tableScan" in the plan
+	private static final String TABLE_SCAN = "tableScan";
+
+	private SessionFactory sessionFactory;
+	private ProductDaoImpl productDao;
+
+	protected void setUp() {
+		sessionFactory = TestDatabase.open(getName());
+		Session session = sessionFactory.openSession();
+		Transaction transaction = session.beginTransaction();
+		for (int i = 0; i < 500; i++) {
+			Product product = new Product();
+			product.setProductName("name" + i);
+			product.setProductPrice(100 + i % 50);
+			product.setProductCategory("category" + i % 20);
+			product.setUnitStock(5);
+			session.save(product);
+		}
+		transaction.commit();
+		session.close();
+		SchemaIndexManager schemaIndexManager = new SchemaIndexManager();
+		schemaIndexManager.setSessionFactory(sessionFactory);
+		schemaIndexManager.afterPropertiesSet();
+		productDao = new ProductDaoImpl();
+		productDao.setSessionFactory(sessionFactory);
+	}
+
+	protected void tearDown() {
+		sessionFactory.close();
+	}
+
+	public void testEveryDeclaredIndexServesItsQuery() {
+		SchemaIndexManager schemaIndexManager = new SchemaIndexManager();
+		schemaIndexManager.setSessionFactory(sessionFactory);
+		Map<String, String> plans = schemaIndexManager.verifyQueryPlans();
+
+		assertEquals(6, plans.size());
+		for (Map.Entry<String, String> plan : plans.entrySet()) {
+			assertNotNull(plan.getKey(), plan.getValue());
+			// H2 may serve cart lines by the index of the cartId foreign key instead
+			assertFalse(plan.getKey() + " scans: " + plan.getValue(), plan.getValue().contains(TABLE_SCAN));
+		}
+	}
+
+	public void testCategorySearchUsesTheCategoryIndex() {
+		List<String> plans = plansOf(new Runnable() {
+			public void run() {
+				assertEquals(25, productDao.searchProductsByCategory("category3").size());
+			}
+		});
+
+		assertEquals(1, plans.size());
+		assertUsesIndex("idx_item_category", plans.get(0));
+	}
+
+	public void testPricePagesUseThePriceIndex() {
+		final List<ProductSummary> firstPage = new ArrayList<>();
+		List<String> plans = plansOf(new Runnable() {
+			public void run() {
+				firstPage.addAll(productDao.getProductsPage(null, null, null, null, ProductSort.PRICE, null, 21));
+				ProductPageToken after = ProductPageToken.after(ProductSort.PRICE, firstPage.get(20));
+				assertEquals(21, productDao.getProductsPage(null, null, null, null, ProductSort.PRICE, after, 21).size());
+				// 20 of the 25 products of category3 cost 110 or more
+				assertEquals(20, productDao.getProductsPage(null, "category3", 110.0, null, ProductSort.PRICE, null, 21)
+						.size());
+			}
+		});
+
+		assertEquals(3, plans.size());
+		assertUsesIndex("idx_item_price", plans.get(0));
+		assertUsesIndex("idx_item_price", plans.get(1));
+		// a category filter may pick either index, but never a scan
+		assertFalse(plans.get(2), plans.get(2).contains(TABLE_SCAN));
+	}
+
+	private static void assertUsesIndex(String index, String plan) {
+		assertTrue(index + " not used: " + plan, plan.toUpperCase().contains(index.toUpperCase()));
+		assertFalse(plan, plan.contains(TABLE_SCAN));
+	}
+
+	// The plans of the item queries the task sends, in order
+	private List<String> plansOf(Runnable task) {
+		final List<String> statements = new ArrayList<>();
+		execute("SET QUERY_STATISTICS TRUE", null);
+		try {
+			task.run();
+			execute("SELECT SQL_STATEMENT FROM INFORMATION_SCHEMA.QUERY_STATISTICS", statements);
+		} finally {
+			execute("SET QUERY_STATISTICS FALSE", null);
+		}
+		final List<String> plans = new ArrayList<>();
+		Session session = sessionFactory.openSession();
+		try {
+			session.doWork(new Work() {
+				public void execute(Connection connection) throws SQLException {
+					for (String sql : statements) {
+						if (!sql.toLowerCase().startsWith("select") || !sql.toLowerCase().contains(" from item ")) {
+							continue;
+						}
+						PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql);
+						try {
+							// the plan does not depend on the values, only on the shape of the query
+							for (int i = 1; i <= explain.getParameterMetaData().getParameterCount(); i++) {
+								explain.setString(i, "1");
+							}
+							ResultSet resultSet = explain.executeQuery();
+							resultSet.next();
+							plans.add(resultSet.getString(1));
+						} finally {
+							explain.close();
+						}
+					}
+				}
+			});
+		} finally {
+			session.close();
+		}
+		return plans;
+	}
+
+	// Runs the SQL, adding the first column of each row it returns to rows when given
+	private void execute(final String sql, final List<String> rows) {
+		Session session = sessionFactory.openSession();
+		try {
+			session.doWork(new Work() {
+				public void execute(Connection connection) throws SQLException {
+					Statement statement = connection.createStatement();
+					try {
+						if (rows == null) {
+							statement.execute(sql);
+							return;
+						}
+						ResultSet resultSet = statement.executeQuery(sql);
+						while (resultSet.next()) {
+							rows.add(resultSet.getString(1));
+						}
+					} finally {
+						statement.close();
+					}
+				}
+			});
+		} finally {
+			session.close();
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.dao;
+
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+
+import com.model.Authorities;
+import com.model.BillingAddress;
+import com.model.Cart;
+import com.model.CartItem;
+import com.model.Customer;
+import com.model.CustomerOrder;
+import com.model.Product;
+import com.model.Queries;
+import com.model.ShippingAddress;
+import com.model.User;
+
+/**
+ * Session factories over an in-memory H2 database, mapped and cached the
+ * way applicationContext.xml sets up the application's one. Each name is a
+ * separate database that lives until the factory is closed.
+ */
+public final class TestDatabase {
+
+	private TestDatabase() {
+	}
+
+	public static SessionFactory open(String name) {
+		Configuration configuration = new Configuration()
+				.setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+				.setProperty("hibernate.connection.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1")
+				.setProperty("hibernate.connection.username", "sa")
+				.setProperty("hibernate.connection.pool_size", "32")
+				.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+				.setProperty("hibernate.hbm2ddl.auto", "update")
+				.setProperty("hibernate.jdbc.batch_size", "50")
+				.setProperty("hibernate.cache.use_second_level_cache", "true")
+				.setProperty("hibernate.cache.use_query_cache", "true")
+				.setProperty("hibernate.cache.region.factory_class",
+						"org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory")
+				.setProperty("net.sf.ehcache.configurationResourceName", "/ehcache.xml")
+				.setProperty("hibernate.generate_statistics", "true")
+				// bean validation needs the EL implementation the servlet container provides
+				.setProperty("javax.persistence.validation.mode", "none");
+		for (Class<?> entity : new Class<?>[] { Product.class, Authorities.class, BillingAddress.class, Cart.class,
+				CartItem.class, Customer.class, CustomerOrder.class, ShippingAddress.class, User.class,
+				Queries.class }) {
+			configuration.addAnnotatedClass(entity);
+		}
+		return configuration.buildSessionFactory();
+	}
+
+	// Runs the statements in one transaction
+	public static void execute(SessionFactory sessionFactory, String... statements) {
+		Session session = sessionFactory.openSession();
+		try {
+			Transaction transaction = session.beginTransaction();
+			for (String statement : statements) {
+				session.createSQLQuery(statement).executeUpdate();
+			}
+			transaction.commit();
+		} finally {
+			session.close();
+		}
+	}
+
+	public static List<?> query(SessionFactory sessionFactory, String sql) {
+		Session session = sessionFactory.openSession();
+		try {
+			return session.createSQLQuery(sql).list();
+		} finally {
+			session.close();
+		}
+	}
+
+	public static int count(SessionFactory sessionFactory, String sql) {
+		return ((Number) query(sessionFactory, sql).get(0)).intValue();
+	}
+
+}
@@ -0,0 +1,260 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.hibernate.SessionFactory;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import com.dao.CartDaoImpl;
+import com.dao.CartItemDaoImpl;
+import com.dao.SchemaIndexManager;
+import com.dao.TestDatabase;
+import com.model.Cart;
+import com.model.CartItem;
+import com.model.Product;
+
+/**
+ * Races cart line writes against each other on an in-memory H2 database and
+ * checks that no unit is lost or counted twice, and that the carts' running
+ * totals keep matching their lines.
+ */
+public class CartItemServiceImplTest extends TestCase {
+
+	private static final String[] CARTS = { "c1", "c2", "c3" };
+
+	private SessionFactory sessionFactory;
+	private CartItemServiceImpl cartItemService;
+	private Product[] products;
+
+	protected void setUp() {
+		sessionFactory = TestDatabase.open(getName());
+		TestDatabase.execute(sessionFactory,
+				"insert into item(Id, name, category, price, stock) values"
+						+ " ('p1', 'a', 'c', 100, 1000), ('p2', 'b', 'c', 200, 1000), ('p3', 'c', 'c', 300, 1000)",
+				"insert into cart(cartId, totalPrice, itemCount, version) values"
+						+ " ('c1', 0, 0, 0), ('c2', 0, 0, 0), ('c3', 0, 0, 0)");
+		SchemaIndexManager schemaIndexManager = new SchemaIndexManager();
+		schemaIndexManager.setSessionFactory(sessionFactory);
+		schemaIndexManager.afterPropertiesSet();
+		CartItemDaoImpl cartItemDao = new CartItemDaoImpl();
+		cartItemDao.setSessionFactory(sessionFactory);
+		cartItemService = new CartItemServiceImpl();
+		cartItemService.setCartItemDao(cartItemDao);
+		// never afterPropertiesSet, so the store stays inactive and writes go to the database
+		cartItemService.setWriteBehindCartStore(new WriteBehindCartStore());
+		products = new Product[3];
+		for (int i = 0; i < products.length; i++) {
+			products[i] = new Product();
+			products[i].setProductId("p" + (i + 1));
+			products[i].setProductPrice(100 * (i + 1));
+		}
+	}
+
+	protected void tearDown() {
+		sessionFactory.close();
+	}
+
+	public void testConcurrentIncrementsKeepEveryUnit() throws Exception {
+		final Map<String, AtomicInteger> added = new HashMap<>();
+		for (String cartId : CARTS) {
+			for (Product product : products) {
+				added.put(cartId + "/" + product.getProductId(), new AtomicInteger());
+			}
+		}
+		runConcurrently(16, new Task() {
+			public void run(int thread) {
+				Random random = new Random(thread);
+				for (int i = 0; i < 50; i++) {
+					String cartId = CARTS[random.nextInt(CARTS.length)];
+					Product product = products[random.nextInt(products.length)];
+					cartItemService.incrementQuantity(cartId, product, 1);
+					added.get(cartId + "/" + product.getProductId()).incrementAndGet();
+				}
+			}
+		});
+
+		List<?> lines = TestDatabase.query(sessionFactory, "select cartId, productId, count(*), sum(quality), sum(price)"
+				+ " from cartitem group by cartId, productId");
+		int units = 0;
+		for (Object row : lines) {
+			Object[] line = (Object[]) row;
+			String key = line[0] + "/" + line[1];
+			int quantity = ((Number) line[3]).intValue();
+			assertEquals(key + " rows", 1, ((Number) line[2]).intValue());
+			assertEquals(key + " quantity", added.get(key).get(), quantity);
+			assertEquals(key + " price", quantity * unitPrice((String) line[1]), ((Number) line[4]).doubleValue(), 1e-6);
+			units += quantity;
+		}
+		assertEquals(16 * 50, units);
+	}
+
+	public void testRemovesRacingIncrementsLoseNoUnit() throws Exception {
+		cartItemService.incrementQuantity("c1", products[2], 5);
+		final AtomicInteger added = new AtomicInteger(5);
+		final AtomicInteger removed = new AtomicInteger();
+		runConcurrently(4, new Task() {
+			public void run(int thread) {
+				for (int i = 0; i < 40; i++) {
+					if (thread == 0 && i % 10 == 5) {
+						for (Object cartItemId : TestDatabase.query(sessionFactory,
+								"select cartItemId from cartitem where cartId = 'c1' and productId = 'p3'")) {
+							try {
+								CartItem cartItem = cartItemService.removeCartItem((String) cartItemId);
+								if (cartItem != null) {
+									removed.addAndGet(cartItem.getQuality());
+								}
+							} catch (ConcurrencyFailureException e) {
+								// gave up after its retries, and removed nothing
+							}
+						}
+					} else {
+						cartItemService.incrementQuantity("c1", products[2], 1);
+						added.incrementAndGet();
+					}
+				}
+			}
+		});
+
+		int remaining = TestDatabase.count(sessionFactory,
+				"select coalesce(sum(quality), 0) from cartitem where cartId = 'c1' and productId = 'p3'");
+		assertTrue("nothing was removed", removed.get() > 0);
+		assertEquals(added.get(), removed.get() + remaining);
+	}
+
+	public void testCartTotalsFollowConcurrentLineWrites() throws Exception {
+		runConcurrently(12, new Task() {
+			public void run(int thread) {
+				Random random = new Random(thread);
+				for (int i = 0; i < 40; i++) {
+					String cartId = CARTS[random.nextInt(CARTS.length)];
+					if (thread == 0 && i % 8 == 7) {
+						for (Object cartItemId : TestDatabase.query(sessionFactory,
+								"select cartItemId from cartitem where cartId = '" + cartId + "'")) {
+							try {
+								cartItemService.removeCartItem((String) cartItemId);
+							} catch (ConcurrencyFailureException e) {
+								// gave up after its retries, and removed nothing
+							}
+						}
+					} else {
+						cartItemService.incrementQuantity(cartId, products[random.nextInt(products.length)],
+								1 + random.nextInt(3));
+					}
+				}
+			}
+		});
+
+		assertTotalsMatchLines();
+	}
+
+	public void testCheckoutValidationRepairsDriftedTotals() throws Exception {
+		cartItemService.incrementQuantity("c1", products[0], 2);
+		cartItemService.incrementQuantity("c1", products[1], 1);
+		TestDatabase.execute(sessionFactory, "update cart set totalPrice = 1, itemCount = 1 where cartId = 'c1'");
+		CartDaoImpl cartDao = new CartDaoImpl();
+		cartDao.setSessionFactory(sessionFactory);
+
+		Cart cart = cartDao.validate("c1");
+
+		assertEquals(400, cart.getTotalPrice(), 1e-6);
+		assertEquals(3, cart.getItemCount());
+		assertEquals(400, cartDao.getGrandTotal("c1"), 1e-6);
+		assertTotalsMatchLines();
+	}
+
+	public void testClearTakesTheSameStatementsWhateverTheCartSize() {
+		cartItemService.incrementQuantity("c1", products[0], 1);
+		for (Product product : products) {
+			cartItemService.incrementQuantity("c2", product, 2);
+		}
+
+		long oneLine = statementsToClear("c1", 1);
+		long threeLines = statementsToClear("c2", 3);
+
+		assertTrue(oneLine > 0);
+		assertEquals(oneLine, threeLines);
+		assertEquals(0, TestDatabase.count(sessionFactory, "select count(*) from cartitem where cartId in ('c1', 'c2')"));
+		assertTotalsMatchLines();
+	}
+
+	public void testClearsRacingIncrementsKeepTotals() throws Exception {
+		final AtomicInteger cleared = new AtomicInteger();
+		runConcurrently(6, new Task() {
+			public void run(int thread) {
+				for (int i = 0; i < 40; i++) {
+					if (thread == 0 && i % 8 == 3) {
+						cleared.addAndGet(cartItemService.removeAllCartItems("c2"));
+					} else {
+						cartItemService.incrementQuantity("c2", products[i % products.length], 1);
+					}
+				}
+			}
+		});
+
+		assertTrue("nothing was cleared", cleared.get() > 0);
+		assertTotalsMatchLines();
+	}
+
+	private long statementsToClear(String cartId, int lines) {
+		sessionFactory.getStatistics().clear();
+		assertEquals(lines, cartItemService.removeAllCartItems(cartId));
+		return sessionFactory.getStatistics().getPrepareStatementCount();
+	}
+
+	// Each cart's running totals must equal the sums over its lines
+	private void assertTotalsMatchLines() {
+		for (Object row : TestDatabase.query(sessionFactory, "select c.cartId, c.totalPrice, c.itemCount,"
+				+ " (select coalesce(sum(i.price), 0) from cartitem i where i.cartId = c.cartId),"
+				+ " (select coalesce(sum(i.quality), 0) from cartitem i where i.cartId = c.cartId) from cart c")) {
+			Object[] cart = (Object[]) row;
+			assertEquals(cart[0] + " total", ((Number) cart[3]).doubleValue(), ((Number) cart[1]).doubleValue(), 1e-6);
+			assertEquals(cart[0] + " item count", ((Number) cart[4]).intValue(), ((Number) cart[2]).intValue());
+		}
+	}
+
+	private static double unitPrice(String productId) {
+		return 100 * Integer.parseInt(productId.substring(1));
+	}
+
+	private interface Task {
+		void run(int thread);
+	}
+
+	// Starts the threads together and rethrows the first failure of any of them
+	private static void runConcurrently(int threads, final Task task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Void>> futures = new ArrayList<>();
+		try {
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						start.await();
+						task.run(thread);
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
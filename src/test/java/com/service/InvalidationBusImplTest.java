@@ -0,0 +1,176 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import com.dao.ChangeLogDaoImpl;
+import com.dao.TestDatabase;
+import com.model.InvalidationEvent;
+
+/**
+ * Runs bus nodes with session factories of their own against one shared
+ * in-memory H2 change log. Nodes are polled by hand; their own pollers are
+ * pushed an hour out.
+ */
+public class InvalidationBusImplTest extends TestCase {
+
+	private final List<SessionFactory> sessionFactories = new ArrayList<>();
+	private final List<InvalidationBusImpl> nodes = new ArrayList<>();
+
+	protected void tearDown() {
+		for (InvalidationBusImpl node : nodes) {
+			node.destroy();
+		}
+		for (SessionFactory sessionFactory : sessionFactories) {
+			sessionFactory.close();
+		}
+	}
+
+	public void testEventsReachOnlyTheOtherNode() {
+		InvalidationBusImpl a = startNode();
+		InvalidationBusImpl b = startNode();
+		List<String> seenByA = listen(a, InvalidationEvent.PRODUCT);
+		List<String> seenByB = listen(b, InvalidationEvent.PRODUCT);
+		List<String> stockSeenByB = listen(b, InvalidationEvent.STOCK);
+
+		a.publish(InvalidationEvent.PRODUCT, "p1");
+		a.publish(InvalidationEvent.STOCK, "p2");
+
+		assertEquals(0, a.poll());
+		assertEquals(2, b.poll());
+		assertEquals(0, b.poll());
+		assertEquals(Collections.emptyList(), seenByA);
+		assertEquals(Collections.singletonList("p1"), seenByB);
+		assertEquals(Collections.singletonList("p2"), stockSeenByB);
+		assertEquals(a.getAppliedVersion(), b.getAppliedVersion());
+	}
+
+	public void testNodeSkipsEventsFromBeforeItStarted() {
+		InvalidationBusImpl a = startNode();
+		a.publish(InvalidationEvent.PRODUCT, "before");
+		InvalidationBusImpl b = startNode();
+		List<String> seenByB = listen(b, InvalidationEvent.PRODUCT);
+
+		a.publish(InvalidationEvent.PRODUCT, "after");
+
+		assertEquals(1, b.poll());
+		assertEquals(Collections.singletonList("after"), seenByB);
+	}
+
+	public void testEventCommittedLateIsStillApplied() {
+		InvalidationBusImpl a = startNode();
+		InvalidationBusImpl b = startNode();
+		List<String> seenByB = listen(b, InvalidationEvent.PRODUCT);
+		Session slowWriter = sessionFactories.get(0).openSession();
+		try {
+			Transaction transaction = slowWriter.beginTransaction();
+			slowWriter.createSQLQuery("INSERT INTO cache_change_log (region, entity_key, origin)"
+					+ " VALUES ('product', 'late', 'elsewhere')").executeUpdate();
+			for (int i = 0; i < 200; i++) {
+				a.publish(InvalidationEvent.PRODUCT, "p" + i);
+			}
+			assertEquals(200, b.poll());
+
+			transaction.commit();
+		} finally {
+			slowWriter.close();
+		}
+
+		assertEquals(1, b.poll());
+		assertEquals("late", seenByB.get(seenByB.size() - 1));
+		assertEquals(0, b.poll());
+	}
+
+	public void testConcurrentPublishersAreEachAppliedOnce() throws Exception {
+		final InvalidationBusImpl a = startNode();
+		final InvalidationBusImpl b = startNode();
+		final InvalidationBusImpl reader = startNode();
+		final List<String> seen = listen(reader, InvalidationEvent.PRODUCT);
+		final int threads = 8;
+		final int events = 100;
+		ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch published = new CountDownLatch(threads);
+		List<Future<Void>> futures = new ArrayList<>();
+		try {
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						start.await();
+						InvalidationBusImpl node = thread % 2 == 0 ? a : b;
+						for (int i = 0; i < events; i++) {
+							node.publish(InvalidationEvent.PRODUCT, thread + "-" + i);
+						}
+						published.countDown();
+						return null;
+					}
+				}));
+			}
+			// polls while the events are still being written
+			futures.add(executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					start.await();
+					while (published.getCount() > 0) {
+						reader.poll();
+					}
+					return null;
+				}
+			}));
+			start.countDown();
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		reader.poll();
+
+		assertEquals(threads * events, seen.size());
+		assertEquals(threads * events, new HashSet<String>(seen).size());
+	}
+
+	private InvalidationBusImpl startNode() {
+		SessionFactory sessionFactory = TestDatabase.open(getName());
+		sessionFactories.add(sessionFactory);
+		ChangeLogDaoImpl changeLogDao = new ChangeLogDaoImpl();
+		changeLogDao.setSessionFactory(sessionFactory);
+		changeLogDao.afterPropertiesSet();
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.getPropertySources().addFirst(new MapPropertySource("test",
+				Collections.<String, Object> singletonMap("invalidation.poll.millis", "3600000")));
+		InvalidationBusImpl node = new InvalidationBusImpl();
+		node.setChangeLogDao(changeLogDao);
+		node.setEnvironment(environment);
+		node.afterPropertiesSet();
+		nodes.add(node);
+		return node;
+	}
+
+	// The keys of the region's events the node applies, in order
+	private static List<String> listen(InvalidationBusImpl node, String region) {
+		final List<String> keys = Collections.synchronizedList(new ArrayList<String>());
+		node.subscribe(region, new InvalidationListener() {
+			public void invalidate(InvalidationEvent event) {
+				keys.add(event.getKey());
+			}
+		});
+		return keys;
+	}
+
+}
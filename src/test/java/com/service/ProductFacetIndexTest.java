@@ -0,0 +1,197 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import com.model.FacetCount;
+import com.model.Product;
+import com.model.ProductFacets;
+
+/**
+ * Compares the bitmap facet counts with counts taken product by product over
+ * a random catalog, before and after it is edited, for searches with and
+ * without text matches, category and price filters.
+ */
+public class ProductFacetIndexTest extends TestCase {
+
+	private static final String[] CATEGORIES = { "Android", "Apple", "Accessories" };
+	private static final String[] MANUFACTURERS = { "Samsung", "Apple", "Nokia", "Sony", "" };
+	private static final double[] BUCKETS = { 0, 500, 1000, 5000, 10000, 25000, 50000 };
+
+	private ProductDocTable productDocTable;
+	private ProductPriceIndex productPriceIndex;
+	private ProductFacetIndex productFacetIndex;
+	private Random random;
+	private List<Product> products;
+
+	protected void setUp() {
+		productDocTable = new ProductDocTable();
+		productPriceIndex = new ProductPriceIndex();
+		productPriceIndex.setProductDocTable(productDocTable);
+		productFacetIndex = new ProductFacetIndex();
+		productFacetIndex.setProductDocTable(productDocTable);
+		productFacetIndex.setProductPriceIndex(productPriceIndex);
+
+		random = new Random(5);
+		products = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			products.add(randomProduct("p" + i));
+		}
+		productDocTable.catalogLoaded(products);
+		productPriceIndex.catalogLoaded(products);
+		productFacetIndex.catalogLoaded(products);
+	}
+
+	public void testCountsOfLoadedCatalog() {
+		checkFacets();
+	}
+
+	public void testCountsAfterEditsAndRemovals() {
+		for (int i = 0; i < 200; i++) {
+			Product product = products.get(random.nextInt(products.size()));
+			Product edited = randomProduct(product.getProductId());
+			products.set(products.indexOf(product), edited);
+			save(edited);
+		}
+		for (int i = 0; i < 100; i++) {
+			String productId = products.remove(random.nextInt(products.size())).getProductId();
+			productDocTable.productRemoved(productId);
+			productPriceIndex.productRemoved(productId);
+			productFacetIndex.productRemoved(productId);
+		}
+		for (int i = 0; i < 50; i++) {
+			Product product = randomProduct("n" + i);
+			products.add(product);
+			save(product);
+		}
+		checkFacets();
+	}
+
+	private void checkFacets() {
+		List<String> matches = new ArrayList<>();
+		for (Product product : products) {
+			if (random.nextInt(3) == 0) {
+				matches.add(product.getProductId());
+			}
+		}
+		// a match of a product that has since been removed is ignored
+		matches.add("gone");
+
+		for (List<String> match : Arrays.asList(null, matches)) {
+			for (String category : new String[] { null, "All", "Apple", "Unknown" }) {
+				for (Double[] range : new Double[][] { { null, null }, { 0.0, 0.0 }, { 800.0, 12000.0 },
+						{ null, 4999.99 }, { 30000.0, null } }) {
+					String filters = (match == null ? "all" : "matches") + " " + category + " " + range[0] + "-"
+							+ range[1];
+					ProductFacets facets = productFacetIndex.facets(bitmapOf(match), category, range[0], range[1]);
+					ProductFacets expected = scan(match, category, range[0], range[1]);
+					assertEquals(filters, expected.getTotalCount(), facets.getTotalCount());
+					assertEquals(filters, countsOf(expected.getCategories()), countsOf(facets.getCategories()));
+					assertEquals(filters, countsOf(expected.getManufacturers()), countsOf(facets.getManufacturers()));
+					assertEquals(filters, countsOf(expected.getPriceRanges()), countsOf(facets.getPriceRanges()));
+				}
+			}
+		}
+	}
+
+	// the counts one product at a time; category counts ignore the category
+	// filter and price counts the price filter
+	private ProductFacets scan(List<String> match, String category, Double minPrice, Double maxPrice) {
+		Map<String, Integer> categories = new TreeMap<>();
+		Map<String, Integer> manufacturers = new TreeMap<>();
+		Map<String, Integer> priceRanges = new TreeMap<>();
+		int total = 0;
+		for (Product product : products) {
+			if (match != null && !match.contains(product.getProductId())) {
+				continue;
+			}
+			boolean inCategory = category == null || category.equals("All")
+					|| category.equals(product.getProductCategory());
+			double price = product.getProductPrice();
+			boolean inPriceRange = (minPrice == null || minPrice <= 0 || price >= minPrice)
+					&& (maxPrice == null || maxPrice <= 0 || price <= maxPrice);
+			if (inPriceRange) {
+				increment(categories, product.getProductCategory());
+			}
+			if (inCategory) {
+				int bucket = BUCKETS.length - 1;
+				while (price < BUCKETS[bucket]) {
+					bucket--;
+				}
+				increment(priceRanges, String.valueOf(BUCKETS[bucket]));
+			}
+			if (inCategory && inPriceRange) {
+				total++;
+				if (!product.getProductManufacturer().isEmpty()) {
+					increment(manufacturers, product.getProductManufacturer());
+				}
+			}
+		}
+		return new ProductFacets(total, toCounts(categories), toCounts(manufacturers), toCounts(priceRanges));
+	}
+
+	// price ranges are keyed by their lower bound, the others by their value
+	private static Map<String, Integer> countsOf(List<FacetCount> facetCounts) {
+		Map<String, Integer> counts = new TreeMap<>();
+		for (FacetCount facetCount : facetCounts) {
+			String key = facetCount.getMinPrice() != null ? String.valueOf(facetCount.getMinPrice())
+					: facetCount.getValue();
+			assertNull(key, counts.put(key, facetCount.getCount()));
+		}
+		return counts;
+	}
+
+	private static List<FacetCount> toCounts(Map<String, Integer> counts) {
+		List<FacetCount> facetCounts = new ArrayList<>();
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			facetCounts.add(new FacetCount(entry.getKey(), entry.getValue()));
+		}
+		return facetCounts;
+	}
+
+	private static void increment(Map<String, Integer> counts, String key) {
+		Integer count = counts.get(key);
+		counts.put(key, count == null ? 1 : count + 1);
+	}
+
+	private RoaringBitmap bitmapOf(List<String> productIds) {
+		if (productIds == null) {
+			return null;
+		}
+		RoaringBitmap bitmap = new RoaringBitmap();
+		for (String productId : productIds) {
+			int doc = productDocTable.docId(productId);
+			if (doc >= 0) {
+				bitmap.add(doc);
+			}
+		}
+		return bitmap;
+	}
+
+	private void save(Product product) {
+		productDocTable.productSaved(product);
+		productPriceIndex.productSaved(product);
+		productFacetIndex.productSaved(product);
+	}
+
+	private Product randomProduct(String productId) {
+		Product product = new Product();
+		product.setProductId(productId);
+		product.setProductName("Product " + productId);
+		product.setProductCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+		product.setProductManufacturer(MANUFACTURERS[random.nextInt(MANUFACTURERS.length)]);
+		// whole bucket bounds are included, they start the upper bucket
+		product.setProductPrice(random.nextInt(4) == 0 ? BUCKETS[random.nextInt(BUCKETS.length)]
+				: random.nextInt(6000000) / 100.0);
+		return product;
+	}
+
+}
@@ -0,0 +1,224 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import com.model.Product;
+
+/**
+ * Checks price ranges and cheapest products of the sorted price index, and
+ * both ways a text search filters its matches by price, against a linear
+ * scan of a random catalog that is edited after the load.
+ */
+public class ProductPriceIndexTest extends TestCase {
+
+	private static final String[] WORDS = { "galaxy", "phone", "tab", "case" };
+	private static final String[] CATEGORIES = { "Android", "Apple", "Other" };
+	private static final Double[][] RANGES = { { null, null }, { 0.0, 0.0 }, { 500.0, 510.0 }, { 100.0, 900.0 },
+			{ null, 300.0 }, { 950.0, null }, { 700.0, 600.0 } };
+
+	private ProductDocTable productDocTable;
+	private ProductPriceIndex productPriceIndex;
+	private ProductSearchIndex productSearchIndex;
+	private List<Product> products;
+
+	protected void setUp() {
+		productDocTable = new ProductDocTable();
+		productPriceIndex = new ProductPriceIndex();
+		productPriceIndex.setProductDocTable(productDocTable);
+		productSearchIndex = new ProductSearchIndex();
+		productSearchIndex.setProductDocTable(productDocTable);
+		productSearchIndex.setProductPriceIndex(productPriceIndex);
+
+		Random random = new Random(7);
+		products = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			products.add(randomProduct("p" + i, random));
+		}
+		productDocTable.catalogLoaded(products);
+		productPriceIndex.catalogLoaded(products);
+		productSearchIndex.catalogLoaded(products);
+		for (int i = 0; i < 200; i++) {
+			Product product = products.get(random.nextInt(products.size()));
+			product.setProductPrice(100 + random.nextInt(900));
+			save(product);
+		}
+		for (int i = 0; i < 100; i++) {
+			String productId = products.remove(random.nextInt(products.size())).getProductId();
+			productDocTable.productRemoved(productId);
+			productPriceIndex.productRemoved(productId);
+			productSearchIndex.productRemoved(productId);
+		}
+		for (int i = 0; i < 50; i++) {
+			Product product = randomProduct("n" + i, random);
+			products.add(product);
+			save(product);
+		}
+	}
+
+	public void testRangesMatchScan() {
+		assertEquals(products.size(), productPriceIndex.size());
+		for (Double[] range : RANGES) {
+			String bounds = range[0] + "-" + range[1];
+			int[] docs = productPriceIndex.docsInRange(range[0], range[1]);
+			assertEquals(bounds, scan(null, range[0], range[1]), productIdsOf(docs));
+			assertAscendingPrices(bounds, docs);
+			assertEquals(bounds, docs.length, productPriceIndex.countInRange(range[0], range[1]));
+			assertEquals(bounds, docs.length, productPriceIndex.rangeBitmap(range[0], range[1]).getCardinality());
+			for (String category : new String[] { null, "All", "Apple", "Unknown" }) {
+				int[] inCategory = productPriceIndex.docsInRange(range[0], range[1], category);
+				assertEquals(bounds + " " + category, scan(category, range[0], range[1]), productIdsOf(inCategory));
+				assertAscendingPrices(bounds, inCategory);
+			}
+			for (Product product : products) {
+				int doc = productDocTable.docId(product.getProductId());
+				assertEquals(inRange(product, range[0], range[1]), productPriceIndex.inRange(doc, range[0], range[1]));
+			}
+		}
+		// a removed product is in no range
+		assertFalse(productPriceIndex.inRange(productDocTable.docId("gone"), null, null));
+	}
+
+	public void testSearchFiltersPriceBothWays() {
+		boolean walkedRange = false;
+		boolean checkedHits = false;
+		for (String query : new String[] { "galaxy", "gal ph", "case" }) {
+			int matches = productSearchIndex.search(query, null, null, null).size();
+			for (String category : new String[] { null, "All", "Android" }) {
+				for (Double[] range : RANGES) {
+					TreeSet<String> found = new TreeSet<>();
+					for (ProductSearchHit hit : productSearchIndex.search(query, category, range[0], range[1])) {
+						found.add(hit.getProductId());
+					}
+					TreeSet<String> expected = new TreeSet<>();
+					for (Product product : products) {
+						if (matches(query, product) && inCategory(product, category)
+								&& inRange(product, range[0], range[1])) {
+							expected.add(product.getProductId());
+						}
+					}
+					assertEquals(query + " " + category + " " + range[0] + "-" + range[1], expected, found);
+					boolean filtered = (range[0] != null && range[0] > 0) || (range[1] != null && range[1] > 0);
+					if (filtered && productPriceIndex.countInRange(range[0], range[1]) < matches) {
+						walkedRange = true;
+					} else if (filtered) {
+						checkedHits = true;
+					}
+				}
+			}
+		}
+		assertTrue(walkedRange);
+		assertTrue(checkedHits);
+	}
+
+	public void testCheapestInCategory() {
+		for (String category : new String[] { null, "", "All", "Apple", "Unknown" }) {
+			List<String> expected = scan(category, null, null);
+			if (expected.size() > 5) {
+				expected = expected.subList(0, 5);
+			}
+			int[] docs = productPriceIndex.cheapestInCategory(category, 5);
+			assertEquals(String.valueOf(category), expected, productIdsOf(docs));
+			assertAscendingPrices(category, docs);
+		}
+		assertEquals(0, productPriceIndex.cheapestInCategory("All", 0).length);
+	}
+
+	// products of the category within the bounds by price, then doc id
+	private List<String> scan(String category, Double minPrice, Double maxPrice) {
+		List<Product> found = new ArrayList<>();
+		for (Product product : products) {
+			if (inCategory(product, category) && inRange(product, minPrice, maxPrice)) {
+				found.add(product);
+			}
+		}
+		Collections.sort(found, new Comparator<Product>() {
+			public int compare(Product first, Product second) {
+				int result = Double.compare(first.getProductPrice(), second.getProductPrice());
+				return result != 0 ? result
+						: Integer.compare(productDocTable.docId(first.getProductId()),
+								productDocTable.docId(second.getProductId()));
+			}
+		});
+		List<String> productIds = new ArrayList<>(found.size());
+		for (Product product : found) {
+			productIds.add(product.getProductId());
+		}
+		return productIds;
+	}
+
+	private static boolean inCategory(Product product, String category) {
+		return category == null || category.isEmpty() || category.equals("All")
+				|| category.equals(product.getProductCategory());
+	}
+
+	// a bound that is null or not positive is open
+	private static boolean inRange(Product product, Double minPrice, Double maxPrice) {
+		double price = product.getProductPrice();
+		return (minPrice == null || minPrice <= 0 || price >= minPrice)
+				&& (maxPrice == null || maxPrice <= 0 || price <= maxPrice);
+	}
+
+	private static boolean matches(String query, Product product) {
+		List<String> words = ProductSearchIndex.tokenize(product.getProductName());
+		for (String token : ProductSearchIndex.tokenize(query)) {
+			boolean found = false;
+			for (String word : words) {
+				found |= word.startsWith(token);
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private List<String> productIdsOf(int[] docs) {
+		List<String> productIds = new ArrayList<>(docs.length);
+		for (int doc : docs) {
+			productIds.add(productDocTable.productId(doc));
+		}
+		return productIds;
+	}
+
+	private void assertAscendingPrices(String message, int[] docs) {
+		double last = Double.NEGATIVE_INFINITY;
+		for (int doc : docs) {
+			double price = priceOf(productDocTable.productId(doc));
+			assertTrue(message, price >= last);
+			last = price;
+		}
+	}
+
+	private double priceOf(String productId) {
+		for (Product product : products) {
+			if (product.getProductId().equals(productId)) {
+				return product.getProductPrice();
+			}
+		}
+		throw new AssertionError(productId + " is not in the catalog");
+	}
+
+	private void save(Product product) {
+		productDocTable.productSaved(product);
+		productPriceIndex.productSaved(product);
+		productSearchIndex.productSaved(product);
+	}
+
+	private static Product randomProduct(String productId, Random random) {
+		Product product = new Product();
+		product.setProductId(productId);
+		product.setProductName(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]);
+		product.setProductCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+		product.setProductPrice(100 + random.nextInt(900));
+		return product;
+	}
+
+}
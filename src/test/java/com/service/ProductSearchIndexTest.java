@@ -0,0 +1,173 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.model.Product;
+
+/**
+ * Checks text queries of the inverted index: every token has to match, a
+ * token matches the terms it starts, and hits come back by field weight.
+ * The catalog is also edited after the load and queried against a scan of
+ * the products.
+ */
+public class ProductSearchIndexTest extends TestCase {
+
+	private static final String[] WORDS = { "galaxy", "phone", "tab", "tablet", "samsung", "apple", "case" };
+
+	private ProductDocTable productDocTable;
+	private ProductPriceIndex productPriceIndex;
+	private ProductSearchIndex productSearchIndex;
+
+	protected void setUp() {
+		productDocTable = new ProductDocTable();
+		productPriceIndex = new ProductPriceIndex();
+		productPriceIndex.setProductDocTable(productDocTable);
+		productSearchIndex = new ProductSearchIndex();
+		productSearchIndex.setProductDocTable(productDocTable);
+		productSearchIndex.setProductPriceIndex(productPriceIndex);
+	}
+
+	public void testEveryTokenMustMatch() {
+		load(product("p1", "Samsung Galaxy S9", "Samsung", null),
+				product("p2", "Samsung Tab S4", "Samsung", null),
+				product("p3", "Apple iPhone", "Apple", null));
+
+		assertEquals(Arrays.asList("p1"), search("samsung galaxy"));
+		assertEquals(Arrays.asList("p1", "p2"), search("samsung"));
+		assertTrue(search("samsung iphone").isEmpty());
+		assertTrue(search("nokia").isEmpty());
+		assertTrue(search(" ,. ").isEmpty());
+	}
+
+	public void testTokenMatchesTermsItStarts() {
+		load(product("p1", "Samsung Galaxy S9", "Samsung", null),
+				product("p2", "Galaxy Tab", "Samsung", null),
+				product("p3", "Apple iPhone", "Apple", null));
+
+		assertEquals(Arrays.asList("p1"), search("sam gal s9"));
+		// "s" also starts the manufacturer of p2, whose match scores lower
+		assertEquals(Arrays.asList("p1", "p2"), search("sam gal s"));
+		assertEquals(Arrays.asList("p1", "p2"), search("GAL"));
+		assertTrue(search("galaxies").isEmpty());
+	}
+
+	public void testHitsOrderedByRelevance() {
+		// the same word in the name, the manufacturer and the description
+		load(product("p1", "Case", null, "fits a galaxy"),
+				product("p2", "Case", "Galaxy", null),
+				product("p3", "Galaxy", null, null),
+				product("p4", "Galaxy", null, null));
+		assertEquals(Arrays.asList("p3", "p4", "p2", "p1"), search("galaxy"));
+
+		// an exact term ranks over a longer term it starts
+		load(product("p1", "Tablet", null, null), product("p2", "Tab S4", null, null));
+		assertEquals(Arrays.asList("p2", "p1"), search("tab"));
+	}
+
+	public void testEditAndRemoveAfterLoad() {
+		load(product("p1", "Samsung Galaxy", null, null), product("p2", "Apple iPhone", null, null));
+		int terms = productSearchIndex.getTermCount();
+
+		save(product("p1", "Samsung Note", null, null));
+		assertTrue(search("galaxy").isEmpty());
+		assertEquals(Arrays.asList("p1"), search("note"));
+		assertEquals(terms, productSearchIndex.getTermCount());
+
+		remove("p2");
+		assertTrue(search("apple").isEmpty());
+		assertEquals(terms - 2, productSearchIndex.getTermCount());
+
+		save(product("p3", "Apple Watch", null, null));
+		assertEquals(Arrays.asList("p3"), search("apple"));
+	}
+
+	public void testQueriesMatchScanOfEditedCatalog() {
+		Random random = new Random(1);
+		List<Product> products = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			products.add(product("p" + i, WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)],
+					null, null));
+		}
+		load(products.toArray(new Product[products.size()]));
+		for (int i = 0; i < 50; i++) {
+			Product product = products.get(random.nextInt(products.size()));
+			product.setProductName(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]);
+			save(product);
+		}
+		for (int i = 0; i < 50; i++) {
+			remove(products.remove(random.nextInt(products.size())).getProductId());
+		}
+
+		for (String query : new String[] { "galaxy", "tab", "tabl", "gal ph", "case apple", "s" }) {
+			List<String> expected = new ArrayList<>();
+			for (Product product : products) {
+				if (matchesAll(query, product.getProductName())) {
+					expected.add(product.getProductId());
+				}
+			}
+			List<String> found = search(query);
+			assertEquals(query, expected.size(), found.size());
+			assertTrue(query, found.containsAll(expected));
+		}
+	}
+
+	// every query token starts some word of the text
+	private static boolean matchesAll(String query, String text) {
+		List<String> words = ProductSearchIndex.tokenize(text);
+		for (String token : ProductSearchIndex.tokenize(query)) {
+			boolean found = false;
+			for (String word : words) {
+				found |= word.startsWith(token);
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private List<String> search(String query) {
+		List<String> productIds = new ArrayList<>();
+		for (ProductSearchHit hit : productSearchIndex.search(query, null, null, null)) {
+			productIds.add(hit.getProductId());
+		}
+		return productIds;
+	}
+
+	private void load(Product... products) {
+		List<Product> catalog = Arrays.asList(products);
+		productDocTable.catalogLoaded(catalog);
+		productPriceIndex.catalogLoaded(catalog);
+		productSearchIndex.catalogLoaded(catalog);
+	}
+
+	private void save(Product product) {
+		productDocTable.productSaved(product);
+		productPriceIndex.productSaved(product);
+		productSearchIndex.productSaved(product);
+	}
+
+	// the doc table goes first, like its listener order, and keeps the doc for the others
+	private void remove(String productId) {
+		productDocTable.productRemoved(productId);
+		productPriceIndex.productRemoved(productId);
+		productSearchIndex.productRemoved(productId);
+	}
+
+	private static Product product(String productId, String name, String manufacturer, String description) {
+		Product product = new Product();
+		product.setProductId(productId);
+		product.setProductName(name);
+		product.setProductManufacturer(manufacturer);
+		product.setProductDescription(description);
+		product.setProductCategory("Phones");
+		product.setProductPrice(100);
+		return product;
+	}
+
+}
@@ -0,0 +1,199 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.model.Product;
+import com.model.Suggestion;
+
+/**
+ * Checks the top suggestions the trie keeps per prefix against a ranking of
+ * every product name and category matching the prefix, after the load, after
+ * page views and after products are edited and deleted.
+ */
+public class ProductSuggestIndexTest extends TestCase {
+
+	private static final int TOP_K = 8;
+	private static final String[] WORDS = { "galaxy", "pixel", "tab", "note", "watch", "wave" };
+	private static final String[] CATEGORIES = { "Phones", "Tablets", "Watches" };
+	private static final String[] QUERIES = { "g", "gal", "p", "pixel n", "ta", "tab", "n", "w", "wat", "watches",
+			"wa", "1", "tab 1", "x", "" };
+
+	private ProductSuggestIndex productSuggestIndex;
+	private Random random;
+	private Map<String, Product> products;
+	private Map<String, Integer> views;
+
+	protected void setUp() {
+		productSuggestIndex = new ProductSuggestIndex();
+		random = new Random(6);
+		products = new LinkedHashMap<>();
+		views = new HashMap<>();
+		for (int i = 0; i < 60; i++) {
+			Product product = randomProduct("p" + i);
+			products.put(product.getProductId(), product);
+		}
+		productSuggestIndex.catalogLoaded(new ArrayList<>(products.values()));
+	}
+
+	public void testTopSuggestionsOfLoadedCatalog() {
+		checkSuggestions();
+	}
+
+	public void testViewsReorderSuggestions() {
+		for (String productId : Arrays.asList("p3", "p17", "p42")) {
+			view(productId, 16);
+		}
+		view("p5", 4);
+		checkSuggestions();
+		Suggestion top = productSuggestIndex.suggest(products.get("p3").getProductName())[0];
+		assertEquals("p3", top.getProductId());
+	}
+
+	public void testTopSuggestionsAfterEditAndDelete() {
+		for (String productId : Arrays.asList("p3", "p17", "p42", "p8")) {
+			view(productId, 32);
+		}
+		String name = products.get("p17").getProductName();
+
+		// the renamed product leaves its old prefixes and joins new ones
+		Product renamed = randomProduct("p17");
+		renamed.setProductName("Wave Pixel 17");
+		save(renamed);
+		assertEquals("p17", productSuggestIndex.suggest("wave pixel")[0].getProductId());
+		for (Suggestion suggestion : productSuggestIndex.suggest(name)) {
+			assertFalse("p17".equals(suggestion.getProductId()));
+		}
+
+		// a deleted product drops out and the next one moves up
+		delete("p42");
+		for (String query : QUERIES) {
+			for (Suggestion suggestion : productSuggestIndex.suggest(query)) {
+				assertFalse(query, "p42".equals(suggestion.getProductId()));
+			}
+		}
+		checkSuggestions();
+
+		for (int i = 0; i < 30; i++) {
+			Product product = randomProduct("p" + random.nextInt(60));
+			if (products.containsKey(product.getProductId())) {
+				save(product);
+			}
+		}
+		for (int i = 0; i < 20; i++) {
+			List<String> productIds = new ArrayList<>(products.keySet());
+			delete(productIds.get(random.nextInt(productIds.size())));
+		}
+		checkSuggestions();
+
+		// a whole category removed leaves no category suggestion behind
+		for (Product product : new ArrayList<>(products.values())) {
+			if (product.getProductCategory().equals("Watches")) {
+				delete(product.getProductId());
+			}
+		}
+		for (Suggestion suggestion : productSuggestIndex.suggest("watches")) {
+			assertFalse(Suggestion.CATEGORY.equals(suggestion.getType()));
+		}
+		checkSuggestions();
+	}
+
+	private void checkSuggestions() {
+		for (String query : QUERIES) {
+			List<String> expected = expected(query);
+			List<String> found = new ArrayList<>();
+			for (Suggestion suggestion : productSuggestIndex.suggest(query)) {
+				found.add(suggestion.getType() + ":" + suggestion.getText());
+			}
+			assertEquals(query, expected, found);
+		}
+	}
+
+	// every product name and category with a word suffix starting with the
+	// query, ranked by weight and then text
+	private List<String> expected(String query) {
+		final Map<String, Integer> weights = new HashMap<>();
+		Map<String, Integer> categoryCounts = new HashMap<>();
+		for (Product product : products.values()) {
+			Integer count = views.get(product.getProductId());
+			weights.put(Suggestion.PRODUCT + ":" + product.getProductName(), 1 + (count == null ? 0 : count));
+			Integer inCategory = categoryCounts.get(product.getProductCategory());
+			categoryCounts.put(product.getProductCategory(), inCategory == null ? 1 : inCategory + 1);
+		}
+		for (Map.Entry<String, Integer> entry : categoryCounts.entrySet()) {
+			weights.put(Suggestion.CATEGORY + ":" + entry.getKey(), entry.getValue());
+		}
+
+		String prefix = join(ProductSearchIndex.tokenize(query));
+		List<String> matches = new ArrayList<>();
+		if (!prefix.isEmpty()) {
+			for (String key : weights.keySet()) {
+				List<String> words = ProductSearchIndex.tokenize(key.substring(key.indexOf(':') + 1));
+				for (int start = 0; start < words.size(); start++) {
+					if (join(words.subList(start, words.size())).startsWith(prefix)) {
+						matches.add(key);
+						break;
+					}
+				}
+			}
+		}
+		Collections.sort(matches, new Comparator<String>() {
+			public int compare(String first, String second) {
+				int result = Integer.compare(weights.get(second), weights.get(first));
+				return result != 0 ? result
+						: first.substring(first.indexOf(':') + 1).compareTo(second.substring(second.indexOf(':') + 1));
+			}
+		});
+		return matches.subList(0, Math.min(TOP_K, matches.size()));
+	}
+
+	private static String join(List<String> words) {
+		StringBuilder text = new StringBuilder();
+		for (String word : words) {
+			if (text.length() > 0) {
+				text.append(' ');
+			}
+			text.append(word);
+		}
+		return text.toString();
+	}
+
+	// a count that is a power of two, where the suggestion is re-ranked
+	private void view(String productId, int count) {
+		for (int i = 0; i < count; i++) {
+			productSuggestIndex.recordView(productId);
+		}
+		Integer current = views.get(productId);
+		views.put(productId, (current == null ? 0 : current) + count);
+	}
+
+	private void save(Product product) {
+		products.put(product.getProductId(), product);
+		productSuggestIndex.productSaved(product);
+	}
+
+	private void delete(String productId) {
+		products.remove(productId);
+		views.remove(productId);
+		productSuggestIndex.productRemoved(productId);
+	}
+
+	private Product randomProduct(String productId) {
+		Product product = new Product();
+		product.setProductId(productId);
+		product.setProductName(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " "
+				+ productId.substring(1));
+		product.setProductCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+		return product;
+	}
+
+}